@@ -16,6 +16,7 @@ import {
   PlaySquareOutlined,
   DashboardOutlined,
 } from '@ant-design/icons';
+import { getAvatarUrl } from '../../utils/imageProxy';
 import './index.css';
 
 const { Header, Sider, Content } = AntLayout;
@@ -150,7 +151,7 @@ const Layout = ({ children }) => {
           <div className="header-right">
             <Dropdown menu={{ items: userMenuItems }} placement="bottomRight">
               <div className="user-info">
-                <Avatar icon={<UserOutlined />} />
+                <Avatar src={getAvatarUrl(user.avatarUrl, 32)} icon={<UserOutlined />} />
                 <span className="username">{user.realName || user.username}</span>
               </div>
             </Dropdown>
@@ -34,7 +34,7 @@ export const useVideoUpload = (options = {}) => {
     // 如果有现有的 uploadId，先检查进度
     if (existingUploadId) {
       try {
-        const progressResponse = await fetch(`/api/upload/progress/${existingUploadId}`, {
+        const progressResponse = await fetch(`/api/upload/progress/${existingUploadId}?indices=true`, {
           headers: {
             Authorization: `Bearer ${token}`,
           },
@@ -81,6 +81,11 @@ export const useVideoUpload = (options = {}) => {
         localStorage.removeItem('user');
         throw new Error('登录已过期，请重新登录');
       }
+      // 429：未完成的上传过多；507：服务器存储空间不足
+      if (response.status === 429 || response.status === 507) {
+        const body = await response.json().catch(() => null);
+        throw new Error(body?.message || '服务器暂时无法接收上传，请稍后重试');
+      }
       throw new Error('初始化上传失败');
     }
 
@@ -190,6 +195,7 @@ export const useVideoUpload = (options = {}) => {
 
   /**
    * 完成上传，合并分片
+   * 服务器在后台合并：返回 202 时轮询进度接口直到合并结束；合并队列已满（503）时稍后重试
    */
   const completeUpload = async (uploadId) => {
     // 检查 token
@@ -198,14 +204,22 @@ export const useVideoUpload = (options = {}) => {
       throw new Error('登录已过期，请重新登录');
     }
 
-    const response = await fetch('/api/upload/complete', {
-      method: 'POST',
-      headers: {
-        'Content-Type': 'application/json',
-        Authorization: `Bearer ${token}`,
-      },
-      body: JSON.stringify({ uploadId }),
-    });
+    let response;
+    for (let attempt = 0; ; attempt++) {
+      response = await fetch('/api/upload/complete', {
+        method: 'POST',
+        headers: {
+          'Content-Type': 'application/json',
+          Authorization: `Bearer ${token}`,
+        },
+        body: JSON.stringify({ uploadId }),
+      });
+      if (response.status !== 503 || attempt >= 5) {
+        break;
+      }
+      const retryAfter = parseInt(response.headers.get('Retry-After'), 10) || 5;
+      await new Promise((resolve) => setTimeout(resolve, retryAfter * 1000));
+    }
 
     if (!response.ok) {
       if (response.status === 401) {
@@ -213,6 +227,9 @@ export const useVideoUpload = (options = {}) => {
         localStorage.removeItem('user');
         throw new Error('登录已过期，请重新登录');
       }
+      if (response.status === 503) {
+        throw new Error('服务器繁忙，请稍后重试');
+      }
       throw new Error('完成上传失败');
     }
 
@@ -226,7 +243,43 @@ export const useVideoUpload = (options = {}) => {
       throw new Error(data.message || '完成上传失败');
     }
 
-    return data.data.fileUrl; // 返回文件URL
+    if (data.data.status === 'COMPLETED') {
+      return data.data.fileUrl; // 返回文件URL
+    }
+    return waitForCompletion(uploadId, token);
+  };
+
+  /**
+   * 轮询合并任务状态，直到完成或失败
+   */
+  const waitForCompletion = async (uploadId, token) => {
+    for (;;) {
+      await new Promise((resolve) => setTimeout(resolve, 1000));
+      const response = await fetch(`/api/upload/progress/${uploadId}`, {
+        headers: { Authorization: `Bearer ${token}` },
+      });
+      if (!response.ok) {
+        throw new Error('查询合并进度失败');
+      }
+      const data = await response.json();
+      if (data.code !== 200) {
+        throw new Error(data.message || '查询合并进度失败');
+      }
+      const completion = data.data.completion;
+      if (!completion) {
+        // 服务重启后合并任务丢失
+        if (data.data.status === 'COMPLETED') {
+          return data.data.fileUrl;
+        }
+        throw new Error('合并任务已中断，请重试');
+      }
+      if (completion.state === 'COMPLETED') {
+        return completion.fileUrl;
+      }
+      if (completion.state === 'FAILED') {
+        throw new Error(completion.error || '完成上传失败');
+      }
+    }
   };
 
   /**
@@ -20,6 +20,9 @@ public class CorsConfig {
         config.addExposedHeader("Content-Range");
         config.addExposedHeader("Accept-Ranges");
         config.addExposedHeader("Content-Length");
+        // 条件请求校验头，便于播放器使用 If-Range
+        config.addExposedHeader("ETag");
+        config.addExposedHeader("Last-Modified");
         source.registerCorsConfiguration("/**", config);
         return new CorsFilter(source);
     }
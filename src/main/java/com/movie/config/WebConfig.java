@@ -4,6 +4,7 @@ import com.movie.interceptor.JwtInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -43,7 +44,8 @@ public class WebConfig implements WebMvcConfigurer {
         // 映射 /uploads/** 到文件系统（context-path 会自动处理）
         registry.addResourceHandler("/uploads/**")
                 .addResourceLocations("file:" + uploadPath + File.separator)
-                .setCachePeriod(0); // 不缓存，确保视频文件实时更新
+                // 视频按原文件名保存，同名上传会覆盖，不能按时间缓存；每次用 Last-Modified 协商，未修改时返回 304
+                .setCacheControl(CacheControl.noCache().cachePublic());
         
         System.out.println("静态资源映射配置完成，文件访问路径: /api/uploads/**");
         
@@ -6,6 +6,16 @@ import com.movie.repository.UserRepository;
 import com.movie.repository.NewsRepository;
 import com.movie.repository.CategoryRepository;
 import com.movie.entity.Category;
+import com.movie.service.BlobStore;
+import com.movie.service.FavoriteIndex;
+import com.movie.service.HlsPackagingService;
+import com.movie.service.MovieDetailCache;
+import com.movie.service.MovieSearchIndex;
+import com.movie.service.ThumbnailService;
+import com.movie.service.UploadAdmission;
+import com.movie.service.UploadSweeper;
+import com.movie.service.VideoSegmentCache;
+import com.movie.service.ViewCountBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -31,6 +41,36 @@ public class AdminController {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private VideoSegmentCache videoSegmentCache;
+
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private UploadSweeper uploadSweeper;
+
+    @Autowired
+    private UploadAdmission uploadAdmission;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+
+    @Autowired
+    private MovieDetailCache movieDetailCache;
+
+    @Autowired
+    private FavoriteIndex favoriteIndex;
+
+    @Autowired
+    private MovieSearchIndex movieSearchIndex;
+
     @GetMapping("/statistics")
     public ApiResponse<Map<String, Object>> getStatistics() {
         try {
@@ -78,6 +118,124 @@ public class AdminController {
             return ApiResponse.error(e.getMessage());
         }
     }
-}
 
+    /**
+     * 视频头尾片段缓存的命中统计
+     */
+    @GetMapping("/video-cache/stats")
+    public ApiResponse<Map<String, Object>> getVideoCacheStats() {
+        try {
+            return ApiResponse.success(videoSegmentCache.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * HLS 封装队列和分片缓存统计
+     */
+    @GetMapping("/hls/stats")
+    public ApiResponse<Map<String, Object>> getHlsStats() {
+        try {
+            return ApiResponse.success(hlsPackagingService.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 内容去重存储统计（引用数、节省的字节数等）
+     */
+    @GetMapping("/blobs/stats")
+    public ApiResponse<Map<String, Object>> getBlobStats() {
+        try {
+            return ApiResponse.success(blobStore.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 过期上传会话清理统计（清理的会话数、回收的字节数等）
+     */
+    @GetMapping("/uploads/sweeper/stats")
+    public ApiResponse<Map<String, Object>> getUploadSweeperStats() {
+        try {
+            return ApiResponse.success(uploadSweeper.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 上传准入统计（进行中的会话、预留的磁盘空间、拒绝次数等）
+     */
+    @GetMapping("/uploads/admission/stats")
+    public ApiResponse<Map<String, Object>> getUploadAdmissionStats() {
+        try {
+            return ApiResponse.success(uploadAdmission.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 缩略图缓存统计
+     */
+    @GetMapping("/thumbnails/stats")
+    public ApiResponse<Map<String, Object>> getThumbnailStats() {
+        try {
+            return ApiResponse.success(thumbnailService.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 浏览量写回缓冲统计（待写入的浏览量、已写入的批次等）
+     */
+    @GetMapping("/view-counts/stats")
+    public ApiResponse<Map<String, Object>> getViewCountStats() {
+        try {
+            return ApiResponse.success(viewCountBuffer.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 电影详情缓存统计（命中、准入拒绝、失效次数等）
+     */
+    @GetMapping("/movie-cache/stats")
+    public ApiResponse<Map<String, Object>> getMovieCacheStats() {
+        try {
+            return ApiResponse.success(movieDetailCache.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 收藏位图统计（已加载的用户数、位图占用等）
+     */
+    @GetMapping("/favorite-index/stats")
+    public ApiResponse<Map<String, Object>> getFavoriteIndexStats() {
+        try {
+            return ApiResponse.success(favoriteIndex.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
 
+    /**
+     * 电影搜索索引统计（电影数、词数、平均搜索耗时等）
+     */
+    @GetMapping("/movie-search/stats")
+    public ApiResponse<Map<String, Object>> getMovieSearchStats() {
+        try {
+            return ApiResponse.success(movieSearchIndex.getStats());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+}
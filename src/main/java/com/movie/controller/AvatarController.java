@@ -0,0 +1,53 @@
+package com.movie.controller;
+
+import com.movie.service.FileService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 头像按尺寸获取：/uploads/avatars/{name}?size=64
+ * 不带 size 参数的请求仍由 /uploads/** 静态资源处理返回原图
+ */
+@RestController
+@RequestMapping("/uploads/avatars")
+@CrossOrigin
+public class AvatarController {
+
+    @Autowired
+    private FileService fileService;
+
+    /**
+     * 返回最接近请求尺寸的头像规格，规格尚未生成时返回原图
+     */
+    @GetMapping(value = "/{filename:.+}", params = "size")
+    public ResponseEntity<Resource> getAvatar(@PathVariable String filename, @RequestParam int size) {
+        Path file = fileService.resolveAvatar(filename, size);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM);
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .contentLength(Files.size(file))
+                    .lastModified(Files.getLastModifiedTime(file).toMillis())
+                    // 与 /uploads/** 静态资源一致；规格生成后 Last-Modified 随之变化，协商时即可取到缩小版本
+                    .cacheControl(CacheControl.noCache().cachePublic())
+                    .body(new FileSystemResource(file));
+        } catch (IOException e) {
+            System.err.println("读取头像失败: " + e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -1,31 +1,55 @@
 package com.movie.controller;
 
 import com.movie.dto.ApiResponse;
+import com.movie.service.FileStorageService;
+import com.movie.service.ThumbnailService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/files")
 @CrossOrigin
 public class FileController {
 
+    // 缩略图最大宽度
+    private static final int MAX_THUMBNAIL_WIDTH = 4096;
+
+    // 缩略图缓存时间，与 /files/** 静态资源一致
+    private static final long THUMBNAIL_MAX_AGE_SECONDS = 3600;
+
     @Value("${file.upload.files-dir:D:/project/movie-uploads}")
     private String uploadDir;
 
     @Value("${server.servlet.context-path:/api}")
     private String contextPath;
 
+    // /files/** 静态资源映射到的目录（见 WebConfig），缩略图从该目录读取原图
+    @Value("${file.upload.simple-dir:D:/movie_uploads}")
+    private String filesDir;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
     /**
      * 文件上传接口
      * @param file 上传的文件
@@ -48,36 +72,15 @@ public class FileController {
                 return ApiResponse.error("文件名不能为空");
             }
 
-            // 获取文件扩展名
-            String extension = "";
-            int lastDotIndex = originalFilename.lastIndexOf('.');
-            if (lastDotIndex > 0) {
-                extension = originalFilename.substring(lastDotIndex);
-            }
-
-            // 使用 UUID 重命名文件，防止文件名冲突
-            String uuid = UUID.randomUUID().toString();
-            String newFilename = uuid + extension;
-
-            // 确保上传目录存在
-            File uploadDirectory = new File(uploadDir);
-            if (!uploadDirectory.exists()) {
-                boolean created = uploadDirectory.mkdirs();
-                if (!created) {
-                    System.err.println("无法创建上传目录: " + uploadDir);
-                    return ApiResponse.error("无法创建上传目录");
-                }
-                System.out.println("创建上传目录: " + uploadDir);
-            }
-
-            // 保存文件到本地磁盘
-            Path filePath = Paths.get(uploadDir, newFilename);
-            Files.write(filePath, file.getBytes());
+            // 流式保存到本地磁盘（UUID 重命名防止文件名冲突，按文件类型限制大小）
+            FileStorageService.StoredFile stored = fileStorageService.store(file, Paths.get(uploadDir));
+            String newFilename = stored.getFilename();
+            Path filePath = stored.getPath();
 
             System.out.println("文件上传成功:");
             System.out.println("  原始文件名: " + originalFilename);
             System.out.println("  新文件名: " + newFilename);
-            System.out.println("  文件大小: " + file.getSize() + " bytes");
+            System.out.println("  文件大小: " + stored.getSize() + " bytes");
             System.out.println("  保存路径: " + filePath.toAbsolutePath());
 
             // 构建文件访问URL
@@ -88,9 +91,11 @@ public class FileController {
             data.put("url", fileUrl);
             data.put("filename", newFilename);
             data.put("originalFilename", originalFilename);
-            data.put("size", String.valueOf(file.getSize()));
+            data.put("size", String.valueOf(stored.getSize()));
 
             return ApiResponse.success("文件上传成功", data);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
         } catch (IOException e) {
             System.err.println("文件上传失败: " + e.getMessage());
             e.printStackTrace();
@@ -101,5 +106,56 @@ public class FileController {
             return ApiResponse.error("文件上传异常: " + e.getMessage());
         }
     }
-}
 
+    /**
+     * 图片缩略图：/files/{filename}?w=320
+     * 宽度向上取整到配置的档位；原图不宽于目标宽度、不是可解码的图片或生成失败时返回原图
+     * 不带 w 参数的请求不匹配此接口，仍由静态资源映射处理
+     */
+    @GetMapping(value = "/{filename:.+}", params = "w")
+    public ResponseEntity<Resource> getThumbnail(
+            @PathVariable String filename,
+            @RequestParam("w") int width) {
+        if (width <= 0 || width > MAX_THUMBNAIL_WIDTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        Path dir = Paths.get(filesDir).toAbsolutePath().normalize();
+        Path source = dir.resolve(filename).normalize();
+        if (!source.startsWith(dir) || !Files.isRegularFile(source)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Path served = source;
+        try {
+            Path thumbnail = thumbnailService.getThumbnail(source, thumbnailService.snapWidth(width));
+            if (thumbnail != null) {
+                served = thumbnail;
+            }
+        } catch (Exception e) {
+            System.err.println("生成缩略图失败，返回原图: " + filename + ", 错误: " + e.getMessage());
+        }
+
+        try {
+            return serveImage(served);
+        } catch (IOException e) {
+            // 缩略图可能刚被缓存淘汰，改为返回原图
+            try {
+                return serveImage(source);
+            } catch (IOException ex) {
+                System.err.println("读取图片失败: " + ex.getMessage());
+                return ResponseEntity.notFound().build();
+            }
+        }
+    }
+
+    private static ResponseEntity<Resource> serveImage(Path file) throws IOException {
+        MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .contentLength(Files.size(file))
+                .lastModified(Files.getLastModifiedTime(file).toMillis())
+                .cacheControl(CacheControl.maxAge(THUMBNAIL_MAX_AGE_SECONDS, TimeUnit.SECONDS).cachePublic())
+                .body(new FileSystemResource(file));
+    }
+}
@@ -1,6 +1,7 @@
 package com.movie.controller;
 
 import com.movie.dto.ApiResponse;
+import com.movie.dto.CursorPage;
 import com.movie.dto.MovieVO;
 import com.movie.entity.Movie;
 import com.movie.entity.User;
@@ -19,6 +20,9 @@ import java.util.Optional;
 @RequestMapping("/movies")
 @CrossOrigin
 public class MovieController {
+    // 游标分页每页最多条数
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     @Autowired
     private MovieService movieService;
     
@@ -65,8 +69,10 @@ public class MovieController {
             System.out.println("✅ 成功接收到 userId: " + finalUserId);
         }
         
-        // 所有情况下都按ID升序排序
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, "id"));
+        // 按ID升序排序；带关键词且 sortBy=relevance 时按搜索相关度排序
+        Pageable pageable = "relevance".equals(sortBy) && keyword != null && !keyword.isEmpty()
+                ? PageRequest.of(page, size)
+                : PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, "id"));
         
         // 传递 userId 给 Service 层（优先使用前端传递的 userId）
         Page<MovieVO> moviePage = movieService.searchMoviesWithFavoriteStatus(keyword, categoryId, pageable, finalUserId, sortBy);
@@ -83,6 +89,35 @@ public class MovieController {
         return ApiResponse.success(moviePage);
     }
 
+    /**
+     * 游标分页获取电影列表（按ID升序）：请求带 cursor 参数时使用（第一页传空字符串），之后传上一页返回的 nextCursor
+     * 不执行 COUNT，翻到多深耗时都相同；需要总数时传 withTotal=true
+     */
+    @GetMapping(value = "/list", params = "cursor")
+    public ApiResponse<CursorPage<MovieVO>> getMovieListByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            HttpServletRequest request) {
+        try {
+            // 优先使用前端传递的 userId，否则从登录用户获取
+            Long finalUserId = userId;
+            String username = (String) request.getAttribute("username");
+            if ((finalUserId == null || finalUserId <= 0) && username != null && !username.trim().isEmpty()) {
+                finalUserId = userRepository.findByUsername(username).map(User::getId).orElse(null);
+            }
+            int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+            return ApiResponse.success(movieService.searchMoviesByCursor(keyword, categoryId, cursor, pageSize, finalUserId, withTotal));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
     @GetMapping("/{id}")
     public ApiResponse<MovieVO> getMovieById(@PathVariable Long id, HttpServletRequest request) {
         try {
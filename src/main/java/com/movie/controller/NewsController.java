@@ -1,6 +1,7 @@
 package com.movie.controller;
 
 import com.movie.dto.ApiResponse;
+import com.movie.dto.CursorPage;
 import com.movie.entity.News;
 import com.movie.service.NewsService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +16,9 @@ import javax.servlet.http.HttpServletRequest;
 @RequestMapping("/news")
 @CrossOrigin
 public class NewsController {
+    // 游标分页每页最多条数
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     @Autowired
     private NewsService newsService;
 
@@ -40,27 +44,7 @@ public class NewsController {
             Page<News> newsPage;
             
             // 解析 status 参数，支持字符串和数字
-            Integer status = null;
-            if (statusStr != null && !statusStr.isEmpty()) {
-                try {
-                    // 如果是字符串 "PUBLISHED" 或 "DRAFT"，转换为数字
-                    if ("PUBLISHED".equalsIgnoreCase(statusStr) || "1".equals(statusStr)) {
-                        status = 1;
-                    } else if ("DRAFT".equalsIgnoreCase(statusStr) || "0".equals(statusStr)) {
-                        status = 0;
-                    } else {
-                        // 尝试直接解析为数字
-                        status = Integer.parseInt(statusStr);
-                        // 只接受 0 或 1
-                        if (status != 0 && status != 1) {
-                            status = null;
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    // 如果解析失败，忽略 status 参数
-                    status = null;
-                }
-            }
+            Integer status = parseStatus(statusStr);
             
             // 如果有搜索关键词或状态筛选，使用搜索方法
             if ((keyword != null && !keyword.isEmpty()) || status != null) {
@@ -76,6 +60,56 @@ public class NewsController {
         }
     }
 
+    /**
+     * 游标分页获取新闻列表（按ID升序）：请求带 cursor 参数时使用（第一页传空字符串），之后传上一页返回的 nextCursor
+     * 不执行 COUNT，翻到多深耗时都相同；需要总数时传 withTotal=true
+     * 热度排序的浏览量随时在变，不支持游标分页，请使用页码分页
+     */
+    @GetMapping(value = "/list", params = "cursor")
+    public ApiResponse<CursorPage<News>> getNewsListByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String statusStr,
+            @RequestParam(required = false, defaultValue = "default") String sortBy,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        try {
+            if (!"default".equals(sortBy)) {
+                return ApiResponse.error(400, "游标分页仅支持默认排序，热度排序请使用页码分页");
+            }
+            int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+            return ApiResponse.success(newsService.searchNewsByCursor(keyword, parseStatus(statusStr), cursor, pageSize, withTotal));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ApiResponse.error("获取新闻列表失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 解析 status 参数：PUBLISHED/1 为已发布，DRAFT/0 为草稿，其他值忽略
+     */
+    private static Integer parseStatus(String statusStr) {
+        if (statusStr == null || statusStr.isEmpty()) {
+            return null;
+        }
+        try {
+            // 如果是字符串 "PUBLISHED" 或 "DRAFT"，转换为数字
+            if ("PUBLISHED".equalsIgnoreCase(statusStr) || "1".equals(statusStr)) {
+                return 1;
+            } else if ("DRAFT".equalsIgnoreCase(statusStr) || "0".equals(statusStr)) {
+                return 0;
+            }
+            // 尝试直接解析为数字，只接受 0 或 1
+            int status = Integer.parseInt(statusStr);
+            return (status == 0 || status == 1) ? status : null;
+        } catch (NumberFormatException e) {
+            // 如果解析失败，忽略 status 参数
+            return null;
+        }
+    }
+
     @GetMapping("/{id}")
     public ApiResponse<News> getNewsById(@PathVariable Long id) {
         try {
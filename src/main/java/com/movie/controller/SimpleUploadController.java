@@ -1,18 +1,17 @@
 package com.movie.controller;
 
 import com.movie.dto.ApiResponse;
+import com.movie.service.FileStorageService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/upload")
@@ -28,6 +27,9 @@ public class SimpleUploadController {
     @Value("${server.servlet.context-path:/api}")
     private String contextPath;
 
+    @Autowired
+    private FileStorageService fileStorageService;
+
     @Value("${server.port:8080}")
     private int serverPort;
 
@@ -53,36 +55,15 @@ public class SimpleUploadController {
                 return ApiResponse.error("文件名不能为空");
             }
 
-            // 获取文件扩展名
-            String extension = "";
-            int lastDotIndex = originalFilename.lastIndexOf('.');
-            if (lastDotIndex > 0) {
-                extension = originalFilename.substring(lastDotIndex);
-            }
-
-            // 使用 UUID 重命名文件，防止文件名冲突
-            String uuid = UUID.randomUUID().toString();
-            String newFilename = uuid + extension;
-
-            // 确保上传目录存在
-            File uploadDirectory = new File(uploadDir);
-            if (!uploadDirectory.exists()) {
-                boolean created = uploadDirectory.mkdirs();
-                if (!created) {
-                    System.err.println("无法创建上传目录: " + uploadDir);
-                    return ApiResponse.error("无法创建上传目录");
-                }
-                System.out.println("创建上传目录: " + uploadDir);
-            }
-
-            // 保存文件到本地磁盘
-            Path filePath = Paths.get(uploadDir, newFilename);
-            Files.write(filePath, file.getBytes());
+            // 流式保存到本地磁盘（UUID 重命名防止文件名冲突，按文件类型限制大小）
+            FileStorageService.StoredFile stored = fileStorageService.store(file, Paths.get(uploadDir));
+            String newFilename = stored.getFilename();
+            Path filePath = stored.getPath();
 
             System.out.println("文件上传成功:");
             System.out.println("  原始文件名: " + originalFilename);
             System.out.println("  新文件名: " + newFilename);
-            System.out.println("  文件大小: " + file.getSize() + " bytes");
+            System.out.println("  文件大小: " + stored.getSize() + " bytes");
             System.out.println("  保存路径: " + filePath.toAbsolutePath());
 
             // 构建完整的文件访问URL
@@ -103,9 +84,11 @@ public class SimpleUploadController {
             data.put("url", fileUrl);
             data.put("filename", newFilename);
             data.put("originalFilename", originalFilename);
-            data.put("size", String.valueOf(file.getSize()));
+            data.put("size", String.valueOf(stored.getSize()));
 
             return ApiResponse.success("文件上传成功", data);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
         } catch (IOException e) {
             System.err.println("文件上传失败: " + e.getMessage());
             e.printStackTrace();
@@ -3,27 +3,53 @@ package com.movie.controller;
 import com.movie.dto.ApiResponse;
 import com.movie.dto.InitUploadRequest;
 import com.movie.service.UploadService;
+import com.movie.upload.CompletionJob;
+import com.movie.upload.UploadRejectedException;
+import com.movie.util.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/upload")
 @CrossOrigin
 public class UploadController {
     
+    // 分片 CRC32C 校验值请求头（十六进制）
+    private static final String CRC32C_HEADER = "X-Chunk-CRC32C";
+    
+    // 完成任务队列已满时建议客户端等待的秒数
+    private static final int COMPLETE_RETRY_AFTER_SECONDS = 5;
+    
+    // 上传并发数超出限制时建议客户端等待的秒数
+    private static final int INIT_RETRY_AFTER_SECONDS = 30;
+    
     @Autowired
     private UploadService uploadService;
     
+    @Autowired
+    private JwtUtil jwtUtil;
+    
+    @Value("${file.upload.complete.event-timeout-ms:600000}")
+    private long eventTimeoutMillis;
+    
     /**
      * 初始化上传
+     * 超出并发会话或未完成字节数限制时返回 429，磁盘空间不足时返回 507
      */
     @PostMapping("/init")
-    public ApiResponse<Map<String, String>> initUpload(
+    public ResponseEntity<ApiResponse<Map<String, String>>> initUpload(
             @RequestBody InitUploadRequest request,
             HttpServletRequest httpRequest) {
         try {
@@ -31,7 +57,7 @@ public class UploadController {
             
             // 检查用户是否已登录
             if (username == null) {
-                return ApiResponse.error(401, "用户未登录或Token无效");
+                return ResponseEntity.ok(ApiResponse.error(401, "用户未登录或Token无效"));
             }
             
             System.out.println("=== 初始化上传请求 ===");
@@ -42,11 +68,24 @@ public class UploadController {
             String uploadId = uploadService.initUpload(request, username);
             Map<String, String> data = new HashMap<>();
             data.put("uploadId", uploadId);
-            return ApiResponse.success("初始化成功", data);
+            // 服务器已有相同内容（秒传），客户端无需上传分片
+            String fileUrl = uploadService.getCompletedFileUrl(uploadId);
+            if (fileUrl != null) {
+                data.put("status", "COMPLETED");
+                data.put("fileUrl", fileUrl);
+            }
+            return ResponseEntity.ok(ApiResponse.success("初始化成功", data));
+        } catch (UploadRejectedException e) {
+            System.err.println("拒绝上传: " + e.getMessage());
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(e.getStatus());
+            if (e.getStatus() == UploadRejectedException.TOO_MANY_REQUESTS) {
+                builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(INIT_RETRY_AFTER_SECONDS));
+            }
+            return builder.body(ApiResponse.error(e.getStatus(), e.getMessage()));
         } catch (Exception e) {
             System.err.println("初始化上传失败: " + e.getMessage());
             e.printStackTrace();
-            return ApiResponse.error(e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
         }
     }
     
@@ -59,6 +98,8 @@ public class UploadController {
             @RequestParam("chunk") MultipartFile chunk,
             @RequestParam("chunkIndex") int chunkIndex,
             @RequestParam("totalChunks") int totalChunks,
+            @RequestParam(value = "crc32c", required = false) String crc32c,
+            @RequestHeader(value = CRC32C_HEADER, required = false) String crc32cHeader,
             HttpServletRequest httpRequest) {
         long startTime = System.currentTimeMillis();
         try {
@@ -74,7 +115,8 @@ public class UploadController {
             System.out.println("chunkIndex: " + chunkIndex + "/" + totalChunks);
             System.out.println("chunkSize: " + chunk.getSize() + " bytes");
             
-            uploadService.uploadChunk(uploadId, chunk, chunkIndex, totalChunks, username);
+            uploadService.uploadChunk(uploadId, chunk, chunkIndex, totalChunks,
+                    crc32c != null ? crc32c : crc32cHeader, username);
             
             long duration = System.currentTimeMillis() - startTime;
             System.out.println("分片上传成功，耗时: " + duration + "ms");
@@ -93,11 +135,57 @@ public class UploadController {
     }
     
     /**
-     * 查询已上传的分片
+     * 上传分片（原始请求体）
+     * 请求体直接写入目标位置，不经过 multipart 解析和临时文件
+     * 需要 Content-Length，Content-Range 和 X-Chunk-CRC32C 可选；Content-Type 应为 application/octet-stream
+     */
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ApiResponse<Map<String, Object>> putChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader(value = "Content-Range", required = false) String contentRange,
+            @RequestHeader(value = CRC32C_HEADER, required = false) String crc32c,
+            HttpServletRequest httpRequest) {
+        long startTime = System.currentTimeMillis();
+        try {
+            String username = (String) httpRequest.getAttribute("username");
+            
+            // 检查用户是否已登录
+            if (username == null) {
+                return ApiResponse.error(401, "用户未登录或Token无效");
+            }
+            
+            long length = httpRequest.getContentLengthLong();
+            if (length < 0) {
+                return ApiResponse.error(411, "缺少 Content-Length");
+            }
+            
+            uploadService.uploadChunk(uploadId, index, httpRequest.getInputStream(), length,
+                    contentRange, crc32c, username);
+            
+            long duration = System.currentTimeMillis() - startTime;
+            System.out.println("分片上传成功，耗时: " + duration + "ms");
+            
+            Map<String, Object> data = new HashMap<>();
+            data.put("chunkIndex", index);
+            data.put("uploadedChunks", uploadService.getUploadedChunks(uploadId));
+            return ApiResponse.success("分片上传成功", data);
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - startTime;
+            System.err.println("上传分片失败 (耗时: " + duration + "ms): " + e.getMessage());
+            e.printStackTrace();
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
+    /**
+     * 查询上传进度
+     * 默认只返回已上传分片数量，indices=true 时附带已上传分片索引列表，供断点续传恢复使用
      */
     @GetMapping("/progress/{uploadId}")
     public ApiResponse<Map<String, Object>> getUploadProgress(
             @PathVariable String uploadId,
+            @RequestParam(value = "indices", defaultValue = "false") boolean includeIndices,
             HttpServletRequest httpRequest) {
         try {
             String username = (String) httpRequest.getAttribute("username");
@@ -107,7 +195,7 @@ public class UploadController {
                 return ApiResponse.error(401, "用户未登录或Token无效");
             }
             
-            Map<String, Object> progress = uploadService.getUploadProgress(uploadId, username);
+            Map<String, Object> progress = uploadService.getUploadProgress(uploadId, username, includeIndices);
             return ApiResponse.success(progress);
         } catch (Exception e) {
             System.err.println("查询上传进度失败: " + e.getMessage());
@@ -118,34 +206,96 @@ public class UploadController {
     
     /**
      * 完成上传
+     * 合并在后台执行：已完成时直接返回文件URL，否则返回 202 和任务 ID（即 uploadId），
+     * 客户端轮询 /upload/progress/{uploadId} 的 completion 字段或订阅 /upload/events/{uploadId}；
+     * 完成任务队列已满时返回 503，客户端按 Retry-After 稍后重试
      */
     @PostMapping("/complete")
-    public ApiResponse<Map<String, Object>> completeUpload(
+    public ResponseEntity<ApiResponse<Map<String, Object>>> completeUpload(
             @RequestBody Map<String, String> request,
             HttpServletRequest httpRequest) {
         try {
             String uploadId = request.get("uploadId");
             if (uploadId == null || uploadId.isEmpty()) {
-                return ApiResponse.error("uploadId不能为空");
+                return ResponseEntity.ok(ApiResponse.error("uploadId不能为空"));
             }
             
             String username = (String) httpRequest.getAttribute("username");
             
             // 检查用户是否已登录
             if (username == null) {
-                return ApiResponse.error(401, "用户未登录或Token无效");
+                return ResponseEntity.ok(ApiResponse.error(401, "用户未登录或Token无效"));
             }
             
-            String fileUrl = uploadService.completeUpload(uploadId, username);
+            CompletionJob job = uploadService.submitCompletion(uploadId, username);
             
             Map<String, Object> data = new HashMap<>();
-            data.put("fileUrl", fileUrl);
-            return ApiResponse.success("上传完成", data);
+            data.put("jobId", job.getUploadId());
+            data.put("status", job.getState());
+            if (CompletionJob.STATE_COMPLETED.equals(job.getState())) {
+                data.put("fileUrl", job.getFileUrl());
+                data.put("sha256", uploadService.getFileSha256(uploadId));
+                return ResponseEntity.ok(ApiResponse.success("上传完成", data));
+            }
+            data.put("progressUrl", "/upload/progress/" + uploadId);
+            data.put("eventsUrl", "/upload/events/" + uploadId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.success("已提交合并", data));
+        } catch (RejectedExecutionException e) {
+            System.err.println("完成任务队列已满，拒绝完成请求");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(COMPLETE_RETRY_AFTER_SECONDS))
+                    .body(ApiResponse.error(503, "服务器繁忙，请稍后重试"));
         } catch (Exception e) {
             System.err.println("完成上传失败: " + e.getMessage());
             e.printStackTrace();
-            return ApiResponse.error(e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 订阅完成任务事件（Server-Sent Events）
+     * 连接后先推送一次当前状态（progress），任务结束时推送 completed 或 failed 并关闭连接
+     * EventSource 无法携带请求头，因此同时支持 token 查询参数
+     */
+    @GetMapping(value = "/events/{uploadId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter completionEvents(
+            @PathVariable String uploadId,
+            @RequestParam(value = "token", required = false) String token,
+            HttpServletRequest httpRequest) {
+        SseEmitter emitter = new SseEmitter(eventTimeoutMillis);
+        try {
+            String username = (String) httpRequest.getAttribute("username");
+            if (username == null && token != null && jwtUtil.validateToken(token)) {
+                username = jwtUtil.getUsernameFromToken(token);
+            }
+            if (username == null) {
+                sendAndClose(emitter, "error", ApiResponse.error(401, "用户未登录或Token无效"));
+                return emitter;
+            }
+            
+            CompletionJob job = uploadService.getCompletionJob(uploadId, username);
+            if (job == null) {
+                sendAndClose(emitter, "error", ApiResponse.error(404, "尚未提交完成任务"));
+                return emitter;
+            }
+            emitter.send(SseEmitter.event().name("progress").data(job.toMap()));
+            job.onFinish(finished -> sendAndClose(emitter,
+                    CompletionJob.STATE_COMPLETED.equals(finished.getState()) ? "completed" : "failed",
+                    finished.toMap()));
+        } catch (Exception e) {
+            System.err.println("订阅完成事件失败: " + e.getMessage());
+            sendAndClose(emitter, "error", ApiResponse.error(e.getMessage()));
+        }
+        return emitter;
+    }
+    
+    private static void sendAndClose(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            emitter.complete();
+        } catch (Exception e) {
+            // 客户端已断开
+            emitter.completeWithError(e);
         }
     }
 }
-
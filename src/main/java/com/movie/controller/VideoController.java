@@ -1,34 +1,59 @@
 package com.movie.controller;
 
+import com.movie.media.HlsPackager;
+import com.movie.service.BandwidthLimiter;
+import com.movie.service.HlsPackagingService;
+import com.movie.service.VideoStreamService;
+import com.movie.util.ByteRange;
+import com.movie.util.JwtUtil;
+import com.movie.util.RangeParser;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/uploads")
 @CrossOrigin
 public class VideoController {
     
+    private static final String VIDEO_CONTENT_TYPE = "video/mp4";
+    
+    // HLS 目录下允许访问的文件名
+    private static final Pattern HLS_FILE_PATTERN = Pattern.compile("index\\.m3u8|init\\.mp4|seg_\\d+\\.m4s");
+    
     @Value("${file.upload.dir:uploads}")
     private String uploadDir;
     
+    @Autowired
+    private VideoStreamService videoStreamService;
+    
+    @Autowired
+    private BandwidthLimiter bandwidthLimiter;
+    
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+    
+    @Autowired
+    private JwtUtil jwtUtil;
+    
     /**
      * 视频文件流式传输，支持Range请求
+     * 响应体通过 sendfile / FileChannel.transferTo 直接写出，不经过堆内缓冲区
      */
     @GetMapping("/videos/**")
-    public ResponseEntity<Resource> getVideo(@RequestHeader(value = "Range", required = false) String rangeHeader,
-                                             HttpServletRequest request) {
+    public void getVideo(@RequestHeader(value = "Range", required = false) String rangeHeader,
+                         HttpServletRequest request,
+                         HttpServletResponse response) {
         try {
             // 获取请求的文件路径
             String requestURI = request.getRequestURI();
@@ -44,113 +69,160 @@ public class VideoController {
             
             if (!videoFile.exists() || !videoFile.isFile()) {
                 System.err.println("视频文件不存在: " + videoPath.toAbsolutePath());
-                return ResponseEntity.notFound().build();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
             }
             
-            Resource resource = new FileSystemResource(videoFile);
-            long fileSize = videoFile.length();
-            
-            // 设置响应头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("video/mp4"));
-            headers.add("Accept-Ranges", "bytes");
-            headers.setContentLength(fileSize);
-            headers.set("Access-Control-Allow-Origin", "*");
-            headers.set("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS");
-            headers.set("Access-Control-Expose-Headers", "Content-Range, Accept-Ranges, Content-Length");
-            
-            // 处理Range请求（视频流播放必需）
-            if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
-                String rangeValue = rangeHeader.substring(6);
-                String[] ranges = rangeValue.split("-");
-                long rangeStart = 0;
-                long rangeEnd = fileSize - 1;
-                
-                if (ranges.length >= 1 && !ranges[0].isEmpty()) {
-                    rangeStart = Long.parseLong(ranges[0]);
-                }
-                if (ranges.length >= 2 && !ranges[1].isEmpty()) {
-                    rangeEnd = Long.parseLong(ranges[1]);
-                }
-                
-                long contentLength = rangeEnd - rangeStart + 1;
-                headers.setContentLength(contentLength);
-                headers.set("Content-Range", String.format("bytes %d-%d/%d", rangeStart, rangeEnd, fileSize));
-                
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                        .headers(headers)
-                        .body(new RangeFileSystemResource(videoFile, rangeStart, rangeEnd));
-            }
-            
-            // 非Range请求，返回完整文件
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(resource);
-                    
+            serveFile(videoFile, VIDEO_CONTENT_TYPE, rangeHeader, false, request, response);
         } catch (Exception e) {
             System.err.println("获取视频文件失败: " + e.getMessage());
             e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
         }
     }
     
     /**
-     * 支持Range请求的文件资源
+     * 发送文件的完整内容或 Range 区间，带 ETag/Last-Modified 协商
+     * @param hlsFile HLS 播放列表或分片：不限速，完整请求时优先从内存缓存发送
      */
-    private static class RangeFileSystemResource extends FileSystemResource {
-        private final long rangeStart;
-        private final long rangeEnd;
+    private void serveFile(File file, String contentType, String rangeHeader, boolean hlsFile,
+                           HttpServletRequest request, HttpServletResponse response) throws java.io.IOException {
+        BasicFileAttributes attributes = videoStreamService.readAttributes(file);
+        long fileSize = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = videoStreamService.computeETag(attributes, file);
+        
+        // 设置响应头
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS");
+        response.setHeader("Access-Control-Expose-Headers", "Content-Range, Accept-Ranges, Content-Length, ETag, Last-Modified");
+        
+        // 条件请求：缓存仍然有效时直接返回 304
+        if (videoStreamService.checkNotModified(request, response, etag, lastModified)) {
+            return;
+        }
+        
+        // If-Range 不匹配说明客户端缓存的是旧文件，忽略 Range 返回完整内容
+        if (rangeHeader != null && !videoStreamService.isIfRangeSatisfied(request, etag, lastModified)) {
+            rangeHeader = null;
+        }
+        
+        // 处理Range请求（视频流播放必需），支持后缀区间和多区间
+        List<ByteRange> ranges = RangeParser.parse(rangeHeader, fileSize);
+        if (ranges != null && ranges.isEmpty()) {
+            // 所有区间都超出文件范围
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+            response.setContentLength(0);
+            return;
+        }
+        if (ranges != null && ranges.size() > 1) {
+            videoStreamService.transferMultipart(request, response, file, ranges, contentType);
+            return;
+        }
+        
+        long rangeStart = 0;
+        long rangeEnd = fileSize - 1;
+        response.setContentType(contentType);
+        if (ranges != null) {
+            ByteRange range = ranges.get(0);
+            rangeStart = range.getStart();
+            rangeEnd = range.getEnd();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, range.toContentRange(fileSize));
+        } else {
+            // 非Range请求，返回完整文件
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
         
-        public RangeFileSystemResource(File file, long rangeStart, long rangeEnd) {
-            super(file);
-            this.rangeStart = rangeStart;
-            this.rangeEnd = rangeEnd;
+        response.setContentLengthLong(rangeEnd - rangeStart + 1);
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            return;
         }
         
-        @Override
-        public long contentLength() throws IOException {
-            return rangeEnd - rangeStart + 1;
+        if (hlsFile && ranges == null) {
+            byte[] data = hlsPackagingService.readCached(file.toPath(), fileSize, lastModified);
+            if (data != null) {
+                response.getOutputStream().write(data);
+                return;
+            }
         }
         
-        @Override
-        public java.io.InputStream getInputStream() throws IOException {
-            java.io.RandomAccessFile raf = new java.io.RandomAccessFile(getFile(), "r");
-            raf.seek(rangeStart);
-            return new java.io.InputStream() {
-                private long remaining = rangeEnd - rangeStart + 1;
-                
-                @Override
-                public int read() throws IOException {
-                    if (remaining <= 0) {
-                        raf.close();
-                        return -1;
-                    }
-                    remaining--;
-                    return raf.read();
-                }
-                
-                @Override
-                public int read(byte[] b, int off, int len) throws IOException {
-                    if (remaining <= 0) {
-                        raf.close();
-                        return -1;
-                    }
-                    int toRead = (int) Math.min(len, remaining);
-                    int read = raf.read(b, off, toRead);
-                    if (read > 0) {
-                        remaining -= read;
-                    }
-                    if (remaining <= 0) {
-                        raf.close();
-                    }
-                    return read;
-                }
-                
-                @Override
-                public void close() throws IOException {
-                    raf.close();
-                }
-            };
+        BandwidthLimiter.Shaper shaper = !hlsFile && bandwidthLimiter.isEnabled()
+                ? bandwidthLimiter.open(resolveUserRole(request)) : null;
+        videoStreamService.transfer(request, response, file, lastModified, rangeStart, rangeEnd, shaper);
+    }
+    
+    /**
+     * HLS 播放列表和分片
+     * 路径格式：/uploads/hls/{视频文件名}/index.m3u8、init.mp4、seg_N.m4s
+     * 同名视频重新上传后会以相同的分片名重新封装，因此与视频一样每次用 ETag 协商，不按时间缓存
+     */
+    @GetMapping("/hls/**")
+    public void getHlsFile(@RequestHeader(value = "Range", required = false) String rangeHeader,
+                           HttpServletRequest request, HttpServletResponse response) {
+        try {
+            String path = request.getRequestURI().replaceFirst(".*/uploads/hls/", "");
+            path = java.net.URLDecoder.decode(path, "UTF-8");
+            int slash = path.lastIndexOf('/');
+            if (slash <= 0) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            String videoName = path.substring(0, slash);
+            String fileName = path.substring(slash + 1);
+            if (videoName.contains("/") || videoName.contains("\\") || videoName.contains("..")
+                    || !HLS_FILE_PATTERN.matcher(fileName).matches()) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            
+            Path file = hlsPackagingService.resolve(videoName, fileName);
+            if (file == null) {
+                // 尚未封装完成时返回 404，前端可回退到 MP4 播放
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            
+            String contentType;
+            if (HlsPackager.PLAYLIST_NAME.equals(fileName)) {
+                contentType = "application/vnd.apple.mpegurl";
+            } else {
+                contentType = fileName.endsWith(".m4s") ? "video/iso.segment" : VIDEO_CONTENT_TYPE;
+            }
+            serveFile(file.toFile(), contentType, rangeHeader, true, request, response);
+        } catch (Exception e) {
+            System.err.println("获取HLS文件失败: " + e.getMessage());
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+    
+    /**
+     * 获取当前用户角色，用于带宽分档
+     * /uploads/** 不经过 JWT 拦截器，角色直接取自 Token 的 role 声明，每个 Range 请求都不查库
+     * 只接受 Authorization 请求头：查询参数中的 Token 会进入访问日志和浏览器历史，video 标签发起的请求按匿名分档
+     */
+    private String resolveUserRole(HttpServletRequest request) {
+        Object role = request.getAttribute("userRole");
+        if (role != null) {
+            return role.toString();
+        }
+        String token = request.getHeader("Authorization");
+        if (token == null || !token.startsWith("Bearer ")) {
+            return null;
+        }
+        try {
+            return jwtUtil.getRoleFromToken(token.substring(7));
+        } catch (Exception e) {
+            System.err.println("解析视频请求用户角色失败: " + e.getMessage());
+            return null;
         }
     }
 }
@@ -0,0 +1,28 @@
+package com.movie.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * nextCursor 为下一页的请求参数 cursor，没有更多数据时为 null；total 仅在请求 withTotal=true 时返回
+ */
+@Data
+public class CursorPage<T> {
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasNext;
+    private int size;
+    private Long total;
+
+    public static <T> CursorPage<T> of(List<T> content, String nextCursor, int size, Long total) {
+        CursorPage<T> page = new CursorPage<>();
+        page.setContent(content);
+        page.setNextCursor(nextCursor);
+        page.setHasNext(nextCursor != null);
+        page.setSize(size);
+        page.setTotal(total);
+        return page;
+    }
+}
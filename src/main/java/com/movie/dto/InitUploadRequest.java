@@ -8,6 +8,8 @@ public class InitUploadRequest {
     private Long fileSize;
     private String fileType;
     private Long chunkSize;
+    // 可选，文件内容的 SHA-256；服务器已有相同内容时直接完成上传
+    private String sha256;
 }
 
 
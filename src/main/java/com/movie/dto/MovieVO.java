@@ -56,5 +56,31 @@ public class MovieVO {
         vo.setIsFavorited(false); // 默认值，需要在Service中设置
         return vo;
     }
+
+    /**
+     * 复制一份（详情缓存中的快照不直接交给调用方修改）
+     */
+    public MovieVO copy() {
+        MovieVO vo = new MovieVO();
+        vo.setId(id);
+        vo.setTitle(title);
+        vo.setDescription(description);
+        vo.setCoverImage(coverImage);
+        vo.setVideoUrl(videoUrl);
+        vo.setReleaseDate(releaseDate);
+        vo.setDirector(director);
+        vo.setActors(actors);
+        vo.setDuration(duration);
+        vo.setRating(rating);
+        vo.setViewCount(viewCount);
+        vo.setCategoryId(categoryId);
+        vo.setCategoryName(categoryName);
+        vo.setCreateTime(createTime);
+        vo.setUpdateTime(updateTime);
+        vo.setUserId(userId);
+        vo.setUsername(username);
+        vo.setIsFavorited(isFavorited);
+        return vo;
+    }
 }
 
@@ -42,7 +42,8 @@ public class Movie {
     @Column(name = "rating")
     private Double rating = 0.0;
 
-    @Column(name = "view_count")
+    // 浏览量只由 ViewCountBuffer 以增量 UPDATE 写入，保存实体时不能用读取时的旧值覆盖
+    @Column(name = "view_count", updatable = false)
     private Integer viewCount = 0;
 
     @ManyToOne
@@ -33,7 +33,8 @@ public class News {
     @Column(name = "is_top")
     private Integer isTop = 0; // 是否置顶：1=置顶, 0=普通
 
-    @Column(name = "view_count")
+    // 浏览量只由 ViewCountBuffer 以增量 UPDATE 写入，保存实体时不能用读取时的旧值覆盖
+    @Column(name = "view_count", updatable = false)
     private Integer viewCount = 0;
 
     @Column(name = "create_time")
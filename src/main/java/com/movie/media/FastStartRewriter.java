@@ -0,0 +1,213 @@
+package com.movie.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MP4 快速启动（fast-start）重写：把位于 mdat 之后的 moov 移到 mdat 之前，并修正 stco/co64 块偏移
+ * 只有 moov 读入内存，mdat 通过 transferTo 流式复制，多 GB 文件也只占用 moov 大小的内存
+ */
+public final class FastStartRewriter {
+
+    private static final long MAX_32BIT_OFFSET = 0xFFFFFFFFL;
+
+    private FastStartRewriter() {
+    }
+
+    /**
+     * 将 source 重写为 fast-start 布局并写入 target
+     * @return false 表示已经是 fast-start 布局，未写入 target
+     */
+    public static boolean rewrite(Path source, Path target) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<Mp4Box> boxes = Mp4Box.scanTopLevel(input);
+            if (!needsRewrite(boxes)) {
+                return false;
+            }
+            Mp4Box moovBox = null;
+            for (Mp4Box box : boxes) {
+                if (box.is("moov")) {
+                    moovBox = box;
+                }
+            }
+            if (moovBox.getSize() > Mp4Movie.MAX_MOOV_SIZE) {
+                throw new IOException("moov 过大: " + moovBox.getSize() + " bytes");
+            }
+            ByteBuffer moov = ByteBuffer.allocate((int) moovBox.getSize());
+            Mp4Box.readFully(input, moov, moovBox.getOffset());
+            moov.flip();
+            Mp4Box moovRoot = new Mp4Box("moov", 0, moovBox.getHeaderSize(), moovBox.getSize());
+
+            // 新布局：mdat 之前的 box（ftyp 等）+ moov + 其余 box
+            List<Mp4Box> order = new ArrayList<>();
+            int firstMdat = indexOfFirstMdat(boxes);
+            for (int i = 0; i < firstMdat; i++) {
+                order.add(boxes.get(i));
+            }
+            order.add(moovBox);
+            for (int i = firstMdat; i < boxes.size(); i++) {
+                if (boxes.get(i) != moovBox) {
+                    order.add(boxes.get(i));
+                }
+            }
+
+            // 先尝试保留 32 位 stco，偏移溢出时整体升级为 co64 再重新计算
+            byte[] newMoov = rebuild(moov, moovRoot, boxes, order, moovBox, false);
+            if (newMoov == null) {
+                newMoov = rebuild(moov, moovRoot, boxes, order, moovBox, true);
+            }
+
+            try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Mp4Box box : order) {
+                    if (box == moovBox) {
+                        ByteBuffer buffer = ByteBuffer.wrap(newMoov);
+                        while (buffer.hasRemaining()) {
+                            output.write(buffer);
+                        }
+                    } else {
+                        copyRange(input, output, box.getOffset(), box.getSize());
+                    }
+                }
+                output.force(false);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * moov 位于第一个 mdat 之后时需要重写
+     */
+    private static boolean needsRewrite(List<Mp4Box> boxes) {
+        int firstMdat = indexOfFirstMdat(boxes);
+        for (int i = 0; i < boxes.size(); i++) {
+            if (boxes.get(i).is("moov")) {
+                return firstMdat >= 0 && i > firstMdat;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfFirstMdat(List<Mp4Box> boxes) {
+        for (int i = 0; i < boxes.size(); i++) {
+            if (boxes.get(i).is("mdat")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 重建 moov 并修正所有块偏移
+     * @return upgradeToCo64 为 false 且存在超过 32 位的偏移时返回 null
+     */
+    private static byte[] rebuild(ByteBuffer moov, Mp4Box moovRoot, List<Mp4Box> boxes, List<Mp4Box> order,
+                                  Mp4Box moovBox, boolean upgradeToCo64) throws IOException {
+        Mp4Writer writer = new Mp4Writer((int) moovRoot.getSize() + 1024);
+        List<int[]> tables = new ArrayList<>();  // {表在新 moov 中的起始位置, 表项数, 是否64位}
+        writeBox(writer, moov, moovRoot, upgradeToCo64, tables);
+        byte[] newMoov = writer.toByteArray();
+
+        // 计算每个顶层 box 在新文件中的位置
+        long[] newOffsets = new long[boxes.size()];
+        long position = 0;
+        for (Mp4Box box : order) {
+            newOffsets[boxes.indexOf(box)] = position;
+            position += box == moovBox ? newMoov.length : box.getSize();
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(newMoov);
+        for (int[] table : tables) {
+            int start = table[0];
+            int count = table[1];
+            boolean is64 = table[2] == 1;
+            for (int i = 0; i < count; i++) {
+                int at = start + (is64 ? 8 : 4) * i;
+                long oldOffset = is64 ? out.getLong(at) : out.getInt(at) & 0xFFFFFFFFL;
+                long newOffset = relocate(oldOffset, boxes, newOffsets);
+                if (is64) {
+                    out.putLong(at, newOffset);
+                } else if (newOffset > MAX_32BIT_OFFSET) {
+                    return null;
+                } else {
+                    out.putInt(at, (int) newOffset);
+                }
+            }
+        }
+        return newMoov;
+    }
+
+    /**
+     * 将原文件中的偏移映射到新文件中的偏移
+     */
+    private static long relocate(long oldOffset, List<Mp4Box> boxes, long[] newOffsets) throws IOException {
+        for (int i = 0; i < boxes.size(); i++) {
+            Mp4Box box = boxes.get(i);
+            if (oldOffset >= box.getOffset() && oldOffset < box.getEnd()) {
+                return newOffsets[i] + (oldOffset - box.getOffset());
+            }
+        }
+        throw new IOException("块偏移超出文件范围: " + oldOffset);
+    }
+
+    /**
+     * 递归复制 box；样本表路径上的容器重新计算长度，stco 在需要时升级为 co64
+     * 块偏移表的位置记录到 tables 中，值保持原文件偏移，稍后统一修正
+     */
+    private static void writeBox(Mp4Writer writer, ByteBuffer moov, Mp4Box box, boolean upgradeToCo64,
+                                 List<int[]> tables) throws IOException {
+        String type = box.getType();
+        if (type.equals("moov") || type.equals("trak") || type.equals("mdia")
+                || type.equals("minf") || type.equals("stbl")) {
+            writer.startBox(type);
+            for (Mp4Box child : Mp4Box.children(moov, box.getDataOffset(), box.getEnd())) {
+                writeBox(writer, moov, child, upgradeToCo64, tables);
+            }
+            writer.endBox();
+            return;
+        }
+
+        if (type.equals("stco") || type.equals("co64")) {
+            boolean source64 = type.equals("co64");
+            int count = moov.getInt((int) box.getDataOffset() + 4);
+            if (count < 0 || box.getDataOffset() + 8 + (long) count * (source64 ? 8 : 4) > box.getEnd()) {
+                throw new IOException("MP4 文件损坏: " + type + " 表项数量非法");
+            }
+            boolean target64 = source64 || upgradeToCo64;
+            writer.startFullBox(target64 ? "co64" : "stco", 0, 0);
+            writer.writeInt(count);
+            tables.add(new int[]{writer.position(), count, target64 ? 1 : 0});
+            for (int i = 0; i < count; i++) {
+                long offset = source64
+                        ? moov.getLong((int) (box.getDataOffset() + 8 + 8L * i))
+                        : moov.getInt((int) (box.getDataOffset() + 8 + 4L * i)) & 0xFFFFFFFFL;
+                if (target64) {
+                    writer.writeLong(offset);
+                } else {
+                    writer.writeInt((int) offset);
+                }
+            }
+            writer.endBox();
+            return;
+        }
+
+        writer.writeBytes(Mp4Box.copy(moov, box));
+    }
+
+    private static void copyRange(FileChannel input, FileChannel output, long position, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long written = input.transferTo(position, remaining, output);
+            if (written <= 0) {
+                throw new IOException("复制 MP4 数据失败，偏移: " + position);
+            }
+            position += written;
+            remaining -= written;
+        }
+    }
+}
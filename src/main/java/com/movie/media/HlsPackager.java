@@ -0,0 +1,312 @@
+package com.movie.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 将常规 MP4 重新封装为 HLS（fMP4 分片 + m3u8 播放列表），纯 Java 实现，不做转码
+ * 输出：init.mp4（初始化分片）、seg_N.m4s（媒体分片）、index.m3u8
+ * 分片在视频关键帧处切分，样本数据直接从源文件 transferTo 到分片文件
+ */
+public final class HlsPackager {
+
+    public static final String PLAYLIST_NAME = "index.m3u8";
+    public static final String INIT_SEGMENT_NAME = "init.mp4";
+
+    // trun 中的样本标志：关键帧 / 依赖其他帧的非关键帧
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+    private HlsPackager() {
+    }
+
+    /**
+     * 封装 MP4 为 HLS
+     * @param source 源 MP4 文件
+     * @param outputDir 输出目录（需已存在）
+     * @param targetSeconds 目标分片时长（秒）
+     * @return 生成的分片数量
+     */
+    public static int pack(Path source, Path outputDir, double targetSeconds) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            Mp4Movie movie = Mp4Movie.parse(input);
+            List<Mp4Track> tracks = new ArrayList<>();
+            for (Mp4Track track : movie.getTracks()) {
+                if ((track.isVideo() || track.isAudio()) && track.getSampleCount() > 0 && track.getTimescale() > 0) {
+                    tracks.add(track);
+                }
+            }
+            if (tracks.isEmpty()) {
+                throw new IOException("MP4 中没有可封装的音视频轨道");
+            }
+
+            // 以第一条视频轨道为基准切分，纯音频文件按时长切分
+            Mp4Track reference = tracks.get(0);
+            for (Mp4Track track : tracks) {
+                if (track.isVideo()) {
+                    reference = track;
+                    break;
+                }
+            }
+            List<Integer> boundaries = computeBoundaries(reference, targetSeconds);
+
+            Files.write(outputDir.resolve(INIT_SEGMENT_NAME), buildInitSegment(movie, tracks));
+
+            int segmentCount = boundaries.size();
+            double[] segmentDurations = new double[segmentCount];
+            int[] cursors = new int[tracks.size()];
+            for (int segment = 0; segment < segmentCount; segment++) {
+                int referenceStart = boundaries.get(segment);
+                int referenceEnd = segment + 1 < segmentCount ? boundaries.get(segment + 1) : reference.getSampleCount();
+                long startTime = reference.getDecodeTime(referenceStart);
+                long endTime = referenceEnd < reference.getSampleCount()
+                        ? reference.getDecodeTime(referenceEnd) : reference.getDuration();
+                segmentDurations[segment] = (double) (endTime - startTime) / reference.getTimescale();
+
+                // 其他轨道按时间对齐到同一分片
+                int[] from = new int[tracks.size()];
+                int[] to = new int[tracks.size()];
+                for (int t = 0; t < tracks.size(); t++) {
+                    Mp4Track track = tracks.get(t);
+                    from[t] = cursors[t];
+                    if (track == reference) {
+                        to[t] = referenceEnd;
+                    } else if (segment + 1 == segmentCount) {
+                        to[t] = track.getSampleCount();
+                    } else {
+                        double boundarySeconds = (double) endTime / reference.getTimescale();
+                        int end = from[t];
+                        while (end < track.getSampleCount()
+                                && (double) track.getDecodeTime(end) / track.getTimescale() < boundarySeconds) {
+                            end++;
+                        }
+                        to[t] = end;
+                    }
+                    cursors[t] = to[t];
+                }
+                writeMediaSegment(input, outputDir.resolve(segmentName(segment)), segment + 1, tracks, from, to);
+            }
+
+            Files.write(outputDir.resolve(PLAYLIST_NAME), buildPlaylist(segmentDurations).getBytes(StandardCharsets.UTF_8));
+            return segmentCount;
+        }
+    }
+
+    public static String segmentName(int index) {
+        return "seg_" + index + ".m4s";
+    }
+
+    /**
+     * 计算每个分片在基准轨道中的起始样本：从关键帧开始，累计时长达到目标后在下一个关键帧切分
+     */
+    private static List<Integer> computeBoundaries(Mp4Track reference, double targetSeconds) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        long target = Math.max(1, (long) (targetSeconds * reference.getTimescale()));
+        long segmentStart = reference.getDecodeTime(0);
+        for (int i = 1; i < reference.getSampleCount(); i++) {
+            if (reference.isSync(i) && reference.getDecodeTime(i) - segmentStart >= target) {
+                boundaries.add(i);
+                segmentStart = reference.getDecodeTime(i);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * 初始化分片：ftyp + moov（样本表为空，附带 mvex）
+     */
+    private static byte[] buildInitSegment(Mp4Movie movie, List<Mp4Track> tracks) {
+        Mp4Writer writer = new Mp4Writer(4096);
+        writer.startBox("ftyp");
+        writer.writeInt(Mp4Box.fourcc("iso6"));
+        writer.writeInt(0);
+        writer.writeInt(Mp4Box.fourcc("iso6"));
+        writer.writeInt(Mp4Box.fourcc("mp41"));
+        writer.endBox();
+
+        writer.startBox("moov");
+        writer.writeBytes(movie.getMvhd());
+        for (Mp4Track track : tracks) {
+            writer.startBox("trak");
+            writer.writeBytes(track.tkhd);
+            writer.writeBytes(track.edts);
+            writer.startBox("mdia");
+            writer.writeBytes(track.mdhd);
+            writer.writeBytes(track.hdlr);
+            writer.startBox("minf");
+            writer.writeBytes(track.mediaHeader);
+            writer.writeBytes(track.dinf);
+            writer.startBox("stbl");
+            writer.writeBytes(track.stsd);
+            writer.startFullBox("stts", 0, 0);
+            writer.writeInt(0);
+            writer.endBox();
+            writer.startFullBox("stsc", 0, 0);
+            writer.writeInt(0);
+            writer.endBox();
+            writer.startFullBox("stsz", 0, 0);
+            writer.writeInt(0);
+            writer.writeInt(0);
+            writer.endBox();
+            writer.startFullBox("stco", 0, 0);
+            writer.writeInt(0);
+            writer.endBox();
+            writer.endBox(); // stbl
+            writer.endBox(); // minf
+            writer.endBox(); // mdia
+            writer.endBox(); // trak
+        }
+        writer.startBox("mvex");
+        for (Mp4Track track : tracks) {
+            writer.startFullBox("trex", 0, 0);
+            writer.writeInt(track.trackId);
+            writer.writeInt(1); // default_sample_description_index
+            writer.writeInt(0);
+            writer.writeInt(0);
+            writer.writeInt(0);
+            writer.endBox();
+        }
+        writer.endBox(); // mvex
+        writer.endBox(); // moov
+        return writer.toByteArray();
+    }
+
+    /**
+     * 媒体分片：moof（每条轨道一个 traf）+ mdat（各轨道样本依次排列）
+     */
+    private static void writeMediaSegment(FileChannel input, Path target, int sequenceNumber,
+                                          List<Mp4Track> tracks, int[] from, int[] to) throws IOException {
+        long payloadSize = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            for (int i = from[t]; i < to[t]; i++) {
+                payloadSize += track.sizes[i] & 0xFFFFFFFFL;
+            }
+        }
+        boolean largeMdat = payloadSize + 8 > 0xFFFFFFFFL;
+        int mdatHeaderSize = largeMdat ? 16 : 8;
+
+        Mp4Writer writer = new Mp4Writer(1024);
+        int[] dataOffsetPositions = new int[tracks.size()];
+        writer.startBox("moof");
+        writer.startFullBox("mfhd", 0, 0);
+        writer.writeInt(sequenceNumber);
+        writer.endBox();
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            int count = to[t] - from[t];
+            writer.startBox("traf");
+            writer.startFullBox("tfhd", 0, 0x020000); // default-base-is-moof
+            writer.writeInt(track.trackId);
+            writer.endBox();
+            writer.startFullBox("tfdt", 1, 0);
+            writer.writeLong(count > 0 ? track.getDecodeTime(from[t]) : track.getDuration());
+            writer.endBox();
+            // data-offset | duration | size | flags | composition-time-offset
+            writer.startFullBox("trun", 1, 0x000001 | 0x000100 | 0x000200 | 0x000400 | 0x000800);
+            writer.writeInt(count);
+            dataOffsetPositions[t] = writer.position();
+            writer.writeInt(0); // data_offset，moof 写完后回填
+            for (int i = from[t]; i < to[t]; i++) {
+                writer.writeInt(track.durations[i]);
+                writer.writeInt(track.sizes[i]);
+                writer.writeInt(track.isSync(i) ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS);
+                writer.writeInt(track.compositionOffsets != null ? track.compositionOffsets[i] : 0);
+            }
+            writer.endBox(); // trun
+            writer.endBox(); // traf
+        }
+        writer.endBox(); // moof
+
+        int moofSize = writer.position();
+        long dataOffset = moofSize + mdatHeaderSize;
+        for (int t = 0; t < tracks.size(); t++) {
+            writer.putInt(dataOffsetPositions[t], (int) dataOffset);
+            Mp4Track track = tracks.get(t);
+            for (int i = from[t]; i < to[t]; i++) {
+                dataOffset += track.sizes[i] & 0xFFFFFFFFL;
+            }
+        }
+
+        ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+        if (largeMdat) {
+            mdatHeader.putInt(1).putInt(Mp4Box.fourcc("mdat")).putLong(payloadSize + 16);
+        } else {
+            mdatHeader.putInt((int) (payloadSize + 8)).putInt(Mp4Box.fourcc("mdat"));
+        }
+        mdatHeader.flip();
+
+        try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(output, ByteBuffer.wrap(writer.toByteArray()));
+            writeFully(output, mdatHeader);
+            for (int t = 0; t < tracks.size(); t++) {
+                copySamples(input, output, tracks.get(t), from[t], to[t]);
+            }
+        }
+    }
+
+    /**
+     * 复制样本数据，源文件中连续存放的样本合并为一次 transferTo
+     */
+    private static void copySamples(FileChannel input, FileChannel output, Mp4Track track,
+                                    int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            long runStart = track.offsets[i];
+            long runLength = track.sizes[i] & 0xFFFFFFFFL;
+            int j = i + 1;
+            while (j < to && track.offsets[j] == runStart + runLength) {
+                runLength += track.sizes[j] & 0xFFFFFFFFL;
+                j++;
+            }
+            long position = runStart;
+            long remaining = runLength;
+            while (remaining > 0) {
+                long written = input.transferTo(position, remaining, output);
+                if (written <= 0) {
+                    throw new IOException("读取样本数据失败，偏移: " + position);
+                }
+                position += written;
+                remaining -= written;
+            }
+            i = j;
+        }
+    }
+
+    private static String buildPlaylist(double[] segmentDurations) {
+        long targetDuration = 1;
+        for (double duration : segmentDurations) {
+            targetDuration = Math.max(targetDuration, (long) Math.ceil(duration));
+        }
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:7\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append(targetDuration).append('\n');
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+        playlist.append("#EXT-X-MAP:URI=\"").append(INIT_SEGMENT_NAME).append("\"\n");
+        for (int i = 0; i < segmentDurations.length; i++) {
+            playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segmentDurations[i]));
+            playlist.append(segmentName(i)).append('\n');
+        }
+        playlist.append("#EXT-X-ENDLIST\n");
+        return playlist.toString();
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.movie.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MP4（ISO BMFF）box 头信息及解析工具
+ * offset 为 box 在文件或内存缓冲区中的起始位置，size 为包含头部的完整长度
+ */
+public final class Mp4Box {
+    private final String type;
+    private final long offset;
+    private final int headerSize;
+    private final long size;
+
+    public Mp4Box(String type, long offset, int headerSize, long size) {
+        this.type = type;
+        this.offset = offset;
+        this.headerSize = headerSize;
+        this.size = size;
+    }
+
+    public String getType() { return type; }
+
+    public long getOffset() { return offset; }
+
+    public int getHeaderSize() { return headerSize; }
+
+    public long getSize() { return size; }
+
+    /**
+     * box 内容（不含头部）的起始位置
+     */
+    public long getDataOffset() {
+        return offset + headerSize;
+    }
+
+    public long getEnd() {
+        return offset + size;
+    }
+
+    public boolean is(String boxType) {
+        return type.equals(boxType);
+    }
+
+    /**
+     * 扫描文件中的顶层 box（ftyp、moov、mdat 等），不读取 box 内容
+     */
+    public static List<Mp4Box> scanTopLevel(FileChannel channel) throws IOException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long position = 0;
+        while (position + 8 <= fileSize) {
+            header.clear();
+            header.limit((int) Math.min(16, fileSize - position));
+            readFully(channel, header, position);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            String type = fourcc(header.getInt());
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    throw new IOException("MP4 文件损坏: " + type + " box 头部不完整");
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                // 延伸到文件末尾
+                size = fileSize - position;
+            }
+            if (size < headerSize || position + size > fileSize) {
+                throw new IOException("MP4 文件损坏: " + type + " box 长度非法");
+            }
+            boxes.add(new Mp4Box(type, position, headerSize, size));
+            position += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * 解析内存缓冲区中 [start, end) 范围内的所有子 box
+     */
+    public static List<Mp4Box> children(ByteBuffer data, long start, long end) throws IOException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        long position = start;
+        while (position + 8 <= end) {
+            int pos = (int) position;
+            long size = data.getInt(pos) & 0xFFFFFFFFL;
+            String type = fourcc(data.getInt(pos + 4));
+            int headerSize = 8;
+            if (size == 1) {
+                if (position + 16 > end) {
+                    throw new IOException("MP4 文件损坏: " + type + " box 头部不完整");
+                }
+                size = data.getLong(pos + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                throw new IOException("MP4 文件损坏: " + type + " box 长度非法");
+            }
+            boxes.add(new Mp4Box(type, position, headerSize, size));
+            position += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * 查找父 box 下第一个指定类型的子 box，不存在时返回 null
+     */
+    public static Mp4Box child(ByteBuffer data, Mp4Box parent, String type) throws IOException {
+        for (Mp4Box box : children(data, parent.getDataOffset(), parent.getEnd())) {
+            if (box.is(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 复制 box 的完整字节（含头部），box 不存在时返回 null
+     */
+    public static byte[] copy(ByteBuffer data, Mp4Box box) {
+        if (box == null) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) box.getSize()];
+        ByteBuffer view = data.duplicate();
+        view.position((int) box.getOffset());
+        view.get(bytes);
+        return bytes;
+    }
+
+    public static String fourcc(int value) {
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    public static int fourcc(String type) {
+        byte[] bytes = type.getBytes(StandardCharsets.ISO_8859_1);
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("MP4 文件意外结束");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + offset + "+" + size;
+    }
+}
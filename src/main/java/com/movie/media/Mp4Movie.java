@@ -0,0 +1,245 @@
+package com.movie.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析 MP4 文件的 moov，得到各轨道的样本表
+ * 只支持常规（非分片）MP4，mdat 内容不会被读取
+ */
+public class Mp4Movie {
+
+    // moov 读入内存的上限，正常影片的 moov 只有几 MB
+    public static final long MAX_MOOV_SIZE = 256L * 1024 * 1024;
+
+    private byte[] mvhd;
+    private long timescale;
+    private final List<Mp4Track> tracks = new ArrayList<>();
+
+    public byte[] getMvhd() { return mvhd; }
+
+    public long getTimescale() { return timescale; }
+
+    public List<Mp4Track> getTracks() { return tracks; }
+
+    public static Mp4Movie parse(FileChannel channel) throws IOException {
+        Mp4Box moovBox = null;
+        for (Mp4Box box : Mp4Box.scanTopLevel(channel)) {
+            if (box.is("moov")) {
+                moovBox = box;
+            } else if (box.is("moof")) {
+                throw new IOException("暂不支持已分片的 MP4");
+            }
+        }
+        if (moovBox == null) {
+            throw new IOException("MP4 文件缺少 moov");
+        }
+        if (moovBox.getSize() > MAX_MOOV_SIZE) {
+            throw new IOException("moov 过大: " + moovBox.getSize() + " bytes");
+        }
+
+        ByteBuffer moov = ByteBuffer.allocate((int) moovBox.getSize());
+        Mp4Box.readFully(channel, moov, moovBox.getOffset());
+        moov.flip();
+        return parseMoov(moov);
+    }
+
+    /**
+     * 解析完整的 moov box（缓冲区从 moov 头部开始）
+     */
+    public static Mp4Movie parseMoov(ByteBuffer moov) throws IOException {
+        Mp4Movie movie = new Mp4Movie();
+        Mp4Box root = new Mp4Box("moov", 0, 8, moov.limit());
+        for (Mp4Box box : Mp4Box.children(moov, root.getDataOffset(), root.getEnd())) {
+            if (box.is("mvhd")) {
+                movie.mvhd = Mp4Box.copy(moov, box);
+                int version = moov.get((int) box.getDataOffset()) & 0xFF;
+                movie.timescale = readUInt(moov, box.getDataOffset() + (version == 1 ? 20 : 12));
+            } else if (box.is("mvex")) {
+                throw new IOException("暂不支持已分片的 MP4");
+            } else if (box.is("trak")) {
+                Mp4Track track = parseTrack(moov, box);
+                if (track != null) {
+                    movie.tracks.add(track);
+                }
+            }
+        }
+        return movie;
+    }
+
+    private static Mp4Track parseTrack(ByteBuffer moov, Mp4Box trak) throws IOException {
+        Mp4Box tkhd = Mp4Box.child(moov, trak, "tkhd");
+        Mp4Box mdia = Mp4Box.child(moov, trak, "mdia");
+        if (tkhd == null || mdia == null) {
+            return null;
+        }
+        Mp4Box mdhd = Mp4Box.child(moov, mdia, "mdhd");
+        Mp4Box hdlr = Mp4Box.child(moov, mdia, "hdlr");
+        Mp4Box minf = Mp4Box.child(moov, mdia, "minf");
+        if (mdhd == null || hdlr == null || minf == null) {
+            return null;
+        }
+        Mp4Box stbl = Mp4Box.child(moov, minf, "stbl");
+        if (stbl == null) {
+            return null;
+        }
+
+        Mp4Track track = new Mp4Track();
+        int tkhdVersion = moov.get((int) tkhd.getDataOffset()) & 0xFF;
+        track.trackId = moov.getInt((int) (tkhd.getDataOffset() + (tkhdVersion == 1 ? 20 : 12)));
+        int mdhdVersion = moov.get((int) mdhd.getDataOffset()) & 0xFF;
+        track.timescale = readUInt(moov, mdhd.getDataOffset() + (mdhdVersion == 1 ? 20 : 12));
+        track.handlerType = Mp4Box.fourcc(moov.getInt((int) hdlr.getDataOffset() + 8));
+
+        track.tkhd = Mp4Box.copy(moov, tkhd);
+        track.edts = Mp4Box.copy(moov, Mp4Box.child(moov, trak, "edts"));
+        track.mdhd = Mp4Box.copy(moov, mdhd);
+        track.hdlr = Mp4Box.copy(moov, hdlr);
+        track.dinf = Mp4Box.copy(moov, Mp4Box.child(moov, minf, "dinf"));
+        for (Mp4Box box : Mp4Box.children(moov, minf.getDataOffset(), minf.getEnd())) {
+            if (box.is("vmhd") || box.is("smhd") || box.is("sthd") || box.is("nmhd")) {
+                track.mediaHeader = Mp4Box.copy(moov, box);
+            }
+        }
+
+        Mp4Box stsd = null, stts = null, ctts = null, stss = null, stsz = null, stsc = null, stco = null, co64 = null;
+        for (Mp4Box box : Mp4Box.children(moov, stbl.getDataOffset(), stbl.getEnd())) {
+            switch (box.getType()) {
+                case "stsd": stsd = box; break;
+                case "stts": stts = box; break;
+                case "ctts": ctts = box; break;
+                case "stss": stss = box; break;
+                case "stsz": stsz = box; break;
+                case "stsc": stsc = box; break;
+                case "stco": stco = box; break;
+                case "co64": co64 = box; break;
+                case "stz2": throw new IOException("暂不支持 stz2 样本表");
+                default: break;
+            }
+        }
+        if (stsd == null || stts == null || stsz == null || stsc == null || (stco == null && co64 == null)) {
+            throw new IOException("轨道 " + track.trackId + " 的样本表不完整");
+        }
+        track.stsd = Mp4Box.copy(moov, stsd);
+
+        readSizes(moov, stsz, track);
+        readDurations(moov, stts, track);
+        if (ctts != null) {
+            readCompositionOffsets(moov, ctts, track);
+        }
+        if (stss != null) {
+            readSyncSamples(moov, stss, track);
+        }
+        readOffsets(moov, stsc, stco != null ? stco : co64, co64 != null && stco == null, track);
+        return track;
+    }
+
+    private static void readSizes(ByteBuffer moov, Mp4Box stsz, Mp4Track track) throws IOException {
+        long pos = stsz.getDataOffset() + 4;
+        int sampleSize = moov.getInt((int) pos);
+        int count = checkCount(moov.getInt((int) pos + 4), sampleSize == 0 ? 4 : 0, pos + 8, stsz);
+        track.sampleCount = count;
+        track.sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            track.sizes[i] = sampleSize != 0 ? sampleSize : moov.getInt((int) (pos + 8 + 4L * i));
+        }
+    }
+
+    private static void readDurations(ByteBuffer moov, Mp4Box stts, Mp4Track track) throws IOException {
+        long pos = stts.getDataOffset() + 4;
+        int entries = checkCount(moov.getInt((int) pos), 8, pos + 4, stts);
+        track.durations = new int[track.sampleCount];
+        track.decodeTimes = new long[track.sampleCount];
+        int sample = 0;
+        long time = 0;
+        for (int i = 0; i < entries && sample < track.sampleCount; i++) {
+            int count = moov.getInt((int) (pos + 4 + 8L * i));
+            int delta = moov.getInt((int) (pos + 8 + 8L * i));
+            for (int j = 0; j < count && sample < track.sampleCount; j++) {
+                track.durations[sample] = delta;
+                track.decodeTimes[sample] = time;
+                time += delta;
+                sample++;
+            }
+        }
+        if (sample < track.sampleCount) {
+            throw new IOException("轨道 " + track.trackId + " 的 stts 与 stsz 样本数不一致");
+        }
+    }
+
+    private static void readCompositionOffsets(ByteBuffer moov, Mp4Box ctts, Mp4Track track) throws IOException {
+        long pos = ctts.getDataOffset() + 4;
+        int entries = checkCount(moov.getInt((int) pos), 8, pos + 4, ctts);
+        track.compositionOffsets = new int[track.sampleCount];
+        int sample = 0;
+        for (int i = 0; i < entries && sample < track.sampleCount; i++) {
+            int count = moov.getInt((int) (pos + 4 + 8L * i));
+            int offset = moov.getInt((int) (pos + 8 + 8L * i));
+            for (int j = 0; j < count && sample < track.sampleCount; j++) {
+                track.compositionOffsets[sample++] = offset;
+            }
+        }
+    }
+
+    private static void readSyncSamples(ByteBuffer moov, Mp4Box stss, Mp4Track track) throws IOException {
+        long pos = stss.getDataOffset() + 4;
+        int entries = checkCount(moov.getInt((int) pos), 4, pos + 4, stss);
+        track.syncSamples = new boolean[track.sampleCount];
+        for (int i = 0; i < entries; i++) {
+            int sampleNumber = moov.getInt((int) (pos + 4 + 4L * i));
+            if (sampleNumber >= 1 && sampleNumber <= track.sampleCount) {
+                track.syncSamples[sampleNumber - 1] = true;
+            }
+        }
+    }
+
+    /**
+     * 根据 stsc（样本到块的映射）和 stco/co64（块偏移）计算每个样本在文件中的偏移
+     */
+    private static void readOffsets(ByteBuffer moov, Mp4Box stsc, Mp4Box chunkOffsets, boolean largeOffsets,
+                                    Mp4Track track) throws IOException {
+        long chunkPos = chunkOffsets.getDataOffset() + 4;
+        int chunkCount = checkCount(moov.getInt((int) chunkPos), largeOffsets ? 8 : 4, chunkPos + 4, chunkOffsets);
+        long stscPos = stsc.getDataOffset() + 4;
+        int stscEntries = checkCount(moov.getInt((int) stscPos), 12, stscPos + 4, stsc);
+
+        track.offsets = new long[track.sampleCount];
+        int sample = 0;
+        for (int entry = 0; entry < stscEntries && sample < track.sampleCount; entry++) {
+            long entryPos = stscPos + 4 + 12L * entry;
+            int firstChunk = moov.getInt((int) entryPos);
+            int samplesPerChunk = moov.getInt((int) entryPos + 4);
+            int nextFirstChunk = entry + 1 < stscEntries ? moov.getInt((int) entryPos + 12) : chunkCount + 1;
+            for (int chunk = firstChunk; chunk < nextFirstChunk && chunk <= chunkCount && sample < track.sampleCount; chunk++) {
+                long offset = largeOffsets
+                        ? moov.getLong((int) (chunkPos + 4 + 8L * (chunk - 1)))
+                        : readUInt(moov, chunkPos + 4 + 4L * (chunk - 1));
+                for (int i = 0; i < samplesPerChunk && sample < track.sampleCount; i++) {
+                    track.offsets[sample] = offset;
+                    offset += track.sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample < track.sampleCount) {
+            throw new IOException("轨道 " + track.trackId + " 的 stsc/stco 与样本数不一致");
+        }
+    }
+
+    /**
+     * 校验表项数量不会超出 box 范围，防止损坏文件导致超大数组分配
+     */
+    private static int checkCount(int count, int entrySize, long tableStart, Mp4Box box) throws IOException {
+        if (count < 0 || tableStart + (long) count * entrySize > box.getEnd()) {
+            throw new IOException("MP4 文件损坏: " + box.getType() + " 表项数量非法");
+        }
+        return count;
+    }
+
+    static long readUInt(ByteBuffer data, long position) {
+        return data.getInt((int) position) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,66 @@
+package com.movie.media;
+
+/**
+ * 从 stbl 样本表展开得到的单条轨道信息
+ * 样本数据以基本类型数组保存，一部两小时的影片也只占几 MB
+ */
+public class Mp4Track {
+    int trackId;
+    long timescale;
+    String handlerType;
+
+    // 生成 fMP4 初始化分片时原样复制的 box
+    byte[] tkhd;
+    byte[] edts;
+    byte[] mdhd;
+    byte[] hdlr;
+    byte[] mediaHeader;  // vmhd / smhd 等
+    byte[] dinf;
+    byte[] stsd;
+
+    int sampleCount;
+    long[] offsets;
+    int[] sizes;
+    int[] durations;
+    int[] compositionOffsets;  // 无 ctts 时为 null
+    boolean[] syncSamples;  // 无 stss 时为 null，表示全部为关键帧
+    long[] decodeTimes;
+
+    public int getTrackId() { return trackId; }
+
+    public long getTimescale() { return timescale; }
+
+    public String getHandlerType() { return handlerType; }
+
+    public int getSampleCount() { return sampleCount; }
+
+    public boolean isVideo() {
+        return "vide".equals(handlerType);
+    }
+
+    public boolean isAudio() {
+        return "soun".equals(handlerType);
+    }
+
+    public boolean isSync(int sample) {
+        return syncSamples == null || syncSamples[sample];
+    }
+
+    public long getDecodeTime(int sample) {
+        return decodeTimes[sample];
+    }
+
+    /**
+     * 轨道总时长（以轨道 timescale 为单位）
+     */
+    public long getDuration() {
+        if (sampleCount == 0) {
+            return 0;
+        }
+        return decodeTimes[sampleCount - 1] + durations[sampleCount - 1];
+    }
+
+    public double getDurationSeconds() {
+        return timescale > 0 ? (double) getDuration() / timescale : 0;
+    }
+}
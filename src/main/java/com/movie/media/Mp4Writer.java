@@ -0,0 +1,86 @@
+package com.movie.media;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 在内存中构造 MP4 box 的写入器，嵌套 box 的长度在 endBox 时回填
+ */
+final class Mp4Writer {
+    private byte[] buffer;
+    private int position;
+    private final int[] boxStarts = new int[16];
+    private int depth;
+
+    Mp4Writer(int initialCapacity) {
+        buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    void startBox(String type) {
+        boxStarts[depth++] = position;
+        writeInt(0);
+        writeBytes(type.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    void startFullBox(String type, int version, int flags) {
+        startBox(type);
+        writeInt((version << 24) | (flags & 0xFFFFFF));
+    }
+
+    void endBox() {
+        int start = boxStarts[--depth];
+        putInt(start, position - start);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(4);
+        putInt(position, value);
+        position += 4;
+    }
+
+    void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    void writeBytes(byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void putInt(int at, int value) {
+        buffer[at] = (byte) (value >>> 24);
+        buffer[at + 1] = (byte) (value >>> 16);
+        buffer[at + 2] = (byte) (value >>> 8);
+        buffer[at + 3] = (byte) value;
+    }
+
+    int position() {
+        return position;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
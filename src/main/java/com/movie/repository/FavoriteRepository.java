@@ -28,6 +28,12 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
     @Query("SELECT f FROM Favorite f JOIN FETCH f.movie m LEFT JOIN FETCH m.category WHERE f.user.id = :userId ORDER BY f.createTime DESC")
     List<Favorite> findByUserIdWithMovieAndCategory(@Param("userId") Long userId);
     
+    /**
+     * 用户收藏的电影ID（只查询ID列，用于加载收藏位图）
+     */
+    @Query("SELECT f.movie.id FROM Favorite f WHERE f.user.id = :userId")
+    List<Long> findMovieIdsByUserId(@Param("userId") Long userId);
+    
     /**
      * 根据电影ID查找所有收藏记录
      */
@@ -8,6 +8,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface MovieRepository extends JpaRepository<Movie, Long> {
     // 明确指定按ID升序排序，确保查询结果按ID排序
@@ -20,6 +22,27 @@ public interface MovieRepository extends JpaRepository<Movie, Long> {
     @Query("SELECT m FROM Movie m WHERE m.title LIKE CONCAT('%', :keyword, '%') AND m.category.id = :categoryId ORDER BY m.id ASC")
     Page<Movie> findByTitleContainingAndCategoryId(@Param("keyword") String keyword, @Param("categoryId") Long categoryId, Pageable pageable);
     
+    /**
+     * 游标分页：从 afterId 之后按ID升序取下一页（走主键索引定位，不扫描跳过的行，也不执行 COUNT）
+     * keyword、categoryId 为 null 时不作为条件；pageable 只用于限制条数
+     */
+    @Query("SELECT m FROM Movie m WHERE m.id > :afterId " +
+            "AND (:keyword IS NULL OR m.title LIKE CONCAT('%', :keyword, '%')) " +
+            "AND (:categoryId IS NULL OR m.category.id = :categoryId) " +
+            "ORDER BY m.id ASC")
+    List<Movie> findPageAfter(@Param("afterId") Long afterId, @Param("keyword") String keyword,
+                              @Param("categoryId") Long categoryId, Pageable pageable);
+    
+    /**
+     * 搜索索引所需的字段：id、title、director、actors、description、分类ID（启动时构建索引）
+     */
+    @Query("SELECT m.id, m.title, m.director, m.actors, m.description, c.id FROM Movie m LEFT JOIN m.category c")
+    List<Object[]> findSearchFields();
+    
+    @Query("SELECT COUNT(m) FROM Movie m WHERE (:keyword IS NULL OR m.title LIKE CONCAT('%', :keyword, '%')) " +
+            "AND (:categoryId IS NULL OR m.category.id = :categoryId)")
+    long countByFilter(@Param("keyword") String keyword, @Param("categoryId") Long categoryId);
+    
     /**
      * 查询电影列表，并在查询时判断是否被指定用户收藏
      * 使用LEFT JOIN favorites表来判断收藏状态
@@ -2,15 +2,34 @@ package com.movie.repository;
 
 import com.movie.entity.News;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface NewsRepository extends JpaRepository<News, Long> {
     Page<News> findByTitleContaining(String keyword, Pageable pageable);
     Page<News> findByStatus(Integer status, Pageable pageable);
     Page<News> findByTitleContainingAndStatus(String keyword, Integer status, Pageable pageable);
+    
+    /**
+     * 游标分页（默认排序）：从 afterId 之后按ID升序取下一页
+     * keyword、status 为 null 时不作为条件；pageable 只用于限制条数
+     */
+    @Query("SELECT n FROM News n WHERE n.id > :afterId " +
+            "AND (:keyword IS NULL OR n.title LIKE CONCAT('%', :keyword, '%')) " +
+            "AND (:status IS NULL OR n.status = :status) " +
+            "ORDER BY n.id ASC")
+    List<News> findPageAfter(@Param("afterId") Long afterId, @Param("keyword") String keyword,
+                             @Param("status") Integer status, Pageable pageable);
+    
+    @Query("SELECT COUNT(n) FROM News n WHERE (:keyword IS NULL OR n.title LIKE CONCAT('%', :keyword, '%')) " +
+            "AND (:status IS NULL OR n.status = :status)")
+    long countByFilter(@Param("keyword") String keyword, @Param("status") Integer status);
 }
 
 
@@ -0,0 +1,340 @@
+package com.movie.service;
+
+import com.movie.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 视频流带宽整形
+ * 三级令牌桶：单连接、同一角色所有连接合计、全局总量
+ * 单连接和角色合计速率都可按角色分别配置（如 VIP:8388608,ADMIN:0），未配置的角色使用默认速率并共用一个合计桶
+ * 令牌不足时由定时轮线程在令牌恢复后继续写出，不阻塞任何工作线程；
+ * 只在非阻塞写出中生效，关闭异步写出时不整形（见 VideoStreamService）
+ */
+@Service
+public class BandwidthLimiter {
+
+    @Value("${file.video.bandwidth.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.video.bandwidth.global-rate:0}")
+    private long globalRate;
+
+    // 未单独配置的角色的单连接速率
+    @Value("${file.video.bandwidth.connection-rate:0}")
+    private long connectionRate;
+
+    // 按角色的单连接速率，格式 角色:字节每秒，逗号分隔
+    @Value("${file.video.bandwidth.role-connection-rates:}")
+    private String roleConnectionRatesConfig;
+
+    // 未单独配置的角色所有连接合计速率（这些角色共用）
+    @Value("${file.video.bandwidth.role-rate:0}")
+    private long roleRate;
+
+    // 按角色的所有连接合计速率，格式同上
+    @Value("${file.video.bandwidth.role-rates:}")
+    private String roleRatesConfig;
+
+    @Value("${file.video.bandwidth.burst-ms:200}")
+    private long burstMillis;
+
+    @Value("${file.video.async.enabled:true}")
+    private boolean asyncEnabled;
+
+    // 单次写出的最小字节数，避免令牌刚恢复一点就写很小的数据块
+    private static final long MIN_WRITE = 16 * 1024;
+
+    // 未登录用户在按角色配置中使用的名称
+    public static final String ANONYMOUS_ROLE = "ANONYMOUS";
+
+    private TokenBucket globalBucket;
+    private TokenBucket defaultRoleBucket;
+    private Map<String, Long> roleConnectionRates;
+    // 单独配置了合计速率的角色 -> 该角色的合计桶，速率为 0 的角色映射为 null（不限）
+    private Map<String, TokenBucket> roleBuckets;
+    private ResumeWheel wheel;
+
+    @PostConstruct
+    public void init() {
+        globalBucket = globalRate > 0 ? new TokenBucket(globalRate, burstMillis) : null;
+        defaultRoleBucket = roleRate > 0 ? new TokenBucket(roleRate, burstMillis) : null;
+        roleConnectionRates = parseRates(roleConnectionRatesConfig);
+        roleBuckets = new HashMap<>();
+        for (Map.Entry<String, Long> entry : parseRates(roleRatesConfig).entrySet()) {
+            roleBuckets.put(entry.getKey(), entry.getValue() > 0 ? new TokenBucket(entry.getValue(), burstMillis) : null);
+        }
+
+        wheel = new ResumeWheel(TimeUnit.MILLISECONDS.toNanos(1));
+        Thread thread = new Thread(wheel, "video-bandwidth-wheel");
+        thread.setDaemon(true);
+        thread.start();
+        if (enabled && !asyncEnabled) {
+            System.err.println("视频带宽整形已启用但异步写出已关闭，整形不会生效");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.stop();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为一次视频传输创建整形器
+     * @param role 当前用户角色，未登录为 null
+     * @return null 表示未启用或该角色没有任何限速
+     */
+    public Shaper open(String role) {
+        if (!enabled) {
+            return null;
+        }
+        String key = role != null ? role : ANONYMOUS_ROLE;
+        long perConnection = roleConnectionRates.getOrDefault(key, connectionRate);
+        TokenBucket connectionBucket = perConnection > 0 ? new TokenBucket(perConnection, burstMillis) : null;
+        TokenBucket tierBucket = roleBuckets.containsKey(key) ? roleBuckets.get(key) : defaultRoleBucket;
+        if (connectionBucket == null && tierBucket == null && globalBucket == null) {
+            return null;
+        }
+        return new Shaper(connectionBucket, tierBucket, globalBucket, wheel);
+    }
+
+    /**
+     * 解析 "角色:速率" 列表，如 "VIP:8388608, ADMIN:0"
+     */
+    static Map<String, Long> parseRates(String config) {
+        Map<String, Long> rates = new HashMap<>();
+        if (config == null) {
+            return rates;
+        }
+        for (String item : config.split(",")) {
+            String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("带宽配置格式错误，应为 角色:字节每秒: " + entry);
+            }
+            rates.put(entry.substring(0, colon).trim(), Long.parseLong(entry.substring(colon + 1).trim()));
+        }
+        return rates;
+    }
+
+    /**
+     * 单次传输的整形器，acquire 和 resumeAfter 路径都不分配对象
+     */
+    public static class Shaper {
+        private final TokenBucket connectionBucket;
+        private final TokenBucket tierBucket;
+        private final TokenBucket globalBucket;
+        private final ResumeWheel wheel;
+        // 本连接在定时轮上的节点，每次等待复用
+        private final ResumeWheel.Node node = new ResumeWheel.Node();
+
+        Shaper(TokenBucket connectionBucket, TokenBucket tierBucket, TokenBucket globalBucket, ResumeWheel wheel) {
+            this.connectionBucket = connectionBucket;
+            this.tierBucket = tierBucket;
+            this.globalBucket = globalBucket;
+            this.wheel = wheel;
+        }
+
+        /**
+         * 尝试获取最多 wanted 字节的发送额度
+         * @return 大于0为本次可写出的字节数；小于0时其绝对值为需要等待的纳秒数
+         */
+        public long acquire(long wanted, long now) {
+            long floor = Math.min(wanted, MIN_WRITE);
+            floor = Math.min(floor, minBurst());
+            long granted = wanted;
+            granted = Math.min(granted, available(connectionBucket, wanted, now));
+            granted = Math.min(granted, available(tierBucket, wanted, now));
+            granted = Math.min(granted, available(globalBucket, wanted, now));
+            if (granted < floor) {
+                long wait = Math.max(waitFor(connectionBucket, floor, now),
+                        Math.max(waitFor(tierBucket, floor, now), waitFor(globalBucket, floor, now)));
+                return -Math.max(wait, 1);
+            }
+            consume(connectionBucket, granted, now);
+            consume(tierBucket, granted, now);
+            consume(globalBucket, granted, now);
+            return granted;
+        }
+
+        /**
+         * 在指定延迟后由定时轮线程执行任务（用于令牌恢复后继续写出）
+         * 同一连接同时只有一个等待，上一次等待未到期时忽略
+         */
+        public void resumeAfter(Runnable task, long delayNanos) {
+            wheel.schedule(node, task, delayNanos);
+        }
+
+        private long minBurst() {
+            long min = Long.MAX_VALUE;
+            if (connectionBucket != null) {
+                min = Math.min(min, connectionBucket.burstBytes());
+            }
+            if (tierBucket != null) {
+                min = Math.min(min, tierBucket.burstBytes());
+            }
+            if (globalBucket != null) {
+                min = Math.min(min, globalBucket.burstBytes());
+            }
+            return min;
+        }
+
+        private static long available(TokenBucket bucket, long wanted, long now) {
+            return bucket != null ? bucket.available(now) : wanted;
+        }
+
+        private static long waitFor(TokenBucket bucket, long bytes, long now) {
+            return bucket != null ? bucket.nanosUntilAvailable(bytes, now) : 0;
+        }
+
+        private static void consume(TokenBucket bucket, long bytes, long now) {
+            if (bucket != null) {
+                bucket.consume(bytes, now);
+            }
+        }
+    }
+
+    /**
+     * 令牌恢复后继续写出的定时轮
+     * 槽按 tick 编号取模，节点按到期 tick 挂在对应槽的链表上，超过一圈的节点在扫描时比较到期 tick 跳过；
+     * 节点由每个连接持有并重复使用，调度不分配对象；没有等待的节点时线程休眠，不空转
+     */
+    static final class ResumeWheel implements Runnable {
+        private static final int SLOTS = 512;
+
+        static final class Node {
+            Runnable task;
+            long deadline;
+            boolean scheduled;
+            Node next;
+            // 到期后待执行的链表，与槽链表分开，任务执行中重新调度不会破坏遍历
+            Node nextDue;
+        }
+
+        private final long tickNanos;
+        private final long startNanos = System.nanoTime();
+        private final Node[] slots = new Node[SLOTS];
+        private final Object lock = new Object();
+        private int pending;
+        // 下一个要扫描的 tick
+        private long tick;
+        private volatile boolean stopped;
+        private volatile Thread thread;
+
+        ResumeWheel(long tickNanos) {
+            this.tickNanos = tickNanos;
+        }
+
+        void schedule(Node node, Runnable task, long delayNanos) {
+            synchronized (lock) {
+                if (node.scheduled || stopped) {
+                    return;
+                }
+                // 向上取整保证至少等待 delayNanos；不早于下一个要扫描的 tick，否则要等一圈才被扫描到
+                long deadline = (System.nanoTime() - startNanos + Math.max(delayNanos, 1) + tickNanos - 1) / tickNanos;
+                deadline = Math.max(deadline, tick);
+                int slot = (int) (deadline & (SLOTS - 1));
+                node.task = task;
+                node.deadline = deadline;
+                node.scheduled = true;
+                node.next = slots[slot];
+                slots[slot] = node;
+                if (pending++ == 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (!stopped) {
+                Node due = null;
+                synchronized (lock) {
+                    if (pending == 0) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        // 空闲期间所有槽都是空的，直接跳到当前 tick
+                        tick = Math.max(tick, currentTick());
+                        continue;
+                    }
+                    long now = currentTick();
+                    tick = Math.max(tick, now - SLOTS + 1);
+                    for (; tick <= now; tick++) {
+                        due = collect((int) (tick & (SLOTS - 1)), now, due);
+                    }
+                }
+                while (due != null) {
+                    Node following = due.nextDue;
+                    due.nextDue = null;
+                    try {
+                        due.task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("带宽整形恢复写出失败: " + e.getMessage());
+                    }
+                    due = following;
+                }
+                LockSupport.parkNanos(this, tickNanos);
+            }
+        }
+
+        /**
+         * 从槽中摘下已到期的节点，接到 due 链表前面
+         */
+        private Node collect(int slot, long now, Node due) {
+            Node previous = null;
+            Node node = slots[slot];
+            while (node != null) {
+                Node next = node.next;
+                if (node.deadline <= now) {
+                    if (previous == null) {
+                        slots[slot] = next;
+                    } else {
+                        previous.next = next;
+                    }
+                    node.next = null;
+                    node.scheduled = false;
+                    node.nextDue = due;
+                    due = node;
+                    pending--;
+                } else {
+                    previous = node;
+                }
+                node = next;
+            }
+            return due;
+        }
+
+        void stop() {
+            stopped = true;
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+
+        private long currentTick() {
+            return (System.nanoTime() - startNanos) / tickNanos;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.movie.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 SHA-256 去重的内容寻址存储
+ * 相同内容只保存一份数据，各个公开路径（视频、头像、文件等）都是指向同一数据的硬链接，
+ * 因此现有 URL 和静态资源映射保持不变；索引记录每个摘要被哪些公开路径引用（即引用计数），
+ * 最后一个引用删除时数据随之释放
+ * 不同磁盘之间无法建立硬链接，此时保留独立副本，只记录引用
+ * 只接受公开上传目录内的路径：加载索引和建立引用时都会校验，索引中的路径经过 URL 编码，
+ * 文件名中的换行、制表符等无法伪造索引行
+ */
+@Service
+public class BlobStore {
+
+    private static final String INDEX_FILE_NAME = "index.tsv";
+
+    // 索引首行；没有该行的旧索引路径未经编码
+    private static final String INDEX_HEADER = "#blob-index v2";
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.upload.files-dir:D:/project/movie-uploads}")
+    private String filesDir;
+
+    @Value("${file.upload.simple-dir:D:/movie_uploads}")
+    private String simpleDir;
+
+    @Value("${file.blob.enabled:true}")
+    private boolean enabled;
+
+    // 允许引用的公开目录：视频、头像，以及 /files/** 和 /upload 的保存目录
+    private List<Path> roots;
+
+    // 摘要 -> 引用该内容的公开路径（绝对路径），按加入顺序
+    private final Map<String, List<Path>> references = new LinkedHashMap<>();
+    // 公开路径 -> 摘要
+    private final Map<Path, String> pathIndex = new HashMap<>();
+    // 摘要 -> 文件大小
+    private final Map<String, Long> sizes = new HashMap<>();
+
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder linkFailures = new LongAdder();
+
+    private Path indexFile;
+
+    @PostConstruct
+    public void init() throws IOException {
+        indexFile = Paths.get(uploadDir, "blobs", INDEX_FILE_NAME).toAbsolutePath();
+        roots = new ArrayList<>();
+        roots.add(Paths.get(uploadDir, "videos").toAbsolutePath().normalize());
+        roots.add(Paths.get(uploadDir, "avatars").toAbsolutePath().normalize());
+        for (String dir : new String[]{filesDir, simpleDir}) {
+            if (dir != null && !dir.isEmpty()) {
+                roots.add(Paths.get(dir).toAbsolutePath().normalize());
+            }
+        }
+        Files.createDirectories(indexFile.getParent());
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        boolean encoded = !lines.isEmpty() && lines.get(0).equals(INDEX_HEADER);
+        int loaded = 0;
+        int rejected = 0;
+        for (int i = encoded ? 1 : 0; i < lines.size(); i++) {
+            String[] parts = lines.get(i).split("\t", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            Path path = parseEntry(parts, encoded);
+            if (path == null) {
+                rejected++;
+                continue;
+            }
+            // 索引中已被外部删除的文件不再计入引用
+            if (Files.exists(path)) {
+                addReference(parts[0], Long.parseLong(parts[1]), path);
+                loaded++;
+            }
+        }
+        System.out.println("内容去重索引已加载: 摘要数 " + references.size() + ", 引用数 " + loaded);
+        if (rejected > 0) {
+            System.err.println("内容去重索引中有 " + rejected + " 行无效或路径不在公开上传目录内，已忽略");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 纳入一个刚写好的公开文件：已有相同内容时用指向已有数据的硬链接替换它，否则登记为新内容
+     * @param sha256 已知的内容摘要，为 null 时读取文件计算
+     * @return 文件内容的 SHA-256
+     */
+    public String adopt(Path publicFile, String sha256) throws IOException {
+        Path path = publicFile.toAbsolutePath().normalize();
+        String digest = sha256 != null ? sha256 : sha256(path);
+        if (!enabled) {
+            return digest;
+        }
+        if (!isAllowed(path)) {
+            System.err.println("不在公开上传目录内，不参与内容去重: " + path);
+            return digest;
+        }
+        long size = Files.size(path);
+        synchronized (this) {
+            Path existing = findExisting(digest, size, path);
+            if (existing != null && !isSameFile(existing, path)) {
+                if (replaceWithLink(path, existing)) {
+                    dedupHits.increment();
+                    bytesSaved.add(size);
+                    System.out.println("内容去重: " + path.getFileName() + " -> " + existing.getFileName() + ", 节省 " + size + " bytes");
+                }
+            }
+            removeReference(path);
+            addReference(digest, size, path);
+            saveIndex();
+        }
+        return digest;
+    }
+
+    /**
+     * 已存在相同内容时直接在 target 创建引用，客户端无需再上传数据
+     * @return 不存在该内容时返回 false
+     */
+    public boolean linkExisting(String sha256, long size, Path target) throws IOException {
+        if (!enabled || sha256 == null) {
+            return false;
+        }
+        Path path = target.toAbsolutePath().normalize();
+        if (!isAllowed(path)) {
+            throw new IllegalArgumentException("目标路径不在公开上传目录内: " + target);
+        }
+        synchronized (this) {
+            Path existing = findExisting(sha256, size, null);
+            if (existing == null) {
+                return false;
+            }
+            Files.createDirectories(path.getParent());
+            if (!Files.exists(path) || !isSameFile(existing, path)) {
+                Path temp = path.resolveSibling("." + path.getFileName() + ".link");
+                Files.deleteIfExists(temp);
+                try {
+                    Files.createLink(temp, existing);
+                } catch (IOException | UnsupportedOperationException e) {
+                    // 跨磁盘时退化为复制，仍可省去网络传输
+                    linkFailures.increment();
+                    Files.copy(existing, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            dedupHits.increment();
+            bytesSaved.add(size);
+            removeReference(path);
+            addReference(sha256, size, path);
+            saveIndex();
+        }
+        return true;
+    }
+
+    /**
+     * 公开文件即将被删除时释放其引用
+     */
+    public synchronized void release(Path publicFile) {
+        if (removeReference(publicFile.toAbsolutePath().normalize())) {
+            try {
+                saveIndex();
+            } catch (IOException e) {
+                System.err.println("保存内容去重索引失败: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long logicalBytes = 0;
+        long uniqueBytes = 0;
+        for (Map.Entry<String, List<Path>> entry : references.entrySet()) {
+            long size = sizes.get(entry.getKey());
+            logicalBytes += size * entry.getValue().size();
+            uniqueBytes += size;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("blobs", references.size());
+        stats.put("references", pathIndex.size());
+        stats.put("logicalBytes", logicalBytes);
+        stats.put("uniqueBytes", uniqueBytes);
+        stats.put("dedupHits", dedupHits.sum());
+        stats.put("bytesSaved", bytesSaved.sum());
+        stats.put("linkFailures", linkFailures.sum());
+        return stats;
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = FileStorageService.newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return FileStorageService.toHex(digest.digest());
+    }
+
+    /**
+     * 查找引用该内容且仍然存在的文件，顺带清理已被外部删除的引用
+     */
+    private Path findExisting(String sha256, long size, Path exclude) {
+        List<Path> paths = references.get(sha256);
+        if (paths == null || sizes.get(sha256) != size) {
+            return null;
+        }
+        Iterator<Path> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            Path candidate = iterator.next();
+            if (candidate.equals(exclude)) {
+                continue;
+            }
+            if (Files.exists(candidate)) {
+                return candidate;
+            }
+            iterator.remove();
+            pathIndex.remove(candidate);
+        }
+        return null;
+    }
+
+    /**
+     * 用指向 existing 的硬链接原子替换 path
+     */
+    private boolean replaceWithLink(Path path, Path existing) throws IOException {
+        Path temp = path.resolveSibling("." + path.getFileName() + ".link");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            linkFailures.increment();
+            return false;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * 解析一行索引（摘要、大小、路径），摘要或大小格式错误、路径不在公开上传目录内时返回 null
+     */
+    private Path parseEntry(String[] parts, boolean encoded) {
+        if (!parts[0].matches("[0-9a-f]{64}") || !parts[1].matches("[0-9]{1,18}")) {
+            return null;
+        }
+        Path path;
+        try {
+            path = Paths.get(encoded ? URLDecoder.decode(parts[2], "UTF-8") : parts[2]);
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            return null;
+        }
+        if (!path.isAbsolute()) {
+            return null;
+        }
+        path = path.normalize();
+        return isAllowed(path) ? path : null;
+    }
+
+    /**
+     * 路径（已规范化的绝对路径）是否位于某个公开上传目录之下
+     */
+    private boolean isAllowed(Path path) {
+        for (Path root : roots) {
+            if (path.startsWith(root) && !path.equals(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameFile(Path a, Path b) {
+        try {
+            return Files.isSameFile(a, b);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void addReference(String sha256, long size, Path path) {
+        references.computeIfAbsent(sha256, key -> new ArrayList<>()).add(path);
+        sizes.put(sha256, size);
+        pathIndex.put(path, sha256);
+    }
+
+    private boolean removeReference(Path path) {
+        String sha256 = pathIndex.remove(path);
+        if (sha256 == null) {
+            return false;
+        }
+        List<Path> paths = references.get(sha256);
+        paths.remove(path);
+        if (paths.isEmpty()) {
+            references.remove(sha256);
+            sizes.remove(sha256);
+        }
+        return true;
+    }
+
+    /**
+     * 索引很小（每个引用一行），整体重写后原子替换
+     */
+    private void saveIndex() throws IOException {
+        Path temp = indexFile.resolveSibling(INDEX_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(INDEX_HEADER);
+            writer.newLine();
+            for (Map.Entry<String, List<Path>> entry : references.entrySet()) {
+                for (Path path : entry.getValue()) {
+                    writer.write(entry.getKey() + "\t" + sizes.get(entry.getKey()) + "\t"
+                            + URLEncoder.encode(path.toString(), "UTF-8"));
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
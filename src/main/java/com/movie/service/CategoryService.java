@@ -13,6 +13,9 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private MovieDetailCache movieDetailCache;
+
     public List<Category> getAllCategories() {
         return categoryRepository.findAllOrderBySortOrderAndCreateTime();
     }
@@ -44,6 +47,8 @@ public class CategoryService {
         existingCategory.setDescription(category.getDescription());
         existingCategory.setIcon(category.getIcon());
         existingCategory.setSortOrder(category.getSortOrder() != null ? category.getSortOrder() : 0);
+        // 电影详情中含分类名称
+        movieDetailCache.invalidateCategory(id);
         return categoryRepository.save(existingCategory);
     }
 
@@ -52,6 +57,7 @@ public class CategoryService {
             throw new RuntimeException("分类不存在");
         }
         categoryRepository.deleteById(id);
+        movieDetailCache.invalidateCategory(id);
     }
 }
 
@@ -0,0 +1,226 @@
+package com.movie.service;
+
+import com.movie.repository.FavoriteRepository;
+import com.movie.util.IdBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 用户收藏位图
+ * 每个用户收藏的电影ID保存在内存中的压缩位图里，列表和详情判断收藏状态不再查询数据库；
+ * 用户首次查询时用一条只查ID列的语句加载，按用户数 LRU 淘汰；收藏变更在事务提交后同步到位图
+ */
+@Service
+public class FavoriteIndex {
+
+    @Value("${favorite.index.max-users:10000}")
+    private int maxUsers;
+
+    @Autowired
+    private FavoriteRepository favoriteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 加载位图用的独立只读事务，见 bitmapFor
+    private TransactionTemplate loadTransaction;
+
+    // 用户ID -> 收藏的电影ID，按访问顺序 LRU
+    private final LinkedHashMap<Long, IdBitmap> bitmaps = new LinkedHashMap<>(64, 0.75f, true);
+
+    // 电影删除时加一，影响所有用户；加载期间发生过删除的位图不放入缓存
+    private long generation;
+
+    // 正在加载位图的用户 -> 加载状态，只在加载期间存在
+    private final Map<Long, PendingLoad> pendingLoads = new HashMap<>();
+
+    private long hits;
+    private long loads;
+    private long evictions;
+    private long updates;
+
+    /**
+     * 单个用户的进行中加载：changes 为加载开始后该用户的收藏变更次数，
+     * 加载期间发生过变更的位图不放入缓存，避免加载时读到的旧数据覆盖变更；其他用户的变更不影响
+     */
+    private static final class PendingLoad {
+        int loaders;
+        long changes;
+    }
+
+    @PostConstruct
+    public void init() {
+        loadTransaction = new TransactionTemplate(transactionManager);
+        loadTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        loadTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 用户是否收藏了该电影
+     */
+    public boolean isFavorited(Long userId, Long movieId) {
+        IdBitmap bitmap = bitmapFor(userId);
+        synchronized (this) {
+            return bitmap.contains(movieId);
+        }
+    }
+
+    /**
+     * 给定电影中用户收藏了的部分
+     */
+    public Set<Long> favoritedAmong(Long userId, Collection<Long> movieIds) {
+        IdBitmap bitmap = bitmapFor(userId);
+        Set<Long> favorited = new HashSet<>();
+        synchronized (this) {
+            for (Long movieId : movieIds) {
+                if (movieId != null && bitmap.contains(movieId)) {
+                    favorited.add(movieId);
+                }
+            }
+        }
+        return favorited;
+    }
+
+    /**
+     * 收藏或取消收藏，在当前事务提交后生效（没有事务时立即生效）
+     */
+    public void onFavoriteChanged(Long userId, Long movieId, boolean favorited) {
+        afterCommit(() -> {
+            synchronized (this) {
+                updates++;
+                PendingLoad pending = pendingLoads.get(userId);
+                if (pending != null) {
+                    pending.changes++;
+                }
+                IdBitmap bitmap = bitmaps.get(userId);
+                if (bitmap != null) {
+                    if (favorited) {
+                        bitmap.add(movieId);
+                    } else {
+                        bitmap.remove(movieId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 电影删除时其收藏记录一并删除，从所有已加载的位图中移除
+     */
+    public void onMovieDeleted(Long movieId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                updates++;
+                for (IdBitmap bitmap : bitmaps.values()) {
+                    bitmap.remove(movieId);
+                }
+            }
+        });
+    }
+
+    private IdBitmap bitmapFor(Long userId) {
+        PendingLoad pending;
+        long stamp;
+        long userStamp;
+        synchronized (this) {
+            IdBitmap bitmap = bitmaps.get(userId);
+            if (bitmap != null) {
+                hits++;
+                return bitmap;
+            }
+            loads++;
+            pending = pendingLoads.computeIfAbsent(userId, key -> new PendingLoad());
+            pending.loaders++;
+            stamp = generation;
+            userStamp = pending.changes;
+        }
+
+        IdBitmap loaded = new IdBitmap();
+        try {
+            // 登记加载之后在新事务中读取：调用方事务（可重复读）的快照可能早于登记前已提交的收藏，
+            // 新事务能看到登记前提交的全部变更，登记后提交的变更则会使本次加载不被缓存
+            List<Long> movieIds = loadTransaction.execute(status -> favoriteRepository.findMovieIdsByUserId(userId));
+            for (Long movieId : movieIds) {
+                loaded.add(movieId);
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                finishLoad(userId, pending);
+            }
+            throw e;
+        }
+        // 结束登记和放入缓存在同一个临界区内，期间提交的变更要么使加载作废，要么直接更新已缓存的位图
+        synchronized (this) {
+            finishLoad(userId, pending);
+            IdBitmap existing = bitmaps.get(userId);
+            if (existing != null) {
+                return existing;
+            }
+            if (stamp == generation && userStamp == pending.changes) {
+                bitmaps.put(userId, loaded);
+                Iterator<Long> iterator = bitmaps.keySet().iterator();
+                while (bitmaps.size() > maxUsers && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    evictions++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void finishLoad(Long userId, PendingLoad pending) {
+        if (--pending.loaders == 0) {
+            pendingLoads.remove(userId);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long favorites = 0;
+        long bytes = 0;
+        for (IdBitmap bitmap : bitmaps.values()) {
+            favorites += bitmap.cardinality();
+            bytes += bitmap.sizeInBytes();
+        }
+        stats.put("users", bitmaps.size());
+        stats.put("maxUsers", maxUsers);
+        stats.put("favorites", favorites);
+        stats.put("bitmapBytes", bytes);
+        stats.put("hits", hits);
+        stats.put("loads", loads);
+        stats.put("evictions", evictions);
+        stats.put("updates", updates);
+        return stats;
+    }
+}
@@ -26,6 +26,9 @@ public class FavoriteService {
     @Autowired
     private MovieRepository movieRepository;
 
+    @Autowired
+    private FavoriteIndex favoriteIndex;
+
     public boolean toggleFavorite(Long movieId, String username) {
         System.out.println("FavoriteService.toggleFavorite - username: " + username + ", movieId: " + movieId);
         
@@ -43,6 +46,7 @@ public class FavoriteService {
         if (existingFavorite.isPresent()) {
             // 已收藏，取消收藏
             favoriteRepository.delete(existingFavorite.get());
+            favoriteIndex.onFavoriteChanged(user.getId(), movieId, false);
             System.out.println("FavoriteService.toggleFavorite - 执行删除收藏操作");
             return false;
         } else {
@@ -51,6 +55,7 @@ public class FavoriteService {
             favorite.setUser(user);
             favorite.setMovie(movie);
             favoriteRepository.save(favorite);
+            favoriteIndex.onFavoriteChanged(user.getId(), movieId, true);
             System.out.println("FavoriteService.toggleFavorite - 执行添加收藏操作，新记录ID: " + favorite.getId());
             return true;
         }
@@ -60,7 +65,7 @@ public class FavoriteService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
 
-        return favoriteRepository.findByUserIdAndMovieId(user.getId(), movieId).isPresent();
+        return favoriteIndex.isFavorited(user.getId(), movieId);
     }
 
     public List<Favorite> getUserFavorites(String username) {
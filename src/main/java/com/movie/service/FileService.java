@@ -1,16 +1,31 @@
 package com.movie.service;
 
+import com.movie.util.ImageScaler;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class FileService {
@@ -20,6 +35,60 @@ public class FileService {
     
     @Value("${file.upload.url-prefix:/api/uploads}")
     private String urlPrefix;
+    
+    @Autowired
+    private BlobStore blobStore;
+    
+    @Autowired
+    private FileStorageService fileStorageService;
+    
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+    
+    private static final long MAX_AVATAR_BYTES = 5 * 1024 * 1024;
+    
+    private static final String AVATAR_DIR = "avatars";
+    
+    private static final String VIDEO_DIR = "videos";
+    
+    // 头像规格化尺寸（正方形边长）
+    @Value("${file.avatar.sizes:64,128,256}")
+    private String avatarSizesConfig;
+    
+    // 解码头像时的像素上限，超大尺寸图片按隔行采样解码，内存占用与原图尺寸无关
+    @Value("${file.avatar.max-decode-pixels:4194304}")
+    private long maxDecodePixels;
+    
+    @Value("${file.avatar.jpeg-quality:0.85}")
+    private float avatarQuality;
+    
+    private int[] avatarSizes;
+    private ThreadPoolExecutor avatarExecutor;
+    
+    // 写入头像规格文件与删除头像互斥，避免删除后才完成的规格化留下孤立文件
+    private final Object avatarLock = new Object();
+    
+    @PostConstruct
+    public void init() {
+        avatarSizes = Arrays.stream(avatarSizesConfig.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        avatarExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(64), runnable -> {
+                    Thread thread = new Thread(runnable, "avatar-normalizer");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        avatarExecutor.shutdownNow();
+    }
 
     /**
      * 上传头像文件
@@ -40,35 +109,126 @@ public class FileService {
             throw new IllegalArgumentException("只能上传图片文件");
         }
         
-        // 验证文件大小（限制为5MB）
-        long maxSize = 5 * 1024 * 1024; // 5MB
-        if (file.getSize() > maxSize) {
-            throw new IllegalArgumentException("文件大小不能超过5MB");
-        }
-        
-        // 创建上传目录
+        // 流式保存，限制为5MB
         String fullDir = uploadDir + File.separator + subDir;
-        Path uploadPath = Paths.get(fullDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-        
-        // 生成唯一文件名
-        String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        }
-        String newFilename = UUID.randomUUID().toString() + extension;
-        
-        // 保存文件
-        Path filePath = uploadPath.resolve(newFilename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        FileStorageService.StoredFile stored = fileStorageService.store(file, Paths.get(fullDir), MAX_AVATAR_BYTES);
+        String newFilename = stored.getFilename();
         
         // 返回访问URL
         return urlPrefix + "/" + subDir + "/" + newFilename;
     }
     
+    /**
+     * 上传头像：保存原图后立即返回，后台生成各规格的正方形 JPEG
+     * @return 原图的访问URL，规格化完成后可通过 ?size= 获取最接近的尺寸
+     */
+    public String uploadAvatar(MultipartFile file) throws IOException {
+        String avatarUrl = uploadFile(file, AVATAR_DIR);
+        Path original = Paths.get(uploadDir, AVATAR_DIR, avatarUrl.substring(avatarUrl.lastIndexOf('/') + 1));
+        try {
+            avatarExecutor.execute(() -> normalizeAvatar(original));
+        } catch (RejectedExecutionException e) {
+            // 队列已满时不生成缩小版本，仍返回原图
+            System.err.println("头像处理队列已满，跳过: " + original.getFileName());
+        }
+        return avatarUrl;
+    }
+    
+    /**
+     * 获取头像文件：返回不小于 size 的最小规格，规格都小于 size 时返回最大规格，尚未生成时返回原图
+     * @return 文件不存在时返回 null
+     */
+    public Path resolveAvatar(String filename, int size) {
+        Path dir = Paths.get(uploadDir, AVATAR_DIR).toAbsolutePath().normalize();
+        Path original = dir.resolve(filename).normalize();
+        if (!original.startsWith(dir) || !Files.isRegularFile(original)) {
+            return null;
+        }
+        int chosen = avatarSizes[avatarSizes.length - 1];
+        for (int candidate : avatarSizes) {
+            if (candidate >= size) {
+                chosen = candidate;
+                break;
+            }
+        }
+        Path variant = avatarVariant(original, chosen);
+        return Files.exists(variant) ? variant : original;
+    }
+    
+    /**
+     * 居中裁成正方形并生成各规格 JPEG
+     * 只解码正方形区域，且按隔行采样把解码像素数限制在 maxDecodePixels 以内（至少保留两倍最大规格供平滑缩小）
+     */
+    private void normalizeAvatar(Path original) {
+        long startTime = System.currentTimeMillis();
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                System.err.println("无法识别的头像格式: " + original.getFileName());
+                return;
+            }
+            ImageReader reader = readers.next();
+            BufferedImage square;
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int side = Math.min(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+                int largest = avatarSizes[avatarSizes.length - 1];
+                int subsampling = Math.max(1, side / (largest * 2));
+                while ((long) (side / subsampling) * (side / subsampling) > maxDecodePixels) {
+                    subsampling++;
+                }
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                square = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+            
+            for (int size : avatarSizes) {
+                int target = Math.min(size, square.getWidth());
+                BufferedImage scaled = ImageScaler.scale(square, target, target, false);
+                Path variant = avatarVariant(original, size);
+                Path temp = variant.resolveSibling("." + variant.getFileName() + ".tmp");
+                ImageScaler.writeJpeg(scaled, temp, avatarQuality);
+                synchronized (avatarLock) {
+                    if (!Files.exists(original)) {
+                        // 处理期间头像已被删除，丢弃结果
+                        Files.deleteIfExists(temp);
+                        deleteAvatarVariants(original);
+                        System.out.println("头像已删除，丢弃规格化结果: " + original.getFileName());
+                        return;
+                    }
+                    Files.move(temp, variant, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            System.out.println("头像规格化完成: " + original.getFileName() + ", 耗时: "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (Exception e) {
+            System.err.println("头像规格化失败: " + original.getFileName() + ", 错误: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 头像规格文件：<原文件名去掉扩展名>_<尺寸>.jpg
+     */
+    private static Path avatarVariant(Path original, int size) {
+        String name = original.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return original.resolveSibling(base + "_" + size + ".jpg");
+    }
+    
+    private void deleteAvatarVariants(Path original) throws IOException {
+        for (int size : avatarSizes) {
+            Files.deleteIfExists(avatarVariant(original, size));
+        }
+    }
+    
     /**
      * 删除文件
      * @param fileUrl 文件的URL
@@ -85,7 +245,18 @@ public class FileService {
             Path filePath = Paths.get(uploadDir, relativePath);
             
             if (Files.exists(filePath)) {
-                Files.delete(filePath);
+                blobStore.release(filePath);
+                if (relativePath.startsWith(AVATAR_DIR + "/")) {
+                    synchronized (avatarLock) {
+                        Files.delete(filePath);
+                        deleteAvatarVariants(filePath);
+                    }
+                } else {
+                    Files.delete(filePath);
+                }
+                if (relativePath.startsWith(VIDEO_DIR + "/")) {
+                    hlsPackagingService.delete(filePath.getFileName().toString());
+                }
                 return true;
             }
         } catch (IOException e) {
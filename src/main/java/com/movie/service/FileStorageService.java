@@ -0,0 +1,200 @@
+package com.movie.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 普通（非分片）文件上传的流式存储
+ * 数据经固定大小的直接缓冲区从上传流复制到同目录下的临时文件，边写边累计字节数（超出类型限制立即中止）
+ * 和 SHA-256，完成后原子重命名为最终文件名，上传过程中不会在堆上持有整个文件
+ */
+@Service
+public class FileStorageService {
+
+    @Value("${file.storage.max-image-bytes:20971520}")
+    private long maxImageBytes;
+
+    @Value("${file.storage.max-video-bytes:524288000}")
+    private long maxVideoBytes;
+
+    @Value("${file.storage.max-other-bytes:209715200}")
+    private long maxOtherBytes;
+
+    @Value("${file.storage.buffer-size:65536}")
+    private int bufferSize;
+
+    // 直接缓冲区数量，即同时复制的上传数；缓冲区用完时临时分配堆缓冲区
+    @Value("${file.storage.buffer-count:16}")
+    private int bufferCount;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    private BlockingQueue<ByteBuffer> buffers;
+
+    @PostConstruct
+    public void init() {
+        buffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * 保存的文件
+     */
+    public static class StoredFile {
+        private final String filename;
+        private final Path path;
+        private final long size;
+        private final String sha256;
+
+        public StoredFile(String filename, Path path, long size, String sha256) {
+            this.filename = filename;
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public String getFilename() { return filename; }
+
+        public Path getPath() { return path; }
+
+        public long getSize() { return size; }
+
+        public String getSha256() { return sha256; }
+    }
+
+    /**
+     * 以 UUID 文件名（保留扩展名）保存上传文件，大小上限按文件类型确定
+     */
+    public StoredFile store(MultipartFile file, Path dir) throws IOException {
+        return store(file, dir, maxBytesFor(file.getContentType()));
+    }
+
+    /**
+     * 以 UUID 文件名（保留扩展名）保存上传文件
+     * @param maxBytes 大小上限，超出时抛出 IllegalArgumentException 且不留下任何文件
+     */
+    public StoredFile store(MultipartFile file, Path dir, long maxBytes) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("文件不能为空");
+        }
+        // multipart 已知大小时先行检查，不必读取数据
+        if (file.getSize() > maxBytes) {
+            throw new IllegalArgumentException("文件大小不能超过" + formatSize(maxBytes));
+        }
+
+        String originalFilename = file.getOriginalFilename();
+        String extension = "";
+        if (originalFilename != null) {
+            int lastDotIndex = originalFilename.lastIndexOf('.');
+            if (lastDotIndex > 0) {
+                extension = originalFilename.substring(lastDotIndex);
+            }
+        }
+        String filename = UUID.randomUUID().toString() + extension;
+
+        Files.createDirectories(dir);
+        Path target = dir.resolve(filename);
+        Path temp = dir.resolve("." + filename + ".upload");
+        MessageDigest digest = newSha256();
+        long size;
+        try (InputStream input = file.getInputStream()) {
+            size = copy(input, temp, maxBytes, digest);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        String sha256 = toHex(digest.digest());
+        // 相同内容已存在时替换为硬链接
+        blobStore.adopt(target, sha256);
+        return new StoredFile(filename, target, size, sha256);
+    }
+
+    /**
+     * 按 Content-Type 确定大小上限
+     */
+    public long maxBytesFor(String contentType) {
+        if (contentType != null && contentType.startsWith("image/")) {
+            return maxImageBytes;
+        }
+        if (contentType != null && contentType.startsWith("video/")) {
+            return maxVideoBytes;
+        }
+        return maxOtherBytes;
+    }
+
+    private long copy(InputStream input, Path temp, long maxBytes, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = buffers.poll();
+        boolean pooled = buffer != null;
+        if (!pooled) {
+            buffer = ByteBuffer.allocate(bufferSize);
+        }
+        long total = 0;
+        try (ReadableByteChannel source = Channels.newChannel(input);
+             FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            buffer.clear();
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new IllegalArgumentException("文件大小不能超过" + formatSize(maxBytes));
+                }
+                buffer.flip();
+                digest.update(buffer);
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            if (pooled) {
+                buffer.clear();
+                buffers.offer(buffer);
+            }
+        }
+        return total;
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static String formatSize(long bytes) {
+        return bytes % (1024 * 1024) == 0 ? (bytes / (1024 * 1024)) + "MB" : bytes + " bytes";
+    }
+}
@@ -0,0 +1,242 @@
+package com.movie.service;
+
+import com.movie.media.HlsPackager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * HLS 封装流水线
+ * 上传完成的 MP4 在后台线程中重新封装为 fMP4 分片，输出到 uploads/hls/{视频文件名}/
+ * 不超过 cache-max-entry-bytes 的分片读取后整段缓存在内存中；更大的分片（关键帧稀疏的视频可能切出很大的分片）
+ * 由调用方按文件流式发送，不载入堆内存
+ */
+@Service
+public class HlsPackagingService {
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.hls.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.hls.segment-duration:6}")
+    private double segmentDuration;
+
+    @Value("${file.hls.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${file.hls.cache-max-bytes:134217728}")
+    private long cacheMaxBytes;
+
+    // 单个分片可缓存的最大字节数，超出时不缓存
+    @Value("${file.hls.cache-max-entry-bytes:8388608}")
+    private long cacheMaxEntryBytes;
+
+    private ThreadPoolExecutor executor;
+
+    // 分片缓存：视频文件名/分片文件名 -> 分片内容，按访问顺序 LRU 淘汰
+    private final LinkedHashMap<String, CachedSegment> segmentCache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "hls-packager");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 缓存的分片内容，记录读取时文件的修改时间
+     */
+    private static class CachedSegment {
+        final byte[] data;
+        final long lastModified;
+
+        CachedSegment(byte[] data, long lastModified) {
+            this.data = data;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * 提交 MP4 文件进行后台封装，非 MP4 文件或未启用时忽略
+     */
+    public void submit(Path videoFile) {
+        String videoName = videoFile.getFileName().toString();
+        if (!enabled || !videoName.toLowerCase().endsWith(".mp4")) {
+            return;
+        }
+        try {
+            executor.execute(() -> packageVideo(videoFile));
+        } catch (RejectedExecutionException e) {
+            // 队列已满时放弃封装，原 MP4 仍可通过 Range 请求播放
+            System.err.println("HLS 封装队列已满，跳过: " + videoName);
+        }
+    }
+
+    private void packageVideo(Path videoFile) {
+        String videoName = videoFile.getFileName().toString();
+        long startTime = System.currentTimeMillis();
+        Path hlsRoot = Paths.get(uploadDir, "hls");
+        Path outputDir = hlsRoot.resolve(videoName);
+        // 先写到临时目录，完成后整体替换，播放中的客户端不会读到一半的分片
+        Path tempDir = hlsRoot.resolve("." + UUID.randomUUID().toString() + ".tmp");
+        try {
+            Files.createDirectories(tempDir);
+            int segments = HlsPackager.pack(videoFile, tempDir, segmentDuration);
+            synchronized (this) {
+                // 封装期间源视频已被删除时丢弃结果
+                if (!Files.exists(videoFile)) {
+                    deleteDirectory(tempDir);
+                    return;
+                }
+                deleteDirectory(outputDir);
+                Files.move(tempDir, outputDir, StandardCopyOption.ATOMIC_MOVE);
+            }
+            invalidate(videoName);
+            System.out.println("HLS 封装完成: " + videoName + ", 分片数: " + segments
+                    + ", 耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (Exception e) {
+            System.err.println("HLS 封装失败: " + videoName + ", 错误: " + e.getMessage());
+            try {
+                deleteDirectory(tempDir);
+            } catch (IOException ex) {
+                System.err.println("清理 HLS 临时目录失败: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 播放列表或分片文件的路径
+     * @return 文件不存在时返回 null
+     */
+    public Path resolve(String videoName, String fileName) {
+        Path file = Paths.get(uploadDir, "hls", videoName, fileName);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * 读取播放列表或分片，优先从内存缓存返回
+     * @param lastModified 文件当前的修改时间，缓存内容不是该版本时重新读取
+     * @return 文件超过单个分片的缓存上限时返回 null，由调用方流式发送
+     */
+    public byte[] readCached(Path file, long size, long lastModified) throws IOException {
+        if (size > cacheMaxEntryBytes || size > cacheMaxBytes) {
+            return null;
+        }
+        String key = file.getParent().getFileName() + "/" + file.getFileName();
+        synchronized (segmentCache) {
+            CachedSegment cached = segmentCache.get(key);
+            if (cached != null && cached.lastModified == lastModified) {
+                hits.increment();
+                return cached.data;
+            }
+        }
+        misses.increment();
+
+        byte[] data = Files.readAllBytes(file);
+        if (data.length != size) {
+            // 读取期间文件被重新封装，本次不缓存
+            return data;
+        }
+        synchronized (segmentCache) {
+            CachedSegment previous = segmentCache.put(key, new CachedSegment(data, lastModified));
+            cachedBytes += data.length - (previous != null ? previous.data.length : 0);
+            Iterator<CachedSegment> iterator = segmentCache.values().iterator();
+            while (cachedBytes > cacheMaxBytes && iterator.hasNext()) {
+                cachedBytes -= iterator.next().data.length;
+                iterator.remove();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 源视频被删除时删除其 HLS 输出和缓存分片
+     */
+    public void delete(String videoName) {
+        try {
+            synchronized (this) {
+                deleteDirectory(Paths.get(uploadDir, "hls", videoName));
+            }
+        } catch (IOException e) {
+            System.err.println("删除 HLS 输出失败: " + videoName + ", 错误: " + e.getMessage());
+        }
+        invalidate(videoName);
+    }
+
+    /**
+     * 视频重新封装后清除其所有缓存分片
+     */
+    private void invalidate(String videoName) {
+        String prefix = videoName + "/";
+        synchronized (segmentCache) {
+            Iterator<Map.Entry<String, CachedSegment>> iterator = segmentCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CachedSegment> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    cachedBytes -= entry.getValue().data.length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (segmentCache) {
+            stats.put("cachedSegments", segmentCache.size());
+            stats.put("cachedBytes", cachedBytes);
+        }
+        stats.put("cacheMaxBytes", cacheMaxBytes);
+        stats.put("cacheMaxEntryBytes", cacheMaxEntryBytes);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("active", executor.getActiveCount());
+        return stats;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
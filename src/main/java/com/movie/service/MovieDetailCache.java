@@ -0,0 +1,275 @@
+package com.movie.service;
+
+import com.movie.dto.MovieVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 电影详情缓存
+ * 按电影 ID 缓存 MovieVO 快照（只在缓存内部持有，读取时返回副本），按估算字节数限制总大小，写入后固定时间过期；
+ * 缓存已满时按 TinyLFU 方式准入：新条目的近期访问频率高于 LRU 淘汰候选时才替换，偶发访问不会挤掉热门电影
+ * 电影、分类、上传者修改时由对应 Service 精确失效；收藏状态、浏览量等与用户或时间相关的字段由调用方在副本上叠加
+ */
+@Service
+public class MovieDetailCache {
+
+    @Value("${movie.detail-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${movie.detail-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${movie.detail-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private static class Entry {
+        final MovieVO snapshot;
+        final long weight;
+        final long expireTime;
+
+        Entry(MovieVO snapshot, long weight, long expireTime) {
+            this.snapshot = snapshot;
+            this.weight = weight;
+            this.expireTime = expireTime;
+        }
+    }
+
+    // 电影ID -> 快照，按访问顺序 LRU
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    // 每次失效加一；加载期间发生过失效的结果不放入缓存，避免写事务提交前读到的旧数据被缓存
+    private long generation;
+
+    private FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long rejected;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    @PostConstruct
+    public void init() {
+        // 按平均每个快照约 2KB 估算条目数
+        sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / 2048)));
+    }
+
+    /**
+     * 读取电影详情快照的副本，未命中时调用 loader 加载并尝试放入缓存
+     * loader 抛出的异常（如电影不存在）直接抛给调用方，不缓存
+     */
+    public MovieVO get(Long id, Supplier<MovieVO> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long stamp;
+        synchronized (this) {
+            sketch.increment(id);
+            Entry entry = entries.get(id);
+            if (entry != null && entry.expireTime > System.currentTimeMillis()) {
+                hits++;
+                return entry.snapshot.copy();
+            }
+            if (entry != null) {
+                remove(id);
+                expirations++;
+            }
+            misses++;
+            stamp = generation;
+        }
+
+        MovieVO loaded = loader.get();
+        synchronized (this) {
+            if (stamp == generation) {
+                admit(id, loaded.copy());
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 电影新增、修改或删除后失效
+     */
+    public void invalidate(Long id) {
+        invalidateWhere(snapshot -> Objects.equals(snapshot.getId(), id));
+    }
+
+    /**
+     * 分类修改后失效该分类下的电影（快照中含分类名称）
+     */
+    public void invalidateCategory(Long categoryId) {
+        invalidateWhere(snapshot -> Objects.equals(snapshot.getCategoryId(), categoryId));
+    }
+
+    /**
+     * 用户修改用户名后失效其上传的电影（快照中含上传者用户名）
+     */
+    public void invalidateUploader(Long userId) {
+        invalidateWhere(snapshot -> Objects.equals(snapshot.getUserId(), userId));
+    }
+
+    public void invalidateAll() {
+        invalidateWhere(snapshot -> true);
+    }
+
+    /**
+     * 立即失效，并在当前事务提交后再失效一次：提交前其他请求仍可能读到旧数据并放入缓存
+     */
+    private void invalidateWhere(Predicate<MovieVO> predicate) {
+        removeWhere(predicate);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeWhere(predicate);
+                }
+            });
+        }
+    }
+
+    private synchronized void removeWhere(Predicate<MovieVO> predicate) {
+        generation++;
+        invalidations++;
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> entry = iterator.next();
+            if (predicate.test(entry.getValue().snapshot)) {
+                iterator.remove();
+                cachedBytes -= entry.getValue().weight;
+            }
+        }
+    }
+
+    /**
+     * 放入缓存，调用方持有锁；空间不足时与最久未访问的条目比较访问频率决定是否准入
+     */
+    private void admit(Long id, MovieVO snapshot) {
+        long weight = weigh(snapshot);
+        if (weight > maxBytes) {
+            rejected++;
+            return;
+        }
+        remove(id);
+        if (cachedBytes + weight > maxBytes) {
+            Long victim = entries.keySet().iterator().next();
+            if (sketch.frequency(id) <= sketch.frequency(victim)) {
+                rejected++;
+                return;
+            }
+            Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+            while (cachedBytes + weight > maxBytes && iterator.hasNext()) {
+                Map.Entry<Long, Entry> eldest = iterator.next();
+                iterator.remove();
+                cachedBytes -= eldest.getValue().weight;
+                evictions++;
+            }
+        }
+        entries.put(id, new Entry(snapshot, weight, System.currentTimeMillis() + ttlSeconds * 1000));
+        cachedBytes += weight;
+    }
+
+    private void remove(Long id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) {
+            cachedBytes -= removed.weight;
+        }
+    }
+
+    /**
+     * 估算快照占用的堆内存：对象头与字段开销加字符串内容（按每字符 2 字节计）
+     */
+    private static long weigh(MovieVO vo) {
+        return 256 + 2L * (length(vo.getTitle()) + length(vo.getDescription()) + length(vo.getCoverImage())
+                + length(vo.getVideoUrl()) + length(vo.getDirector()) + length(vo.getActors())
+                + length(vo.getCategoryName()) + length(vo.getUsername()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("cachedBytes", cachedBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("rejected", rejected);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+
+    /**
+     * 近期访问频率估计（Count-Min Sketch，4 行，计数上限 15）
+     * 累计记录次数达到 10 倍宽度后所有计数减半，使频率反映近期而非历史访问
+     */
+    private static class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(expectedEntries - 1) << 1;
+            table = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = width * 10;
+        }
+
+        void increment(Long key) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(key, i);
+                if (table[i][index] < 15) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Long key) {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, table[i][index(key, i)]);
+            }
+            return min;
+        }
+
+        private int index(Long key, int row) {
+            int hash = (key.hashCode() ^ SEEDS[row]) * SEEDS[(row + 1) % SEEDS.length];
+            hash ^= hash >>> 16;
+            return hash & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.movie.service;
+
+import com.movie.entity.Movie;
+import com.movie.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 电影全文检索（内存倒排索引）
+ * 索引标题、导演、演员和简介：中日韩文字按单字和相邻两字（bigram）切分，其他文字按连续的字母数字切分并转小写；
+ * 每个词的倒排表为两个 int 数组（文档序号、加权词频），多个词同时出现才算匹配，按 BM25 排序
+ * 启动时在后台线程从数据库加载全部电影构建，构建完成前调用方回退到数据库 LIKE 查询；
+ * 之后 MovieService 的新增、修改、删除在事务提交后增量更新（旧文档标记删除、追加新文档，删除过多时压缩）
+ * 注意回退的数据库查询只按标题子串匹配，与索引的结果不同：不匹配导演、演员、简介，
+ * 多个词需作为整体出现在标题中，且不按相关度排序；只在索引构建完成前或禁用索引时出现
+ */
+@Service
+public class MovieSearchIndex {
+
+    // 各字段的词频权重，标题命中排在简介命中之前
+    private static final int TITLE_WEIGHT = 3;
+    private static final int DIRECTOR_WEIGHT = 2;
+    private static final int ACTORS_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // 查询最后一个英文词按前缀匹配（边输入边搜索）：至少 2 个字符才展开（单个字母能匹配的词太多），
+    // 最多展开的词数，超出时按字典序保留前面的词并计入统计
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+
+    @Value("${movie.search.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 构建完成前为 null
+    private Index index;
+
+    // 构建期间的增量更新，构建完成后重放
+    private List<Runnable> pendingUpdates = new ArrayList<>();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder truncatedPrefixes = new LongAdder();
+    private volatile long buildMillis;
+
+    /**
+     * 单个词的倒排表，文档序号递增
+     */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] freqs = new int[2];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+
+        int freqOf(int doc) {
+            int index = Arrays.binarySearch(docs, 0, size, doc);
+            return index >= 0 ? freqs[index] : 0;
+        }
+    }
+
+    /**
+     * 索引数据，由外层读写锁保护
+     */
+    private static final class Index {
+        final TreeMap<String, Postings> terms = new TreeMap<>();
+        // 文档序号 -> 电影ID、分类ID（无分类为 0）、加权长度
+        long[] movieIds = new long[1024];
+        long[] categoryIds = new long[1024];
+        int[] lengths = new int[1024];
+        final BitSet deleted = new BitSet();
+        int docCount;
+        int liveDocs;
+        long totalLength;
+        long postingCount;
+        // 电影ID -> 当前文档序号
+        final Map<Long, Integer> docByMovie = new HashMap<>();
+
+        void upsert(long movieId, long categoryId, String title, String director, String actors, String description) {
+            remove(movieId);
+            Map<String, Integer> freqs = new HashMap<>();
+            int length = collect(freqs, title, TITLE_WEIGHT)
+                    + collect(freqs, director, DIRECTOR_WEIGHT)
+                    + collect(freqs, actors, ACTORS_WEIGHT)
+                    + collect(freqs, description, DESCRIPTION_WEIGHT);
+            if (docCount == movieIds.length) {
+                movieIds = Arrays.copyOf(movieIds, docCount * 2);
+                categoryIds = Arrays.copyOf(categoryIds, docCount * 2);
+                lengths = Arrays.copyOf(lengths, docCount * 2);
+            }
+            int doc = docCount++;
+            movieIds[doc] = movieId;
+            categoryIds[doc] = categoryId;
+            lengths[doc] = length;
+            for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+                terms.computeIfAbsent(entry.getKey(), key -> new Postings()).add(doc, entry.getValue());
+                postingCount++;
+            }
+            docByMovie.put(movieId, doc);
+            liveDocs++;
+            totalLength += length;
+        }
+
+        void remove(long movieId) {
+            Integer doc = docByMovie.remove(movieId);
+            if (doc == null) {
+                return;
+            }
+            deleted.set(doc);
+            liveDocs--;
+            totalLength -= lengths[doc];
+            // 已删除的文档超过一半时压缩，去掉倒排表中的已删除项
+            if (deleted.cardinality() > Math.max(1024, liveDocs)) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            int[] remap = new int[docCount];
+            int next = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (deleted.get(doc)) {
+                    remap[doc] = -1;
+                } else {
+                    remap[doc] = next;
+                    movieIds[next] = movieIds[doc];
+                    categoryIds[next] = categoryIds[doc];
+                    lengths[next] = lengths[doc];
+                    docByMovie.put(movieIds[next], next);
+                    next++;
+                }
+            }
+            postingCount = 0;
+            Iterator<Postings> iterator = terms.values().iterator();
+            while (iterator.hasNext()) {
+                Postings postings = iterator.next();
+                int size = 0;
+                for (int i = 0; i < postings.size; i++) {
+                    int doc = remap[postings.docs[i]];
+                    if (doc >= 0) {
+                        postings.docs[size] = doc;
+                        postings.freqs[size] = postings.freqs[i];
+                        size++;
+                    }
+                }
+                postings.size = size;
+                postingCount += size;
+                if (size == 0) {
+                    iterator.remove();
+                }
+            }
+            docCount = next;
+            deleted.clear();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::build, "movie-search-indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 从数据库加载全部电影构建索引
+     */
+    void build() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Index built = new Index();
+            for (Object[] row : movieRepository.findSearchFields()) {
+                built.upsert((Long) row[0], row[5] != null ? (Long) row[5] : 0,
+                        (String) row[1], (String) row[2], (String) row[3], (String) row[4]);
+            }
+            lock.writeLock().lock();
+            try {
+                index = built;
+                // 构建期间提交的修改可能未包含在加载的数据中，重放一遍（新增、删除都是幂等的）
+                for (Runnable update : pendingUpdates) {
+                    update.run();
+                }
+                pendingUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            buildMillis = System.currentTimeMillis() - startTime;
+            System.out.println("电影搜索索引构建完成: 电影数=" + built.liveDocs + ", 词数=" + built.terms.size()
+                    + ", 耗时: " + buildMillis + "ms");
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            System.err.println("电影搜索索引构建失败，关键词搜索将使用数据库查询: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 电影新增或修改后更新索引（当前事务提交后生效）
+     */
+    public void onMovieSaved(Movie movie) {
+        long movieId = movie.getId();
+        long categoryId = movie.getCategory() != null && movie.getCategory().getId() != null ? movie.getCategory().getId() : 0;
+        String title = movie.getTitle();
+        String director = movie.getDirector();
+        String actors = movie.getActors();
+        String description = movie.getDescription();
+        afterCommit(() -> apply(() -> index.upsert(movieId, categoryId, title, director, actors, description)));
+    }
+
+    /**
+     * 电影删除后更新索引（当前事务提交后生效）
+     */
+    public void onMovieDeleted(Long movieId) {
+        afterCommit(() -> apply(() -> index.remove(movieId)));
+    }
+
+    /**
+     * 搜索关键词，返回所有词都出现的电影
+     * @param categoryId 分类ID，为 null 时不限分类
+     * @param byRelevance 为 true 时按 BM25 得分从高到低（同分按文档顺序），否则按电影ID升序（不计算得分）
+     * @return 电影ID；索引未就绪时返回 null
+     */
+    public long[] search(String keyword, Long categoryId, boolean byRelevance) {
+        long startTime = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return null;
+            }
+            long[] result = match(index, parseQuery(index, keyword), categoryId, byRelevance);
+            searches.increment();
+            searchNanos.add(System.nanoTime() - startTime);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询条件：每个子句为一组倒排表，文档出现在其中任一表中即满足该子句，所有子句都满足才匹配
+     * 有子句没有任何倒排表时返回 null（没有匹配结果）
+     */
+    private List<List<Postings>> parseQuery(Index index, String keyword) {
+        List<List<Postings>> clauses = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        List<Boolean> cjk = new ArrayList<>();
+        tokenize(keyword, tokens, cjk, false);
+        boolean prefixLast = !keyword.isEmpty() && Character.isLetterOrDigit(keyword.charAt(keyword.length() - 1));
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            List<Postings> clause = new ArrayList<>();
+            if (!cjk.get(i) && prefixLast && i == tokens.size() - 1 && token.length() >= MIN_PREFIX_LENGTH) {
+                SortedMap<String, Postings> expansions = index.terms.subMap(token, token + Character.MAX_VALUE);
+                for (Postings postings : expansions.values()) {
+                    if (clause.size() == MAX_PREFIX_EXPANSIONS) {
+                        truncatedPrefixes.increment();
+                        break;
+                    }
+                    clause.add(postings);
+                }
+            } else {
+                Postings postings = index.terms.get(token);
+                if (postings != null) {
+                    clause.add(postings);
+                }
+            }
+            if (clause.isEmpty()) {
+                return null;
+            }
+            clauses.add(clause);
+        }
+        return clauses;
+    }
+
+    private static long[] match(Index index, List<List<Postings>> clauses, Long categoryId, boolean byRelevance) {
+        if (clauses == null || clauses.isEmpty() || index.liveDocs == 0) {
+            return new long[0];
+        }
+        // 从文档最少的子句得到候选文档，再逐个子句二分查找词频
+        List<Postings> smallest = clauses.get(0);
+        for (List<Postings> clause : clauses) {
+            if (totalSize(clause) < totalSize(smallest)) {
+                smallest = clause;
+            }
+        }
+        int[] candidates = candidates(index, smallest, categoryId);
+        double[] scores = byRelevance ? new double[candidates.length] : null;
+        double averageLength = (double) index.totalLength / index.liveDocs;
+        int count = candidates.length;
+        for (List<Postings> clause : clauses) {
+            if (clause == smallest && !byRelevance) {
+                continue;
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int doc = candidates[i];
+                double score = 0;
+                boolean matched = false;
+                for (Postings postings : clause) {
+                    int freq = postings.freqOf(doc);
+                    if (freq > 0) {
+                        matched = true;
+                        if (!byRelevance) {
+                            break;
+                        }
+                        double idf = Math.log(1 + (index.liveDocs - postings.size + 0.5) / (postings.size + 0.5));
+                        double norm = K1 * (1 - B + B * index.lengths[doc] / averageLength);
+                        score += Math.max(idf, 0.01) * freq * (K1 + 1) / (freq + norm);
+                    }
+                }
+                if (matched) {
+                    candidates[kept] = doc;
+                    if (byRelevance) {
+                        scores[kept] = scores[i] + score;
+                    }
+                    kept++;
+                }
+            }
+            count = kept;
+        }
+
+        long[] result = new long[count];
+        if (!byRelevance) {
+            for (int i = 0; i < count; i++) {
+                result[i] = index.movieIds[candidates[i]];
+            }
+            Arrays.sort(result);
+            return result;
+        }
+        // 得分（非负 float 的位模式与大小顺序一致）取反放在高 32 位、候选下标放在低 32 位，用基本类型排序
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) ~Float.floatToIntBits((float) scores[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            result[i] = index.movieIds[candidates[(int) keys[i]]];
+        }
+        return result;
+    }
+
+    /**
+     * 子句中所有倒排表的文档并集（去掉已删除和分类不符的文档），升序
+     */
+    private static int[] candidates(Index index, List<Postings> clause, Long categoryId) {
+        int[] docs = new int[totalSize(clause)];
+        int size = 0;
+        for (Postings postings : clause) {
+            System.arraycopy(postings.docs, 0, docs, size, postings.size);
+            size += postings.size;
+        }
+        Arrays.sort(docs, 0, size);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int doc = docs[i];
+            if ((kept > 0 && docs[kept - 1] == doc) || index.deleted.get(doc)
+                    || (categoryId != null && index.categoryIds[doc] != categoryId)) {
+                continue;
+            }
+            docs[kept++] = doc;
+        }
+        return Arrays.copyOf(docs, kept);
+    }
+
+    private static int totalSize(List<Postings> clause) {
+        int size = 0;
+        for (Postings postings : clause) {
+            size += postings.size;
+        }
+        return size;
+    }
+
+    /**
+     * 统计字段中各词的加权词频
+     * @return 字段加权长度
+     */
+    private static int collect(Map<String, Integer> freqs, String text, int weight) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens, new ArrayList<>(), true);
+        for (String token : tokens) {
+            freqs.merge(token, weight, Integer::sum);
+        }
+        return tokens.size() * weight;
+    }
+
+    /**
+     * 切分文本：中日韩文字连续段在建索引时输出单字和 bigram，查询时只有一个字输出单字、否则输出 bigram；
+     * 其他字母数字连续段输出小写的整词
+     */
+    static void tokenize(String text, List<String> tokens, List<Boolean> cjk, boolean indexing) {
+        // 不受服务器默认区域影响（如土耳其语环境下 I 会转成无点的 ı）
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = lower.codePointAt(i);
+            if (isCjk(codePoint)) {
+                List<String> chars = new ArrayList<>();
+                while (i < length && isCjk(lower.codePointAt(i))) {
+                    int next = i + Character.charCount(lower.codePointAt(i));
+                    chars.add(lower.substring(i, next));
+                    i = next;
+                }
+                if (indexing || chars.size() == 1) {
+                    for (String ch : chars) {
+                        tokens.add(ch);
+                        cjk.add(true);
+                    }
+                }
+                if (chars.size() > 1) {
+                    for (int c = 0; c + 1 < chars.size(); c++) {
+                        tokens.add(chars.get(c) + chars.get(c + 1));
+                        cjk.add(true);
+                    }
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(lower.codePointAt(i)) && !isCjk(lower.codePointAt(i))) {
+                    i += Character.charCount(lower.codePointAt(i));
+                }
+                tokens.add(lower.substring(start, i));
+                cjk.add(false);
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 应用增量更新；索引构建期间先排队，构建完成后重放
+     */
+    private void apply(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                update.run();
+            } else if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("ready", index != null);
+            if (index != null) {
+                stats.put("movies", index.liveDocs);
+                stats.put("deletedDocs", index.deleted.cardinality());
+                stats.put("terms", index.terms.size());
+                stats.put("postings", index.postingCount);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = searches.sum();
+        stats.put("buildMillis", buildMillis);
+        stats.put("searches", count);
+        stats.put("avgSearchMicros", count > 0 ? searchNanos.sum() / count / 1000 : 0);
+        // 前缀展开超过上限、只匹配了部分词的查询次数
+        stats.put("truncatedPrefixes", truncatedPrefixes.sum());
+        return stats;
+    }
+}
@@ -1,5 +1,6 @@
 package com.movie.service;
 
+import com.movie.dto.CursorPage;
 import com.movie.dto.MovieVO;
 import com.movie.entity.Movie;
 import com.movie.entity.Category;
@@ -8,15 +9,20 @@ import com.movie.repository.MovieRepository;
 import com.movie.repository.CategoryRepository;
 import com.movie.repository.UserRepository;
 import com.movie.repository.FavoriteRepository;
+import com.movie.util.CountCache;
+import com.movie.util.PageCursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,12 +40,39 @@ public class MovieService {
     @Autowired
     private FavoriteRepository favoriteRepository;
 
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+
+    @Autowired
+    private MovieDetailCache movieDetailCache;
+
+    @Autowired
+    private FavoriteIndex favoriteIndex;
+
+    @Autowired
+    private MovieSearchIndex movieSearchIndex;
+
+    // 游标分页的总数按查询条件缓存 30 秒
+    private final CountCache countCache = new CountCache(30_000, 256);
+
     public Page<Movie> getAllMovies(Pageable pageable) {
         // 确保按ID升序排序
         return movieRepository.findAll(pageable);
     }
 
     public Page<Movie> searchMovies(String keyword, Long categoryId, Pageable pageable) {
+        // 关键词优先使用内存搜索索引（索引构建完成前回退到数据库查询）
+        if (keyword != null && !keyword.isEmpty()) {
+            // Pageable 有排序时按ID升序，否则按相关度
+            long[] matchedIds = movieSearchIndex.search(keyword, categoryId, pageable.getSort().isUnsorted());
+            if (matchedIds != null) {
+                int from = (int) Math.min(pageable.getOffset(), matchedIds.length);
+                int to = Math.min(from + pageable.getPageSize(), matchedIds.length);
+                List<Long> pageIds = Arrays.stream(matchedIds, from, to).boxed().collect(Collectors.toList());
+                return new PageImpl<>(findAllInOrder(pageIds), pageable, matchedIds.length);
+            }
+        }
+        // 回退的数据库查询只按标题子串匹配，结果与搜索索引不同（见 MovieSearchIndex）
         // 所有查询方法都会使用Pageable中的排序（已设置为按ID升序）
         if (keyword != null && !keyword.isEmpty() && categoryId != null) {
             return movieRepository.findByTitleContainingAndCategoryId(keyword, categoryId, pageable);
@@ -52,11 +85,26 @@ public class MovieService {
         return movieRepository.findAll(pageable);
     }
 
+    /**
+     * 按主键批量读取电影，保持 ids 的顺序
+     */
+    private List<Movie> findAllInOrder(List<Long> ids) {
+        Map<Long, Movie> byId = movieRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Movie::getId, movie -> movie));
+        return ids.stream().map(byId::get).filter(java.util.Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * 浏览量累加到写回缓冲，返回的浏览量包含尚未写入数据库的部分
+     * 只读事务不会把对实体的修改写回数据库
+     */
+    @Transactional(readOnly = true)
     public Movie getMovieById(Long id) {
         Movie movie = movieRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("电影不存在"));
-        movie.setViewCount(movie.getViewCount() + 1);
-        return movieRepository.save(movie);
+        long pending = viewCountBuffer.increment(ViewCountBuffer.MOVIES, id);
+        movie.setViewCount((int) (movie.getViewCount() + pending));
+        return movie;
     }
     
     /**
@@ -65,16 +113,15 @@ public class MovieService {
      * @param username 当前用户名，可为null（未登录用户）
      * @return 带收藏状态的MovieVO
      */
+    @Transactional(readOnly = true)
     public MovieVO getMovieByIdWithFavoriteStatus(Long id, String username) {
-        Movie movie = movieRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("电影不存在"));
+        // 详情快照来自缓存，未命中时从数据库加载
+        MovieVO vo = movieDetailCache.get(id, () -> loadMovieVO(id));
         
-        // 增加浏览量
-        movie.setViewCount(movie.getViewCount() + 1);
-        movieRepository.save(movie);
-        
-        // 转换为MovieVO
-        MovieVO vo = MovieVO.fromMovie(movie);
+        // 增加浏览量（写回缓冲定时批量写入数据库），在快照的基数上加上缓冲中的全部浏览量
+        long pending = viewCountBuffer.increment(ViewCountBuffer.MOVIES, id);
+        long flushed = viewCountBuffer.getFlushed(ViewCountBuffer.MOVIES, id);
+        vo.setViewCount((int) (vo.getViewCount() + flushed + pending));
         
         // 获取当前用户ID（如果已登录）
         Long userId = null;
@@ -83,12 +130,11 @@ public class MovieService {
             userId = (user != null) ? user.getId() : null;
         }
         
-        // 查询收藏状态
+        // 查询收藏状态（内存位图）
         boolean isFavorited = false;
         if (userId != null && userId > 0) {
             try {
-                Optional<com.movie.entity.Favorite> favorite = favoriteRepository.findByUserIdAndMovieId(userId, id);
-                isFavorited = favorite.isPresent();
+                isFavorited = favoriteIndex.isFavorited(userId, id);
                 System.out.println("电影详情 - 电影ID: " + id + ", 用户ID: " + userId + ", 收藏状态: " + isFavorited);
             } catch (Exception e) {
                 System.err.println("查询收藏状态失败: " + e.getMessage());
@@ -100,6 +146,20 @@ public class MovieService {
         return vo;
     }
 
+    /**
+     * 从数据库加载电影详情快照
+     * 快照中的浏览量扣除了写回缓冲已写入数据库的部分，读取时再加上缓冲中的全部浏览量，
+     * 这样快照缓存期间浏览量的写回不会导致重复计算或数值倒退
+     */
+    private MovieVO loadMovieVO(Long id) {
+        long flushed = viewCountBuffer.getFlushed(ViewCountBuffer.MOVIES, id);
+        Movie movie = movieRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("电影不存在"));
+        MovieVO vo = MovieVO.fromMovie(movie);
+        vo.setViewCount((int) (movie.getViewCount() - flushed));
+        return vo;
+    }
+
     public Movie createMovie(Movie movie, String username) {
         User uploader = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
@@ -109,7 +169,10 @@ public class MovieService {
                     .orElseThrow(() -> new RuntimeException("分类不存在"));
             movie.setCategory(category);
         }
-        return movieRepository.save(movie);
+        Movie saved = movieRepository.save(movie);
+        movieDetailCache.invalidate(saved.getId());
+        movieSearchIndex.onMovieSaved(saved);
+        return saved;
     }
 
     public Movie updateMovie(Long id, Movie movie) {
@@ -129,7 +192,10 @@ public class MovieService {
                     .orElseThrow(() -> new RuntimeException("分类不存在"));
             existingMovie.setCategory(category);
         }
-        return movieRepository.save(existingMovie);
+        movieDetailCache.invalidate(id);
+        Movie saved = movieRepository.save(existingMovie);
+        movieSearchIndex.onMovieSaved(saved);
+        return saved;
     }
 
     /**
@@ -143,6 +209,7 @@ public class MovieService {
             movieRepository.save(movie);
             count++;
         }
+        movieDetailCache.invalidateAll();
         return count;
     }
 
@@ -153,6 +220,7 @@ public class MovieService {
         Movie movie = movieRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("电影不存在"));
         movie.setVideoUrl(videoUrl);
+        movieDetailCache.invalidate(id);
         return movieRepository.save(movie);
     }
 
@@ -168,6 +236,9 @@ public class MovieService {
         favoriteRepository.deleteByMovieId(id);
         // 再删除电影记录
         movieRepository.deleteById(id);
+        movieDetailCache.invalidate(id);
+        favoriteIndex.onMovieDeleted(id);
+        movieSearchIndex.onMovieDeleted(id);
     }
 
     /**
@@ -193,6 +264,11 @@ public class MovieService {
         
         // 再批量删除电影记录
         movieRepository.deleteAllById(ids);
+        for (Long movieId : ids) {
+            movieDetailCache.invalidate(movieId);
+            favoriteIndex.onMovieDeleted(movieId);
+            movieSearchIndex.onMovieDeleted(movieId);
+        }
     }
 
     /**
@@ -201,7 +277,7 @@ public class MovieService {
      * @param categoryId 分类ID
      * @param pageable 分页参数
      * @param userId 当前用户ID，可为null（未登录用户）- 故障点2修复：直接接收 userId
-     * @param sortBy 排序方式：favorite(收藏优先), hot(热度), rating(评分), viewCount(浏览量)
+     * @param sortBy 排序方式：favorite(收藏优先), hot(热度), rating(评分), viewCount(浏览量), relevance(搜索相关度)
      * @return 带收藏状态的电影分页列表
      */
     public Page<MovieVO> searchMoviesWithFavoriteStatus(String keyword, Long categoryId, Pageable pageable, Long userId, String sortBy) {
@@ -218,119 +294,90 @@ public class MovieService {
         final Long finalUserId = userId;
         System.out.println("Service 层接收到的 userId: " + finalUserId);
         
-        // 故障点3修复：获取当前用户收藏的电影ID列表
-        List<Long> favoritedMovieIds = java.util.Collections.emptyList();
+        // 当前用户在本页中收藏的电影（内存位图，不查询数据库）
+        Set<Long> favoritedMovieIds = java.util.Collections.emptySet();
         if (finalUserId != null && finalUserId > 0) {
             try {
-                // 方法1：使用 findByUserIdOrderByCreateTimeDesc 获取所有收藏记录
-                List<com.movie.entity.Favorite> favorites = favoriteRepository.findByUserIdOrderByCreateTimeDesc(finalUserId);
-                favoritedMovieIds = favorites.stream()
-                    .map(f -> f.getMovie().getId())
-                    .distinct() // 去重
-                    .collect(Collectors.toList());
-                
-                // 如果方法1返回空，尝试方法2：使用 findByUserIdWithMovieAndCategory
-                if (favoritedMovieIds.isEmpty()) {
-                    List<com.movie.entity.Favorite> favorites2 = favoriteRepository.findByUserIdWithMovieAndCategory(finalUserId);
-                    favoritedMovieIds = favorites2.stream()
-                        .map(f -> f.getMovie().getId())
-                        .distinct()
-                        .collect(Collectors.toList());
-                }
-                
-                System.out.println("成功获取用户收藏列表，用户ID: " + finalUserId + ", 收藏数量: " + favoritedMovieIds.size());
+                favoritedMovieIds = favoriteIndex.favoritedAmong(finalUserId, movieIds);
             } catch (Exception e) {
-                // 如果查询失败，设置为空列表
-                favoritedMovieIds = java.util.Collections.emptyList();
-                System.err.println("获取收藏列表失败: " + e.getMessage());
-                e.printStackTrace();
+                System.err.println("获取收藏状态失败: " + e.getMessage());
             }
         } else {
             System.out.println("用户未登录或用户ID为空，不查询收藏状态");
         }
+        System.out.println("用户ID: " + finalUserId + ", 本页收藏的电影ID: " + favoritedMovieIds);
         
-        final List<Long> finalFavoritedMovieIds = favoritedMovieIds;
-        
-        // 调试：打印用户信息和收藏列表
-        System.out.println("=== MovieService.searchMoviesWithFavoriteStatus ===");
-        System.out.println("用户ID: " + finalUserId + ", 收藏的电影ID列表: " + favoritedMovieIds);
-        System.out.println("收藏列表大小: " + (favoritedMovieIds != null ? favoritedMovieIds.size() : 0));
-        
-        // 故障点3修复：转换为MovieVO并设置收藏状态
-        // 对每一部电影，明确执行查询并设置 isFavorited
+        final Set<Long> finalFavoritedMovieIds = favoritedMovieIds;
         List<MovieVO> voList = moviePage.getContent().stream()
             .map(movie -> {
                 MovieVO vo = MovieVO.fromMovie(movie);
-                
-                // 故障点3修复：核心逻辑 - 明确执行 COUNT 查询
-                // SELECT COUNT(*) FROM favorites WHERE user_id = ? AND movie_id = ?
-                boolean isFavorited = false;
-                if (finalUserId != null && finalUserId > 0) {
-                    // 方法1：使用收藏ID列表检查（批量查询，性能更好）
-                    if (finalFavoritedMovieIds != null && !finalFavoritedMovieIds.isEmpty()) {
-                        isFavorited = finalFavoritedMovieIds.contains(movie.getId());
-                    } else {
-                        // 方法2：如果列表为空，直接查询数据库（相当于 COUNT > 0）
-                        try {
-                            Optional<com.movie.entity.Favorite> favorite = favoriteRepository.findByUserIdAndMovieId(finalUserId, movie.getId());
-                            // 如果 favorite.isPresent() 为 true，说明 COUNT > 0，即已收藏
-                            isFavorited = favorite.isPresent();
-                            
-                            // 调试日志
-                            if (moviePage.getContent().indexOf(movie) < 2) {
-                                System.out.println("直接查询收藏状态 - 电影ID: " + movie.getId() + 
-                                                 ", 用户ID: " + finalUserId + 
-                                                 ", COUNT结果: " + (isFavorited ? "> 0 (已收藏)" : "= 0 (未收藏)"));
-                            }
-                        } catch (Exception e) {
-                            System.err.println("查询电影收藏状态失败 - 电影ID: " + movie.getId() + ", 用户ID: " + finalUserId + ", 错误: " + e.getMessage());
-                            isFavorited = false;
-                        }
-                    }
-                }
-                
-                // 故障点3修复：这一步至关重要！明确设置收藏状态
-                vo.setIsFavorited(isFavorited);
-                
-                // 调试日志：验证设置的值
-                if (moviePage.getContent().indexOf(movie) < 2) {
-                    System.out.println("✅ 设置收藏状态 - 电影ID: " + movie.getId() + 
-                                     ", 标题: " + movie.getTitle() +
-                                     ", isFavorited值: " + vo.getIsFavorited() + 
-                                     ", 类型: " + (vo.getIsFavorited() != null ? vo.getIsFavorited().getClass().getSimpleName() : "null"));
-                }
-                
-                // 调试日志：打印前3部电影的收藏状态
-                if (moviePage.getContent().indexOf(movie) < 3) {
-                    System.out.println("✅ 电影收藏状态检查 - 电影ID: " + movie.getId() + 
-                                     ", 标题: " + movie.getTitle() + 
-                                     ", 用户ID: " + finalUserId + 
-                                     ", 是否收藏: " + isFavorited);
-                }
-                
+                vo.setIsFavorited(finalFavoritedMovieIds.contains(movie.getId()));
                 return vo;
             })
             .collect(Collectors.toList());
         
-        // 所有情况下都按ID升序排序
-        voList.sort((a, b) -> {
-            return Long.compare(a.getId() != null ? a.getId() : 0, b.getId() != null ? b.getId() : 0);
-        });
+        // 按ID升序排序（按相关度排序时 Pageable 不带排序，保持搜索结果的顺序）
+        if (pageable.getSort().isSorted()) {
+            voList.sort((a, b) -> {
+                return Long.compare(a.getId() != null ? a.getId() : 0, b.getId() != null ? b.getId() : 0);
+            });
+        }
         
         return new PageImpl<>(voList, pageable, moviePage.getTotalElements());
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    /**
+     * 游标分页获取带收藏状态的电影列表（按ID升序）
+     * 按上一页最后一行的ID定位下一页，翻到多深耗时都相同，且不执行 COUNT
+     * @param cursor 上一页返回的 nextCursor，为空时从第一页开始
+     * @param userId 当前用户ID，可为null（未登录用户）
+     * @param withTotal 是否返回总数（按查询条件缓存，可能短时间不精确）
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<MovieVO> searchMoviesByCursor(String keyword, Long categoryId, String cursor, int size,
+                                                    Long userId, boolean withTotal) {
+        String filterKeyword = (keyword != null && !keyword.isEmpty()) ? keyword : null;
+        String scope = "movies|" + filterKeyword + "|" + categoryId;
+        long afterId = (cursor == null || cursor.isEmpty()) ? 0 : PageCursor.decode(cursor, scope, 1)[0];
+        
+        // 多取一条用于判断是否还有下一页；关键词优先使用内存搜索索引
+        List<Movie> movies;
+        long[] matchedIds = filterKeyword != null ? movieSearchIndex.search(filterKeyword, categoryId, false) : null;
+        if (matchedIds != null) {
+            // 结果按ID升序，定位到 afterId 之后
+            int from = Arrays.binarySearch(matchedIds, afterId);
+            from = from >= 0 ? from + 1 : -from - 1;
+            int to = (int) Math.min((long) from + size + 1, matchedIds.length);
+            movies = findAllInOrder(Arrays.stream(matchedIds, from, to).boxed().collect(Collectors.toList()));
+        } else {
+            // 回退的数据库查询只按标题子串匹配，结果与搜索索引不同（见 MovieSearchIndex）
+            movies = movieRepository.findPageAfter(afterId, filterKeyword, categoryId, PageRequest.of(0, size + 1));
+        }
+        boolean hasNext = movies.size() > size;
+        if (hasNext) {
+            movies = movies.subList(0, size);
+        }
+        
+        Set<Long> favoritedMovieIds = java.util.Collections.emptySet();
+        if (userId != null && userId > 0) {
+            List<Long> movieIds = movies.stream().map(Movie::getId).collect(Collectors.toList());
+            favoritedMovieIds = favoriteIndex.favoritedAmong(userId, movieIds);
+        }
+        final Set<Long> finalFavoritedMovieIds = favoritedMovieIds;
+        List<MovieVO> content = movies.stream()
+            .map(movie -> {
+                MovieVO vo = MovieVO.fromMovie(movie);
+                vo.setIsFavorited(finalFavoritedMovieIds.contains(movie.getId()));
+                return vo;
+            })
+            .collect(Collectors.toList());
+        
+        String nextCursor = hasNext ? PageCursor.encode(scope, movies.get(movies.size() - 1).getId()) : null;
+        Long total = null;
+        if (withTotal) {
+            total = matchedIds != null ? Long.valueOf(matchedIds.length)
+                    : countCache.get(scope, () -> movieRepository.countByFilter(filterKeyword, categoryId));
+        }
+        return CursorPage.of(content, nextCursor, size, total);
+    }
+}
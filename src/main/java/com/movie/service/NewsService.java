@@ -1,15 +1,21 @@
 package com.movie.service;
 
+import com.movie.dto.CursorPage;
 import com.movie.entity.News;
 import com.movie.entity.User;
 import com.movie.repository.NewsRepository;
 import com.movie.repository.UserRepository;
+import com.movie.util.CountCache;
+import com.movie.util.PageCursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 @Service
 @Transactional
 public class NewsService {
@@ -19,6 +25,12 @@ public class NewsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ViewCountBuffer viewCountBuffer;
+
+    // 游标分页的总数按查询条件缓存 30 秒
+    private final CountCache countCache = new CountCache(30_000, 256);
+
     public Page<News> getAllNews(Pageable pageable) {
         return newsRepository.findAll(pageable);
     }
@@ -35,11 +47,42 @@ public class NewsService {
         }
     }
 
+    /**
+     * 游标分页获取新闻列表（按ID升序）
+     * 按上一页最后一行的ID定位下一页，翻到多深耗时都相同，且不执行 COUNT
+     * 只支持ID这种不变的排序键：浏览量、置顶等在翻页期间会变化，按它们定位会重复或漏掉数据
+     * @param cursor 上一页返回的 nextCursor，为空时从第一页开始
+     * @param withTotal 是否返回总数（按查询条件缓存，可能短时间不精确）
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<News> searchNewsByCursor(String keyword, Integer status, String cursor,
+                                               int size, boolean withTotal) {
+        String filterKeyword = (keyword != null && !keyword.isEmpty()) ? keyword : null;
+        String scope = "news|" + filterKeyword + "|" + status;
+        long afterId = (cursor == null || cursor.isEmpty()) ? 0 : PageCursor.decode(cursor, scope, 1)[0];
+        // 多取一条用于判断是否还有下一页
+        List<News> newsList = newsRepository.findPageAfter(afterId, filterKeyword, status, PageRequest.of(0, size + 1));
+        boolean hasNext = newsList.size() > size;
+        if (hasNext) {
+            newsList = newsList.subList(0, size);
+        }
+        
+        String nextCursor = hasNext ? PageCursor.encode(scope, newsList.get(newsList.size() - 1).getId()) : null;
+        Long total = withTotal ? countCache.get(scope, () -> newsRepository.countByFilter(filterKeyword, status)) : null;
+        return CursorPage.of(newsList, nextCursor, size, total);
+    }
+
+    /**
+     * 浏览量累加到写回缓冲，返回的浏览量包含尚未写入数据库的部分
+     * 只读事务不会把对实体的修改写回数据库
+     */
+    @Transactional(readOnly = true)
     public News getNewsById(Long id) {
         News news = newsRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("新闻不存在"));
-        news.setViewCount(news.getViewCount() + 1);
-        return newsRepository.save(news);
+        long pending = viewCountBuffer.increment(ViewCountBuffer.NEWS, id);
+        news.setViewCount((int) (news.getViewCount() + pending));
+        return news;
     }
 
     public News createNews(News news, String username) {
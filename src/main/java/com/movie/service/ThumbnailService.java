@@ -0,0 +1,331 @@
+package com.movie.service;
+
+import com.movie.util.ImageScaler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 图片缩略图生成与派生图缓存
+ * 按请求宽度（向上取整到配置的档位，避免任意宽度产生大量变体）用 ImageIO 生成缩略图，
+ * 保存在 uploads/derived/thumbnails 下，按总字节预算 LRU 淘汰；同一变体的并发请求只生成一次，
+ * 同时进行的生成数受 max-concurrent 限制，解码像素数受 max-decode-pixels 限制，内存占用与请求量和原图尺寸无关
+ */
+@Service
+public class ThumbnailService {
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.thumbnail.widths:64,128,160,240,320,480,640,960,1280}")
+    private String widthsConfig;
+
+    @Value("${file.thumbnail.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${file.thumbnail.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    // 源图像素上限，防止超大图片解码耗尽内存
+    @Value("${file.thumbnail.max-source-pixels:100000000}")
+    private long maxSourcePixels;
+
+    // 解码像素上限，超出时加大隔行采样倍数
+    @Value("${file.thumbnail.max-decode-pixels:16777216}")
+    private long maxDecodePixels;
+
+    @Value("${file.thumbnail.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // 等待生成名额的最长时间，超时后调用方返回原图
+    @Value("${file.thumbnail.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
+    private Semaphore generations;
+
+    private int[] widths;
+    private Path cacheDir;
+
+    // 缓存文件名 -> 文件大小，按访问顺序 LRU 淘汰
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    // 正在生成的变体：缓存文件名 -> 生成结果
+    private final Map<String, CompletableFuture<Path>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        widths = Arrays.stream(widthsConfig.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        generations = new Semaphore(Math.max(1, maxConcurrent));
+        cacheDir = Paths.get(uploadDir, "derived", "thumbnails").toAbsolutePath();
+        Files.createDirectories(cacheDir);
+
+        // 重启后按修改时间恢复 LRU 顺序，清理上次未写完的临时文件
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().startsWith(".")) {
+                    Files.deleteIfExists(file);
+                } else {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort((a, b) -> Long.compare(lastModified(a), lastModified(b)));
+        synchronized (this) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                entries.put(file.getFileName().toString(), size);
+                cachedBytes += size;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * 将请求宽度向上取整到最近的档位，超过最大档位时取最大档位
+     */
+    public int snapWidth(int width) {
+        for (int candidate : widths) {
+            if (candidate >= width) {
+                return candidate;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    /**
+     * 获取源图指定宽度的缩略图
+     * @return 缩略图文件；源图不宽于目标宽度或格式无法解码时返回 null，调用方直接返回原图
+     */
+    public Path getThumbnail(Path source, int width) throws IOException {
+        String key = cacheKey(source, width);
+        Path cached = cacheDir.resolve(key);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        if (isFresh(key, cached, sourceModified)) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 其他请求正在生成同一变体，等待其结果
+            coalesced.increment();
+            return await(existing);
+        }
+        try {
+            Path result = isFresh(key, cached, sourceModified) ? cached : generateLimited(source, width, cached, key);
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, future);
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("cachedBytes", cachedBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.sum());
+        stats.put("generated", generated.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("generating", Math.max(1, maxConcurrent) - generations.availablePermits());
+        return stats;
+    }
+
+    /**
+     * 占用一个生成名额后生成，等待超时抛出 IOException
+     */
+    private Path generateLimited(Path source, int width, Path target, String key) throws IOException {
+        try {
+            if (!generations.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IOException("缩略图生成繁忙");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缩略图生成被中断");
+        }
+        try {
+            return generate(source, width, target, key);
+        } finally {
+            generations.release();
+        }
+    }
+
+    private Path generate(Path source, int width, Path target, String key) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (sourceWidth <= width) {
+                    return null;
+                }
+                if ((long) sourceWidth * sourceHeight > maxSourcePixels) {
+                    throw new IllegalArgumentException("图片尺寸过大: " + sourceWidth + "x" + sourceHeight);
+                }
+                // 解码时按整数倍跳过像素，超大原图不必完整解码
+                // 宽高两个方向都保留至少两倍目标尺寸供后续平滑缩小，同时解码像素数不超过 maxDecodePixels
+                ImageReadParam param = reader.getDefaultReadParam();
+                int targetHeight = Math.max(1, (int) Math.round((double) sourceHeight * width / sourceWidth));
+                int subsampling = Math.max(1, Math.min(sourceWidth / (width * 2), sourceHeight / (targetHeight * 2)));
+                while ((long) (sourceWidth / subsampling) * (sourceHeight / subsampling) > maxDecodePixels) {
+                    subsampling++;
+                }
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        boolean png = isPngOutput(key);
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage scaled = ImageScaler.scale(image, width, height, png);
+
+        Path temp = cacheDir.resolve("." + key + ".tmp");
+        try {
+            if (png) {
+                ImageIO.write(scaled, "png", temp.toFile());
+            } else {
+                ImageScaler.writeJpeg(scaled, temp, jpegQuality);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        generated.increment();
+
+        long size = Files.size(target);
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            cachedBytes += size - (previous != null ? previous : 0);
+            evict();
+        }
+        return target;
+    }
+
+    private synchronized boolean isFresh(String key, Path cached, long sourceModified) {
+        if (entries.get(key) == null) {
+            return false;
+        }
+        // 源图被替换后重新生成
+        return Files.exists(cached) && lastModified(cached) >= sourceModified;
+    }
+
+    /**
+     * 超出字节预算时淘汰最久未访问的变体，调用方持有锁
+     * 始终保留最近访问的一个，避免刚生成的变体单独超出预算时被立即删除
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            cachedBytes -= eldest.getValue();
+            evictions.increment();
+            try {
+                Files.deleteIfExists(cacheDir.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                System.err.println("删除缩略图缓存失败: " + eldest.getKey() + ", 错误: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 缓存文件名：源目录摘要 + 源文件名 + 宽度，带透明通道的格式输出 PNG，其余输出 JPEG
+     */
+    private static String cacheKey(Path source, int width) {
+        Path absolute = source.toAbsolutePath();
+        String name = absolute.getFileName().toString();
+        String dirHash = Integer.toHexString(String.valueOf(absolute.getParent()).hashCode());
+        String lower = name.toLowerCase();
+        String extension = lower.endsWith(".png") || lower.endsWith(".gif") ? ".png" : ".jpg";
+        return dirHash + "_" + name + ".w" + width + extension;
+    }
+
+    private static boolean isPngOutput(String key) {
+        return key.endsWith(".png");
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缩略图生成被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
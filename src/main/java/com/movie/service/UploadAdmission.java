@@ -0,0 +1,184 @@
+package com.movie.service;
+
+import com.movie.upload.UploadRejectedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上传准入控制
+ * 初始化上传时按文件大小预留磁盘空间，并限制每个用户和全局的并发会话数、未完成字节数；
+ * 不满足时立即拒绝，避免传输数小时后才因磁盘写满失败
+ * 预留量随分片写入逐步抵扣（已写入的数据已体现在磁盘可用空间中），完成或过期时释放
+ */
+@Service
+public class UploadAdmission {
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.upload.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.upload.admission.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    @Value("${file.upload.admission.max-bytes-per-user:21474836480}")
+    private long maxBytesPerUser;
+
+    @Value("${file.upload.admission.max-sessions:200}")
+    private int maxSessions;
+
+    @Value("${file.upload.admission.max-bytes:214748364800}")
+    private long maxBytes;
+
+    // 磁盘上始终保留的空闲空间，不分配给上传
+    @Value("${file.upload.admission.disk-headroom-bytes:1073741824}")
+    private long diskHeadroomBytes;
+
+    /**
+     * 单个会话的预留
+     */
+    private static class Reservation {
+        final String username;
+        final long fileSize;
+        // 尚未写入磁盘的预留字节数
+        long remaining;
+
+        Reservation(String username, long fileSize, long remaining) {
+            this.username = username;
+            this.fileSize = fileSize;
+            this.remaining = remaining;
+        }
+    }
+
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    private final Map<String, Integer> userSessions = new HashMap<>();
+    private final Map<String, Long> userBytes = new HashMap<>();
+    private long totalBytes;
+    private long remainingBytes;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedByLimit = new LongAdder();
+    private final LongAdder rejectedByDisk = new LongAdder();
+
+    /**
+     * 为新会话预留空间
+     * @param diskBytes 完成前最多占用的磁盘字节数（merge 模式合并时分片与合并文件同时存在，为文件大小的两倍）
+     * @throws UploadRejectedException 超出并发限制（429）或磁盘空间不足（507）
+     */
+    public synchronized void reserve(String uploadId, String username, long fileSize, long diskBytes) {
+        if (!enabled) {
+            return;
+        }
+        int sessions = userSessions.getOrDefault(username, 0);
+        if (sessions >= maxSessionsPerUser) {
+            rejectedByLimit.increment();
+            throw new UploadRejectedException(UploadRejectedException.TOO_MANY_REQUESTS,
+                    "未完成的上传过多，最多同时进行 " + maxSessionsPerUser + " 个");
+        }
+        if (userBytes.getOrDefault(username, 0L) + fileSize > maxBytesPerUser) {
+            rejectedByLimit.increment();
+            throw new UploadRejectedException(UploadRejectedException.TOO_MANY_REQUESTS,
+                    "未完成的上传总大小超出限制，请先完成或取消其他上传");
+        }
+        if (reservations.size() >= maxSessions || totalBytes + fileSize > maxBytes) {
+            rejectedByLimit.increment();
+            throw new UploadRejectedException(UploadRejectedException.TOO_MANY_REQUESTS, "服务器上传繁忙，请稍后重试");
+        }
+        long available = usableSpace() - remainingBytes - diskHeadroomBytes;
+        if (diskBytes > available) {
+            rejectedByDisk.increment();
+            throw new UploadRejectedException(UploadRejectedException.INSUFFICIENT_STORAGE, "服务器存储空间不足");
+        }
+        add(uploadId, new Reservation(username, fileSize, diskBytes));
+        admitted.increment();
+    }
+
+    /**
+     * 重启后恢复进行中会话的预留，不做限制检查
+     * @param writtenBytes 已写入磁盘的字节数
+     */
+    public synchronized void restore(String uploadId, String username, long fileSize, long diskBytes, long writtenBytes) {
+        if (!enabled || reservations.containsKey(uploadId)) {
+            return;
+        }
+        add(uploadId, new Reservation(username, fileSize, Math.max(0, diskBytes - writtenBytes)));
+    }
+
+    /**
+     * 分片已写入磁盘，从预留中扣除
+     */
+    public synchronized void consume(String uploadId, long bytes) {
+        Reservation reservation = reservations.get(uploadId);
+        if (reservation == null) {
+            return;
+        }
+        long consumed = Math.min(bytes, reservation.remaining);
+        reservation.remaining -= consumed;
+        remainingBytes -= consumed;
+    }
+
+    /**
+     * 上传完成或会话过期时释放预留
+     */
+    public synchronized void release(String uploadId) {
+        Reservation reservation = reservations.remove(uploadId);
+        if (reservation == null) {
+            return;
+        }
+        int sessions = userSessions.get(reservation.username) - 1;
+        if (sessions == 0) {
+            userSessions.remove(reservation.username);
+            userBytes.remove(reservation.username);
+        } else {
+            userSessions.put(reservation.username, sessions);
+            userBytes.put(reservation.username, userBytes.get(reservation.username) - reservation.fileSize);
+        }
+        totalBytes -= reservation.fileSize;
+        remainingBytes -= reservation.remaining;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sessions", reservations.size());
+        stats.put("users", userSessions.size());
+        stats.put("inFlightBytes", totalBytes);
+        stats.put("reservedBytes", remainingBytes);
+        stats.put("usableBytes", usableSpace());
+        stats.put("admitted", admitted.sum());
+        stats.put("rejectedByLimit", rejectedByLimit.sum());
+        stats.put("rejectedByDisk", rejectedByDisk.sum());
+        return stats;
+    }
+
+    private void add(String uploadId, Reservation reservation) {
+        reservations.put(uploadId, reservation);
+        userSessions.merge(reservation.username, 1, Integer::sum);
+        userBytes.merge(reservation.username, reservation.fileSize, Long::sum);
+        totalBytes += reservation.fileSize;
+        remainingBytes += reservation.remaining;
+    }
+
+    /**
+     * 上传目录所在磁盘的可用空间，读取失败时视为不限制
+     */
+    private long usableSpace() {
+        try {
+            Path dir = Paths.get(uploadDir).toAbsolutePath();
+            Files.createDirectories(dir);
+            return Files.getFileStore(dir).getUsableSpace();
+        } catch (IOException e) {
+            System.err.println("读取磁盘可用空间失败: " + e.getMessage());
+            return Long.MAX_VALUE / 2;
+        }
+    }
+}
@@ -1,17 +1,45 @@
 package com.movie.service;
 
 import com.movie.dto.InitUploadRequest;
+import com.movie.media.FastStartRewriter;
+import com.movie.util.Crc32c;
+import com.movie.upload.ChunkBitmap;
+import com.movie.upload.CompletionJob;
+import com.movie.upload.RollingDigest;
+import com.movie.upload.UploadSession;
+import com.movie.upload.UploadSessionStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CheckedInputStream;
 
 @Service
 public class UploadService {
@@ -22,28 +50,158 @@ public class UploadService {
     @Value("${file.upload.url-prefix:/api/uploads}")
     private String urlPrefix;
     
+    // 分片组装方式：preallocate（预分配目标文件，分片按偏移直接写入）或 merge（分片文件 + 完成时合并）
+    @Value("${file.upload.assembly-mode:preallocate}")
+    private String assemblyMode;
+    
+    // fast-start 需要完整复制一遍文件，默认关闭
+    @Value("${file.upload.faststart-enabled:false}")
+    private boolean faststartEnabled;
+    
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+    
+    @Autowired
+    private UploadSessionStore sessionStore;
+    
+    @Autowired
+    private BlobStore blobStore;
+    
+    @Autowired
+    private UploadAdmission admission;
+    
+    // 并发执行的完成任务数，合并主要受磁盘限制，不宜过多
+    @Value("${file.upload.complete.threads:2}")
+    private int completeThreads;
+    
+    // 等待执行的完成任务上限，超出时拒绝新的完成请求
+    @Value("${file.upload.complete.queue-capacity:16}")
+    private int completeQueueCapacity;
+    
+    private ThreadPoolExecutor completionExecutor;
+    
+    // 推进滚动摘要的后台线程数：摘要需要从磁盘读取分片数据，重启或重传后可能要重读大量数据，不在上传请求线程上计算
+    @Value("${file.upload.digest.threads:1}")
+    private int digestThreads;
+    
+    // 等待推进摘要的会话数上限，超出时跳过，完成上传时补算
+    @Value("${file.upload.digest.queue-capacity:256}")
+    private int digestQueueCapacity;
+    
+    private ThreadPoolExecutor digestExecutor;
+    
+    // 已排队等待推进摘要的会话，同一会话只排队一次
+    private final Set<String> digestQueued = ConcurrentHashMap.newKeySet();
+    
     // 存储上传会话信息：uploadId -> UploadSession
     private final Map<String, UploadSession> uploadSessions = new ConcurrentHashMap<>();
     
-    // 存储已上传的分片：uploadId -> Set<chunkIndex>
-    private final Map<String, Set<Integer>> uploadedChunks = new ConcurrentHashMap<>();
+    // 存储已上传的分片：uploadId -> 分片位图（并发分片请求无锁更新）
+    private final Map<String, ChunkBitmap> uploadedChunks = new ConcurrentHashMap<>();
+    
+    // 滚动 SHA-256：uploadId -> 已连续到齐分片的摘要状态（重启后从磁盘上的分片重新计算）
+    private final Map<String, RollingDigest> digests = new ConcurrentHashMap<>();
+    
+    // 完成任务：uploadId -> 最近一次完成任务
+    private final Map<String, CompletionJob> completionJobs = new ConcurrentHashMap<>();
+    
+    // 正在写入的分片：uploadId:chunkIndex，同一分片的并发请求直接拒绝
+    private final Set<String> writingChunks = ConcurrentHashMap.newKeySet();
+    
+    // 每个会话正在写入的分片数：与完成任务的提交都在 synchronized (session) 中检查和修改，
+    // 有分片在写时不能提交合并，已提交合并后不能再开始写入（包括重传已记录的分片）
+    private final Map<String, Integer> activeWrites = new ConcurrentHashMap<>();
     
     // 最大文件大小：10GB
     private static final long MAX_FILE_SIZE = 10L * 1024 * 1024 * 1024;
     
+    // 最大分片数：分片位图按分片数一次性分配，分片大小由客户端指定，须限制总数
+    // （默认 5MB 分片时 10GB 文件为 2048 片）
+    static final int MAX_TOTAL_CHUNKS = 10_000;
+    
+    private static final String ASSEMBLY_PREALLOCATE = "preallocate";
+    
+    // 组装文件名，位于 temp/<uploadId>/ 下；预分配模式下分片直接写入，merge 模式下完成时合并到此
+    private static final String ASSEMBLY_FILE_NAME = "data.part";
+    
+    // fast-start 重写的输出文件名，与组装文件位于同一目录
+    private static final String FASTSTART_FILE_NAME = "data.faststart";
+    
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    
+    /**
+     * 启动时从会话存储恢复上传会话，并按磁盘上的分片数据重新校验已上传分片
+     */
+    @PostConstruct
+    public void recoverSessions() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        completionExecutor = new ThreadPoolExecutor(completeThreads, completeThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(completeQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "upload-completer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicInteger digestThreadNumber = new AtomicInteger();
+        digestExecutor = new ThreadPoolExecutor(digestThreads, digestThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(digestQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "upload-digest-" + digestThreadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        
+        int recovered = 0;
+        for (UploadSessionStore.StoredSession stored : sessionStore.loadSessions()) {
+            UploadSession session = stored.getSession();
+            if ("IN_PROGRESS".equals(session.getStatus())) {
+                ChunkBitmap chunks = rescanChunks(session, stored.getChunks());
+                if (chunks == null) {
+                    // 临时数据已丢失，无法续传
+                    sessionStore.removeSession(session.getUploadId());
+                    continue;
+                }
+                uploadedChunks.put(session.getUploadId(), chunks);
+                admission.restore(session.getUploadId(), session.getUsername(), session.getFileSize(),
+                        diskBytes(session), writtenBytes(session, chunks));
+            } else {
+                uploadedChunks.put(session.getUploadId(), ChunkBitmap.of(session.getTotalChunks(), stored.getChunks()));
+            }
+            session.setLastActiveTime(recoveredActiveTime(session));
+            uploadSessions.put(session.getUploadId(), session);
+            recovered++;
+        }
+        if (recovered > 0) {
+            System.out.println("已恢复上传会话: " + recovered);
+        }
+    }
+    
     /**
      * 初始化上传会话
      */
     public String initUpload(InitUploadRequest request, String username) {
-        // 验证文件大小
+        // 验证文件大小：非正数的大小会使准入检查中的字节数限制失效
+        if (request.getFileSize() == null || request.getFileSize() <= 0) {
+            throw new IllegalArgumentException("文件大小必须大于0");
+        }
         if (request.getFileSize() > MAX_FILE_SIZE) {
             throw new IllegalArgumentException("文件大小超出限制，最大支持10GB");
         }
         
+        if (request.getChunkSize() != null && request.getChunkSize() <= 0) {
+            throw new IllegalArgumentException("分片大小必须大于0");
+        }
+        long chunkSize = request.getChunkSize() != null ? request.getChunkSize() : 5 * 1024 * 1024L;
+        long totalChunks = (request.getFileSize() + chunkSize - 1) / chunkSize;
+        if (totalChunks > MAX_TOTAL_CHUNKS) {
+            throw new IllegalArgumentException("分片数超出限制（最多" + MAX_TOTAL_CHUNKS + "个），请增大分片大小");
+        }
+        
         // 验证文件名
         if (request.getFileName() == null || request.getFileName().isEmpty()) {
             throw new IllegalArgumentException("文件名不能为空");
         }
+        if (!isSafeFileName(request.getFileName())) {
+            throw new IllegalArgumentException("文件名不能包含路径分隔符或控制字符");
+        }
         
         // 生成唯一的上传ID
         String uploadId = UUID.randomUUID().toString();
@@ -54,25 +212,50 @@ public class UploadService {
         session.setFileName(request.getFileName());
         session.setFileSize(request.getFileSize());
         session.setFileType(request.getFileType());
-        session.setChunkSize(request.getChunkSize() != null ? request.getChunkSize() : 5 * 1024 * 1024L);
+        session.setChunkSize(chunkSize);
         session.setUsername(username);
         session.setStatus("IN_PROGRESS");
         session.setCreateTime(new Date());
+        session.setLastActiveTime(System.currentTimeMillis());
+        session.setAssemblyMode(ASSEMBLY_PREALLOCATE.equalsIgnoreCase(assemblyMode) ? ASSEMBLY_PREALLOCATE : "merge");
+        if (request.getSha256() != null && !request.getSha256().isEmpty()) {
+            session.setDeclaredSha256(request.getSha256().trim().toLowerCase());
+        }
         
-        // 计算总分片数
-        long totalChunks = (request.getFileSize() + session.getChunkSize() - 1) / session.getChunkSize();
         session.setTotalChunks((int) totalChunks);
         
+        // 服务器已有相同内容时直接引用，跳过整个传输
+        if (session.getDeclaredSha256() != null && completeFromExistingBlob(session)) {
+            return uploadId;
+        }
+        
+        // 先分配分片位图，再做准入预留，之后任何一步失败都撤销预留和会话
+        ChunkBitmap chunks = new ChunkBitmap(session.getTotalChunks());
+        
+        // 准入检查：并发限制和磁盘空间预留，不满足时抛出 UploadRejectedException
+        admission.reserve(uploadId, username, session.getFileSize(), diskBytes(session));
+        
         // 保存会话
         uploadSessions.put(uploadId, session);
-        uploadedChunks.put(uploadId, new HashSet<>());
+        uploadedChunks.put(uploadId, chunks);
         
         // 创建临时目录
         Path tempDir = Paths.get(uploadDir, "temp", uploadId);
         try {
             Files.createDirectories(tempDir);
+            if (isPreallocated(session)) {
+                // 预分配完整文件大小，分片到达后按偏移写入，完成时无需再合并
+                try (RandomAccessFile file = new RandomAccessFile(tempDir.resolve(ASSEMBLY_FILE_NAME).toFile(), "rw")) {
+                    file.setLength(request.getFileSize());
+                }
+            }
+            sessionStore.saveSession(session);
         } catch (IOException e) {
+            abandonInit(uploadId, tempDir);
             throw new RuntimeException("创建上传目录失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            abandonInit(uploadId, tempDir);
+            throw e;
         }
         
         System.out.println("初始化上传会话成功: uploadId=" + uploadId + ", fileName=" + request.getFileName() + ", totalChunks=" + totalChunks);
@@ -80,12 +263,81 @@ public class UploadService {
         return uploadId;
     }
     
+    /**
+     * 初始化中途失败：撤销会话、准入预留和临时目录
+     */
+    private void abandonInit(String uploadId, Path tempDir) {
+        uploadSessions.remove(uploadId);
+        uploadedChunks.remove(uploadId);
+        admission.release(uploadId);
+        deleteTempDir(tempDir);
+    }
+    
+    /**
+     * 用已有的相同内容直接完成上传
+     * @return 没有相同内容时返回 false
+     */
+    private boolean completeFromExistingBlob(UploadSession session) {
+        Path finalFile = Paths.get(uploadDir, "videos", session.getFileName());
+        try {
+            if (!blobStore.linkExisting(session.getDeclaredSha256(), session.getFileSize(), finalFile)) {
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("引用已有内容失败，改为正常上传: " + e.getMessage());
+            return false;
+        }
+        
+        ChunkBitmap chunks = new ChunkBitmap(session.getTotalChunks());
+        for (int i = 0; i < session.getTotalChunks(); i++) {
+            chunks.set(i);
+        }
+        session.setStatus("COMPLETED");
+        session.setFileUrl(urlPrefix + "/videos/" + session.getFileName());
+        session.setSha256(session.getDeclaredSha256());
+        uploadSessions.put(session.getUploadId(), session);
+        uploadedChunks.put(session.getUploadId(), chunks);
+        sessionStore.saveSession(session);
+        
+        hlsPackagingService.submit(finalFile);
+        System.out.println("秒传完成: uploadId=" + session.getUploadId() + ", fileUrl=" + session.getFileUrl());
+        return true;
+    }
+    
+    /**
+     * 获取已完成上传的文件URL，未完成时返回 null
+     */
+    public String getCompletedFileUrl(String uploadId) {
+        UploadSession session = uploadSessions.get(uploadId);
+        return session != null && "COMPLETED".equals(session.getStatus()) ? session.getFileUrl() : null;
+    }
+    
     /**
      * 上传分片
      */
-    public void uploadChunk(String uploadId, MultipartFile chunk, int chunkIndex, int totalChunks, String username) {
+    public void uploadChunk(String uploadId, MultipartFile chunk, int chunkIndex, int totalChunks,
+                            String crc32c, String username) {
+        // 验证分片索引
+        if (chunkIndex < 0 || chunkIndex >= totalChunks) {
+            throw new IllegalArgumentException("分片索引错误");
+        }
+        
+        try (InputStream inputStream = chunk.getInputStream()) {
+            uploadChunk(uploadId, chunkIndex, inputStream, chunk.getSize(), null, crc32c, username);
+        } catch (IOException e) {
+            throw new RuntimeException("保存分片失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 上传分片，数据从输入流直接写入目标位置（请求体上传时不经过 multipart 临时文件）
+     * @param contentRange 可选的 Content-Range 请求头，须与分片在文件中的位置一致
+     * @param crc32c 可选的分片 CRC32C（十六进制），写入过程中同步计算并校验，不一致时分片不计为已上传
+     */
+    public void uploadChunk(String uploadId, int chunkIndex, InputStream data, long length,
+                            String contentRange, String crc32c, String username) {
         // 验证上传会话
-        UploadSession session = uploadSessions.get(uploadId);
+        UploadSession session = findSession(uploadId);
         if (session == null) {
             throw new IllegalArgumentException("上传会话不存在或已过期");
         }
@@ -96,43 +348,142 @@ public class UploadService {
         }
         
         // 验证分片索引
-        if (chunkIndex < 0 || chunkIndex >= totalChunks) {
+        if (chunkIndex < 0 || chunkIndex >= session.getTotalChunks()) {
             throw new IllegalArgumentException("分片索引错误");
         }
         
-        // 保存分片到临时目录
+        long position = chunkIndex * session.getChunkSize();
+        long expectedSize = Math.min(session.getChunkSize(), session.getFileSize() - position);
+        if (length != expectedSize) {
+            throw new IllegalArgumentException("分片大小错误，期望: " + expectedSize + ", 实际: " + length);
+        }
+        if (contentRange != null) {
+            checkContentRange(contentRange, position, expectedSize, session.getFileSize());
+        }
+        Long expectedCrc = crc32c != null && !crc32c.isEmpty() ? Crc32c.parseHex(crc32c) : null;
+        
+        String chunkKey = uploadId + ":" + chunkIndex;
+        synchronized (session) {
+            if ("COMPLETED".equals(session.getStatus())) {
+                throw new IllegalArgumentException("上传已完成");
+            }
+            CompletionJob job = completionJobs.get(uploadId);
+            if (job != null && !job.isFinished()) {
+                throw new IllegalArgumentException("正在合并文件，不能再上传分片");
+            }
+            if (!writingChunks.add(chunkKey)) {
+                throw new IllegalArgumentException("该分片正在上传中: chunkIndex=" + chunkIndex);
+            }
+            activeWrites.merge(uploadId, 1, Integer::sum);
+        }
+        try {
+            writeChunk(session, chunkIndex, data, position, expectedSize, expectedCrc);
+            
+            // 记录已上传的分片，首次写入的分片从磁盘预留中扣除
+            if (markChunkUploaded(uploadId, chunkIndex)) {
+                admission.consume(uploadId, length);
+            }
+        } finally {
+            synchronized (session) {
+                writingChunks.remove(chunkKey);
+                activeWrites.computeIfPresent(uploadId, (key, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        session.setLastActiveTime(System.currentTimeMillis());
+        advanceDigest(session);
+        
+        System.out.println("分片上传成功: uploadId=" + uploadId + ", chunkIndex=" + chunkIndex + "/" + session.getTotalChunks() + ", size=" + length + " bytes");
+    }
+    
+    /**
+     * 写入分片数据并校验 CRC32C
+     * 预分配模式下首次上传的分片直接写入组装文件的对应偏移；merge 模式以及已记录分片的重传
+     * 先写入暂存文件，校验通过后再替换，校验失败不会破坏已记录的数据
+     */
+    private void writeChunk(UploadSession session, int chunkIndex, InputStream data, long position,
+                            long expectedSize, Long expectedCrc) {
+        String uploadId = session.getUploadId();
         Path tempDir = Paths.get(uploadDir, "temp", uploadId);
+        Path assemblyFile = tempDir.resolve(ASSEMBLY_FILE_NAME);
         Path chunkFile = tempDir.resolve("chunk_" + chunkIndex);
+        boolean recorded = uploadedChunks.get(uploadId).get(chunkIndex);
+        Path stagingFile = isPreallocated(session) && !recorded ? null : tempDir.resolve("chunk_" + chunkIndex + ".tmp");
         
+        CheckedInputStream checked = new CheckedInputStream(data, new Crc32c());
         try {
-            // 使用流式写入，避免一次性加载所有字节到内存
-            try (java.io.InputStream inputStream = chunk.getInputStream();
-                 java.io.FileOutputStream outputStream = new java.io.FileOutputStream(chunkFile.toFile());
-                 java.io.BufferedOutputStream bufferedOutputStream = new java.io.BufferedOutputStream(outputStream, 8192)) {
-                
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    bufferedOutputStream.write(buffer, 0, bytesRead);
-                }
-                bufferedOutputStream.flush();
+            if (stagingFile == null) {
+                writeChunkAt(assemblyFile, checked, position, expectedSize);
+            } else {
+                writeChunkFile(stagingFile, checked, expectedSize);
             }
             
-            // 记录已上传的分片
-            uploadedChunks.get(uploadId).add(chunkIndex);
+            long actualCrc = checked.getChecksum().getValue();
+            if (expectedCrc != null && expectedCrc != actualCrc) {
+                // 不记录该分片；预分配模式下未记录的区间由客户端重传时覆盖
+                deleteStagingFile(stagingFile);
+                throw new IllegalArgumentException("分片校验失败: chunkIndex=" + chunkIndex
+                        + ", 期望 CRC32C: " + Crc32c.toHex(expectedCrc) + ", 实际: " + Crc32c.toHex(actualCrc));
+            }
             
-            System.out.println("分片上传成功: uploadId=" + uploadId + ", chunkIndex=" + chunkIndex + "/" + totalChunks + ", size=" + chunk.getSize() + " bytes");
+            if (stagingFile != null) {
+                if (isPreallocated(session)) {
+                    try (InputStream staged = Files.newInputStream(stagingFile)) {
+                        writeChunkAt(assemblyFile, staged, position, expectedSize);
+                    }
+                    Files.delete(stagingFile);
+                } else {
+                    Files.move(stagingFile, chunkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
         } catch (IOException e) {
+            deleteStagingFile(stagingFile);
             throw new RuntimeException("保存分片失败: " + e.getMessage());
         }
+        
+        if (recorded) {
+            // 重传的内容可能与已计入摘要的数据不同，摘要从头重新计算
+            getDigest(session).invalidate(chunkIndex);
+        }
+    }
+    
+    private static void deleteTempDir(Path tempDir) {
+        if (Files.exists(tempDir)) {
+            try (Stream<Path> paths = Files.walk(tempDir)) {
+                paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+            } catch (Exception e) {
+                System.err.println("清理临时文件失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static void deleteStagingFile(Path stagingFile) {
+        if (stagingFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(stagingFile);
+        } catch (IOException e) {
+            System.err.println("删除分片暂存文件失败: " + e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        completionExecutor.shutdownNow();
+        digestExecutor.shutdownNow();
     }
     
     /**
-     * 完成上传，合并分片
+     * 提交完成任务，摘要校验和合并在后台线程执行，进度和结果通过 getUploadProgress 或 getCompletionJob 查询
+     * 同一会话已有进行中或已成功的任务时直接返回该任务
+     * 有分片（包括已记录分片的重传）正在写入时拒绝提交，提交后新的分片写入被拒绝
+     * @throws RejectedExecutionException 完成任务队列已满
      */
-    public String completeUpload(String uploadId, String username) {
+    public CompletionJob submitCompletion(String uploadId, String username) {
         // 验证上传会话
-        UploadSession session = uploadSessions.get(uploadId);
+        UploadSession session = findSession(uploadId);
         if (session == null) {
             throw new IllegalArgumentException("上传会话不存在或已过期");
         }
@@ -142,44 +493,121 @@ public class UploadService {
             throw new IllegalArgumentException("无权访问此上传会话");
         }
         
-        // 验证所有分片是否已上传
-        Set<Integer> uploaded = uploadedChunks.get(uploadId);
-        if (uploaded.size() != session.getTotalChunks()) {
-            throw new IllegalArgumentException("分片未完全上传，已上传: " + uploaded.size() + "/" + session.getTotalChunks());
+        // 验证所有分片是否已上传（其他节点写入的分片以会话存储为准）
+        ChunkBitmap uploaded = uploadedChunks.get(uploadId);
+        if (!uploaded.isComplete()) {
+            UploadSessionStore.StoredSession stored = sessionStore.findSession(uploadId);
+            if (stored != null) {
+                BitSet bits = stored.getChunks();
+                for (int i = bits.nextSetBit(0); i >= 0 && i < uploaded.size(); i = bits.nextSetBit(i + 1)) {
+                    uploaded.set(i);
+                }
+            }
+        }
+        if (!uploaded.isComplete()) {
+            throw new IllegalArgumentException("分片未完全上传，已上传: " + uploaded.count() + "/" + session.getTotalChunks());
+        }
+        
+        CompletionJob job;
+        synchronized (session) {
+            CompletionJob existing = completionJobs.get(uploadId);
+            if (existing != null && !CompletionJob.STATE_FAILED.equals(existing.getState())) {
+                return existing;
+            }
+            job = new CompletionJob(uploadId, session.getFileSize());
+            if ("COMPLETED".equals(session.getStatus())) {
+                if (existing != null) {
+                    // 上次任务已发布文件，但收尾步骤（保存会话等）失败，重新执行收尾
+                    finishCompletion(session, Paths.get(uploadDir, "videos", session.getFileName()));
+                }
+                // 秒传或重启前已完成的会话
+                job.complete(session.getFileUrl());
+                completionJobs.put(uploadId, job);
+                return job;
+            }
+            if (activeWrites.containsKey(uploadId)) {
+                // 重传的分片写到一半时合并会读到不完整的数据
+                throw new IllegalArgumentException("分片正在上传，请稍后再完成上传");
+            }
+            completionJobs.put(uploadId, job);
         }
         
+        CompletionJob submitted = job;
+        try {
+            completionExecutor.execute(() -> runCompletion(session, submitted));
+        } catch (RejectedExecutionException e) {
+            completionJobs.remove(uploadId, job);
+            throw e;
+        }
+        System.out.println("已提交完成任务: uploadId=" + uploadId + ", 排队数: " + completionExecutor.getQueue().size());
+        return job;
+    }
+    
+    /**
+     * 查询会话的完成任务，没有提交过时返回 null
+     */
+    public CompletionJob getCompletionJob(String uploadId, String username) {
+        UploadSession session = findSession(uploadId);
+        if (session == null) {
+            throw new IllegalArgumentException("上传会话不存在或已过期");
+        }
+        if (!session.getUsername().equals(username)) {
+            throw new IllegalArgumentException("无权访问此上传会话");
+        }
+        return completionJobs.get(uploadId);
+    }
+    
+    private void runCompletion(UploadSession session, CompletionJob job) {
+        try {
+            job.complete(assembleUpload(session, job));
+        } catch (Exception e) {
+            System.err.println("完成上传失败: uploadId=" + session.getUploadId() + ", 错误: " + e.getMessage());
+            job.fail(e.getMessage());
+        }
+    }
+    
+    /**
+     * 校验摘要、合并分片并发布文件
+     * 发布之前失败时分片数据和滚动摘要保持不变，可直接重新提交
+     * @return 文件URL
+     */
+    private String assembleUpload(UploadSession session, CompletionJob job) {
+        String uploadId = session.getUploadId();
+        ChunkBitmap uploaded = uploadedChunks.get(uploadId);
+        
         // 合并分片
         Path tempDir = Paths.get(uploadDir, "temp", uploadId);
         Path finalFile = Paths.get(uploadDir, "videos", session.getFileName());
         
         try {
+            // 分片到齐时摘要通常已计算完成，只有重启后等情况才需补读剩余分片
+            // 摘要对应客户端上传的原始内容（fast-start 重写之前）
+            job.stage(CompletionJob.STATE_VERIFYING);
+            RollingDigest rollingDigest = getDigest(session);
+            job.setProcessedBytes(Math.min(rollingDigest.getDigestedChunks() * session.getChunkSize(), session.getFileSize()));
+            RollingDigest.ChunkSource source = chunkSource(session);
+            String sha256 = rollingDigest.finish(uploaded, (chunkIndex, digest) -> {
+                source.read(chunkIndex, digest);
+                job.setProcessedBytes(Math.min((chunkIndex + 1) * session.getChunkSize(), session.getFileSize()));
+            });
+            if (session.getDeclaredSha256() != null && !session.getDeclaredSha256().equals(sha256)) {
+                throw new IllegalArgumentException("文件校验失败，SHA-256 与初始化时声明的不一致");
+            }
+            // 摘要保留到会话保存之后，发布前的任何失败都可以直接重新提交，无需重新读取分片
+            System.out.println("文件 SHA-256: " + sha256);
+            
             // 创建目标目录
             Files.createDirectories(finalFile.getParent());
             
-            // 按顺序合并所有分片（使用流式操作，避免内存溢出）
-            try (java.io.FileOutputStream fos = new java.io.FileOutputStream(finalFile.toFile());
-                 java.io.BufferedOutputStream bos = new java.io.BufferedOutputStream(fos, 8192)) {
-                
-                for (int i = 0; i < session.getTotalChunks(); i++) {
-                    Path chunkFile = tempDir.resolve("chunk_" + i);
-                    if (!Files.exists(chunkFile)) {
-                        throw new RuntimeException("分片文件不存在: chunk_" + i);
-                    }
-                    
-                    // 使用流式读取和写入
-                    try (java.io.FileInputStream fis = new java.io.FileInputStream(chunkFile.toFile());
-                         java.io.BufferedInputStream bis = new java.io.BufferedInputStream(fis, 8192)) {
-                        
-                        byte[] buffer = new byte[8192];
-                        int bytesRead;
-                        while ((bytesRead = bis.read(buffer)) != -1) {
-                            bos.write(buffer, 0, bytesRead);
-                        }
-                    }
-                    System.out.println("已合并分片: " + (i + 1) + "/" + session.getTotalChunks());
-                }
-                bos.flush();
+            // 组装和 fast-start 都在临时目录中完成，发布前不触碰 finalFile：
+            // 同名文件可能是与其他公开路径共享数据的硬链接，原地写入会破坏其他文件
+            Path assemblyFile = tempDir.resolve(ASSEMBLY_FILE_NAME);
+            job.stage(CompletionJob.STATE_MERGING);
+            if (!isPreallocated(session)) {
+                mergeChunks(session, tempDir, assemblyFile, job);
             }
+            // 预分配模式下分片已写入组装文件的对应偏移，无需合并
+            job.setProcessedBytes(session.getFileSize());
             
             // 生成文件URL
             // 注意：文件名可能包含特殊字符（中文、空格等），但不需要手动编码
@@ -190,31 +618,50 @@ public class UploadService {
             System.out.println("文件实际路径: " + finalFile.toAbsolutePath().toString());
             
             // 验证文件是否存在
-            if (!Files.exists(finalFile)) {
-                throw new RuntimeException("合并后的文件不存在: " + finalFile.toString());
+            if (!Files.exists(assemblyFile)) {
+                throw new RuntimeException("合并后的文件不存在: " + assemblyFile.toString());
             }
             
             // 验证文件大小
-            long fileSize = Files.size(finalFile);
+            long fileSize = Files.size(assemblyFile);
             System.out.println("文件合并完成，实际大小: " + fileSize + " bytes, 期望大小: " + session.getFileSize() + " bytes");
             
             if (Math.abs(fileSize - session.getFileSize()) > 1024) { // 允许1KB误差
                 System.err.println("警告: 文件大小不匹配！实际: " + fileSize + ", 期望: " + session.getFileSize());
             }
             
-            // 清理临时文件
+            job.stage(CompletionJob.STATE_FINALIZING);
+            
+            // moov 在文件末尾时移到开头，播放器无需先请求文件尾部即可开始播放
+            // 重写后文件内容已变化，去重须使用重写后内容的摘要
+            Path publishFile = assemblyFile;
+            String storedSha256 = sha256;
+            if (faststartEnabled) {
+                Path fastStartFile = tempDir.resolve(FASTSTART_FILE_NAME);
+                if (applyFastStart(session.getFileName(), assemblyFile, fastStartFile)) {
+                    publishFile = fastStartFile;
+                    storedSha256 = BlobStore.sha256(fastStartFile);
+                }
+            }
+            
+            // 发布：先释放旧文件的去重引用，再原子替换为新文件（旧数据不被截断，共享它的其他路径不受影响）
+            // 此前的步骤都不修改分片数据，失败后可重新提交；此后的步骤只依赖 finalFile
+            blobStore.release(finalFile);
+            Files.move(publishFile, finalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            // 内容去重：已有相同内容时替换为硬链接（以磁盘上实际内容的摘要为键），失败时保留独立副本
             try {
-                Files.walk(tempDir)
-                    .sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(File::delete);
-            } catch (Exception e) {
-                System.err.println("清理临时文件失败: " + e.getMessage());
+                blobStore.adopt(finalFile, storedSha256);
+            } catch (IOException e) {
+                System.err.println("内容去重失败，保留独立副本: " + e.getMessage());
             }
             
             // 更新会话状态
+            session.setSha256(sha256);
             session.setStatus("COMPLETED");
             session.setFileUrl(fileUrl);
+            session.setLastActiveTime(System.currentTimeMillis());
+            finishCompletion(session, finalFile);
             
             System.out.println("上传完成: uploadId=" + uploadId + ", fileUrl=" + fileUrl);
             
@@ -224,20 +671,50 @@ public class UploadService {
         }
     }
     
+    /**
+     * 文件发布后的收尾：保存会话、释放预留和摘要、清理临时文件并提交 HLS 封装
+     * 各步骤可重复执行，保存会话失败时重新提交完成任务会再次执行
+     */
+    private void finishCompletion(UploadSession session, Path finalFile) {
+        String uploadId = session.getUploadId();
+        try {
+            sessionStore.saveSession(session);
+        } finally {
+            // 文件已发布，不会再写入分片数据，无论会话是否保存成功都释放磁盘预留
+            admission.release(uploadId);
+        }
+        digests.remove(uploadId);
+        
+        // 清理临时文件
+        deleteTempDir(Paths.get(uploadDir, "temp", uploadId));
+        
+        // 后台封装为 HLS 分片
+        hlsPackagingService.submit(finalFile);
+    }
+    
     /**
      * 获取已上传的分片数量
      */
     public int getUploadedChunks(String uploadId) {
-        Set<Integer> chunks = uploadedChunks.get(uploadId);
-        return chunks != null ? chunks.size() : 0;
+        ChunkBitmap chunks = uploadedChunks.get(uploadId);
+        return chunks != null ? chunks.count() : 0;
+    }
+    
+    /**
+     * 获取已完成上传文件的 SHA-256，未完成时返回 null
+     */
+    public String getFileSha256(String uploadId) {
+        UploadSession session = uploadSessions.get(uploadId);
+        return session != null ? session.getSha256() : null;
     }
     
     /**
      * 获取上传进度信息
+     * 轮询只需要数量，完整的已上传分片索引列表只在 includeIndices 为 true（断点续传恢复时）才返回
      */
-    public Map<String, Object> getUploadProgress(String uploadId, String username) {
+    public Map<String, Object> getUploadProgress(String uploadId, String username, boolean includeIndices) {
         // 验证上传会话
-        UploadSession session = uploadSessions.get(uploadId);
+        UploadSession session = findSession(uploadId);
         if (session == null) {
             throw new IllegalArgumentException("上传会话不存在或已过期");
         }
@@ -247,8 +724,8 @@ public class UploadService {
             throw new IllegalArgumentException("无权访问此上传会话");
         }
         
-        Set<Integer> uploaded = uploadedChunks.get(uploadId);
-        int uploadedCount = uploaded != null ? uploaded.size() : 0;
+        ChunkBitmap uploaded = uploadedChunks.get(uploadId);
+        int uploadedCount = uploaded != null ? uploaded.count() : 0;
         
         Map<String, Object> progress = new HashMap<>();
         progress.put("uploadId", uploadId);
@@ -256,8 +733,18 @@ public class UploadService {
         progress.put("fileSize", session.getFileSize());
         progress.put("totalChunks", session.getTotalChunks());
         progress.put("uploadedChunks", uploadedCount);
-        progress.put("uploadedChunkIndices", uploaded != null ? new ArrayList<>(uploaded) : new ArrayList<>());
+        if (includeIndices) {
+            progress.put("uploadedChunkIndices", uploaded != null ? uploaded.indices() : new ArrayList<>());
+        }
         progress.put("status", session.getStatus());
+        progress.put("fileUrl", session.getFileUrl());
+        progress.put("digestedChunks", session.getSha256() != null
+            ? session.getTotalChunks() : getDigest(session).getDigestedChunks());
+        progress.put("sha256", session.getSha256());
+        CompletionJob job = completionJobs.get(uploadId);
+        if (job != null) {
+            progress.put("completion", job.toMap());
+        }
         progress.put("percentage", session.getTotalChunks() > 0 
             ? Math.round((uploadedCount * 100.0) / session.getTotalChunks()) : 0);
         
@@ -265,50 +752,342 @@ public class UploadService {
     }
     
     /**
-     * 上传会话信息
+     * 查找上传会话，本节点没有时从会话存储加载（服务重启或由其他节点创建）
      */
-    private static class UploadSession {
-        private String uploadId;
-        private String fileName;
-        private Long fileSize;
-        private String fileType;
-        private Long chunkSize;
-        private int totalChunks;
-        private String username;
-        private String status;
-        private Date createTime;
-        private String fileUrl;
-        
-        // Getters and Setters
-        public String getUploadId() { return uploadId; }
-        public void setUploadId(String uploadId) { this.uploadId = uploadId; }
-        
-        public String getFileName() { return fileName; }
-        public void setFileName(String fileName) { this.fileName = fileName; }
-        
-        public Long getFileSize() { return fileSize; }
-        public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
-        
-        public String getFileType() { return fileType; }
-        public void setFileType(String fileType) { this.fileType = fileType; }
-        
-        public Long getChunkSize() { return chunkSize; }
-        public void setChunkSize(Long chunkSize) { this.chunkSize = chunkSize; }
-        
-        public int getTotalChunks() { return totalChunks; }
-        public void setTotalChunks(int totalChunks) { this.totalChunks = totalChunks; }
-        
-        public String getUsername() { return username; }
-        public void setUsername(String username) { this.username = username; }
-        
-        public String getStatus() { return status; }
-        public void setStatus(String status) { this.status = status; }
-        
-        public Date getCreateTime() { return createTime; }
-        public void setCreateTime(Date createTime) { this.createTime = createTime; }
-        
-        public String getFileUrl() { return fileUrl; }
-        public void setFileUrl(String fileUrl) { this.fileUrl = fileUrl; }
+    private UploadSession findSession(String uploadId) {
+        UploadSession session = uploadSessions.get(uploadId);
+        if (session != null) {
+            return session;
+        }
+        UploadSessionStore.StoredSession stored = sessionStore.findSession(uploadId);
+        if (stored == null) {
+            return null;
+        }
+        stored.getSession().setLastActiveTime(recoveredActiveTime(stored.getSession()));
+        uploadedChunks.putIfAbsent(uploadId, ChunkBitmap.of(stored.getSession().getTotalChunks(), stored.getChunks()));
+        UploadSession existing = uploadSessions.putIfAbsent(uploadId, stored.getSession());
+        return existing != null ? existing : stored.getSession();
+    }
+    
+    /**
+     * 移除最近活动时间早于 cutoff 的会话（进行中和已完成的都会移除），临时目录由调用方清理
+     * @return 被移除的会话
+     */
+    List<UploadSession> expireSessions(long cutoff) {
+        List<UploadSession> expired = new ArrayList<>();
+        for (UploadSession session : uploadSessions.values()) {
+            if (session.getLastActiveTime() >= cutoff) {
+                continue;
+            }
+            CompletionJob job = completionJobs.get(session.getUploadId());
+            if (job != null && !job.isFinished()) {
+                continue;
+            }
+            // 并发的 findSession 可能刚放入同一会话，按对象移除避免误删新放入的会话
+            if (!uploadSessions.remove(session.getUploadId(), session)) {
+                continue;
+            }
+            uploadedChunks.remove(session.getUploadId());
+            digests.remove(session.getUploadId());
+            completionJobs.remove(session.getUploadId());
+            admission.release(session.getUploadId());
+            sessionStore.removeSession(session.getUploadId());
+            expired.add(session);
+        }
+        return expired;
+    }
+    
+    /**
+     * 本节点或会话存储中是否仍有该会话（共享会话存储时可能由其他节点创建）
+     */
+    boolean hasSession(String uploadId) {
+        return uploadSessions.containsKey(uploadId) || sessionStore.findSession(uploadId) != null;
+    }
+    
+    Path getTempRoot() {
+        return Paths.get(uploadDir, "temp");
+    }
+    
+    /**
+     * 重启或从会话存储加载后，以临时目录的修改时间近似最近活动时间
+     */
+    private long recoveredActiveTime(UploadSession session) {
+        long activeTime = session.getCreateTime() != null ? session.getCreateTime().getTime() : System.currentTimeMillis();
+        Path tempDir = Paths.get(uploadDir, "temp", session.getUploadId());
+        try {
+            if (Files.isDirectory(tempDir)) {
+                activeTime = Math.max(activeTime, Files.getLastModifiedTime(tempDir).toMillis());
+            }
+            // 预分配模式下分片写入组装文件，不会更新目录的修改时间
+            Path assemblyFile = tempDir.resolve(ASSEMBLY_FILE_NAME);
+            if (Files.exists(assemblyFile)) {
+                activeTime = Math.max(activeTime, Files.getLastModifiedTime(assemblyFile).toMillis());
+            }
+        } catch (IOException e) {
+            System.err.println("读取临时目录时间失败: " + e.getMessage());
+        }
+        return activeTime;
+    }
+    
+    /**
+     * @return 首次标记该分片时返回 true
+     */
+    private boolean markChunkUploaded(String uploadId, int chunkIndex) {
+        sessionStore.chunkCompleted(uploadId, chunkIndex);
+        return uploadedChunks.get(uploadId).set(chunkIndex);
+    }
+    
+    /**
+     * 会话完成前最多占用的磁盘字节数：merge 模式合并时分片文件和合并后的文件同时存在
+     */
+    private static long diskBytes(UploadSession session) {
+        return isPreallocated(session) ? session.getFileSize() : session.getFileSize() * 2;
+    }
+    
+    private static long writtenBytes(UploadSession session, ChunkBitmap chunks) {
+        return Math.min((long) chunks.count() * session.getChunkSize(), session.getFileSize());
+    }
+    
+    private RollingDigest getDigest(UploadSession session) {
+        return digests.computeIfAbsent(session.getUploadId(), id -> new RollingDigest(session.getTotalChunks()));
+    }
+    
+    /**
+     * 在后台线程将连续到齐的分片计入滚动摘要，上传请求不等待
+     * 队列已满或计算失败时跳过，完成上传时会补算
+     */
+    private void advanceDigest(UploadSession session) {
+        String uploadId = session.getUploadId();
+        ChunkBitmap chunks = uploadedChunks.get(uploadId);
+        if (chunks == null || !digestQueued.add(uploadId)) {
+            return;
+        }
+        RollingDigest digest = getDigest(session);
+        try {
+            digestExecutor.execute(() -> {
+                // 先出队，执行期间新到的分片会再次排队
+                digestQueued.remove(uploadId);
+                if (!"IN_PROGRESS".equals(session.getStatus())) {
+                    return;
+                }
+                try {
+                    digest.advance(chunks, chunkSource(session));
+                } catch (IOException e) {
+                    System.err.println("计算上传摘要失败: uploadId=" + uploadId + ", 错误: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            digestQueued.remove(uploadId);
+        }
+    }
+    
+    /**
+     * 从分片文件或预分配文件中读取分片数据送入摘要
+     */
+    private RollingDigest.ChunkSource chunkSource(UploadSession session) {
+        Path tempDir = Paths.get(uploadDir, "temp", session.getUploadId());
+        return (chunkIndex, digest) -> {
+            long position = chunkIndex * session.getChunkSize();
+            long length = Math.min(session.getChunkSize(), session.getFileSize() - position);
+            Path file = isPreallocated(session) ? tempDir.resolve(ASSEMBLY_FILE_NAME) : tempDir.resolve("chunk_" + chunkIndex);
+            long offset = isPreallocated(session) ? position : 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                updateDigest(channel, offset, length, digest);
+            }
+        };
+    }
+    
+    private static void updateDigest(FileChannel channel, long position, long length, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, 256 * 1024));
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("分片数据不完整");
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+            remaining -= read;
+        }
+    }
+    
+    /**
+     * 按磁盘上的分片数据校验记录中的分片：merge 模式要求分片文件存在且大小正确，
+     * preallocate 模式要求组装文件完整
+     * @return 临时目录已不存在时返回 null
+     */
+    private ChunkBitmap rescanChunks(UploadSession session, BitSet recorded) {
+        Path tempDir = Paths.get(uploadDir, "temp", session.getUploadId());
+        if (!Files.isDirectory(tempDir)) {
+            return null;
+        }
+        ChunkBitmap chunks = new ChunkBitmap(session.getTotalChunks());
+        try {
+            if (isPreallocated(session)) {
+                Path assemblyFile = tempDir.resolve(ASSEMBLY_FILE_NAME);
+                if (!Files.exists(assemblyFile) || Files.size(assemblyFile) != session.getFileSize()) {
+                    return null;
+                }
+                chunks = ChunkBitmap.of(session.getTotalChunks(), recorded);
+            } else {
+                for (int i = recorded.nextSetBit(0); i >= 0 && i < session.getTotalChunks(); i = recorded.nextSetBit(i + 1)) {
+                    Path chunkFile = tempDir.resolve("chunk_" + i);
+                    long expectedSize = Math.min(session.getChunkSize(), session.getFileSize() - i * session.getChunkSize());
+                    if (Files.exists(chunkFile) && Files.size(chunkFile) == expectedSize) {
+                        chunks.set(i);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("校验上传分片失败: uploadId=" + session.getUploadId() + ", 错误: " + e.getMessage());
+            return null;
+        }
+        return chunks;
+    }
+    
+    /**
+     * 按顺序合并所有分片到临时目录中的组装文件（使用流式操作，避免内存溢出）
+     */
+    private void mergeChunks(UploadSession session, Path tempDir, Path assemblyFile, CompletionJob job) throws IOException {
+        try (java.io.FileOutputStream fos = new java.io.FileOutputStream(assemblyFile.toFile());
+             java.io.BufferedOutputStream bos = new java.io.BufferedOutputStream(fos, 8192)) {
+            
+            for (int i = 0; i < session.getTotalChunks(); i++) {
+                Path chunkFile = tempDir.resolve("chunk_" + i);
+                if (!Files.exists(chunkFile)) {
+                    throw new RuntimeException("分片文件不存在: chunk_" + i);
+                }
+                
+                // 使用流式读取和写入
+                try (java.io.FileInputStream fis = new java.io.FileInputStream(chunkFile.toFile());
+                     java.io.BufferedInputStream bis = new java.io.BufferedInputStream(fis, 8192)) {
+                    
+                    byte[] buffer = new byte[8192];
+                    int bytesRead;
+                    while ((bytesRead = bis.read(buffer)) != -1) {
+                        bos.write(buffer, 0, bytesRead);
+                    }
+                }
+                job.setProcessedBytes(Math.min((i + 1) * session.getChunkSize(), session.getFileSize()));
+                System.out.println("已合并分片: " + (i + 1) + "/" + session.getTotalChunks());
+            }
+            bos.flush();
+        }
+    }
+    
+    /**
+     * merge 模式：将分片写入独立的分片文件
+     */
+    private void writeChunkFile(Path chunkFile, InputStream data, long expectedSize) throws IOException {
+        long written = 0;
+        // 使用流式写入，避免一次性加载所有字节到内存
+        try (java.io.FileOutputStream outputStream = new java.io.FileOutputStream(chunkFile.toFile());
+             java.io.BufferedOutputStream bufferedOutputStream = new java.io.BufferedOutputStream(outputStream, 8192)) {
+            
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while (written < expectedSize
+                    && (bytesRead = data.read(buffer, 0, (int) Math.min(buffer.length, expectedSize - written))) != -1) {
+                bufferedOutputStream.write(buffer, 0, bytesRead);
+                written += bytesRead;
+            }
+            bufferedOutputStream.flush();
+            // 分片数据先落盘，再记录到会话存储，重启后记录中的分片一定完整
+            outputStream.getFD().sync();
+        }
+        if (written != expectedSize) {
+            throw new IOException("分片数据不完整，期望: " + expectedSize + ", 实际: " + written);
+        }
+    }
+    
+    /**
+     * 预分配模式：将分片写入组装文件的 chunkIndex * chunkSize 偏移处
+     * 各分片写入互不重叠的区间，可并发上传
+     */
+    private void writeChunkAt(Path assemblyFile, InputStream data, long position, long expectedSize) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(data);
+             FileChannel target = FileChannel.open(assemblyFile, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < expectedSize) {
+                long count = target.transferFrom(source, position + written, expectedSize - written);
+                if (count <= 0) {
+                    break;
+                }
+                written += count;
+            }
+            if (written != expectedSize) {
+                throw new IOException("分片数据不完整，期望: " + expectedSize + ", 实际: " + written);
+            }
+            target.force(false);
+        }
+    }
+    
+    /**
+     * 校验 Content-Range（bytes start-end/total）与分片在文件中的位置一致
+     */
+    private static void checkContentRange(String contentRange, long position, long length, long fileSize) {
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Content-Range 格式错误: " + contentRange);
+        }
+        long start = Long.parseLong(matcher.group(1));
+        long end = Long.parseLong(matcher.group(2));
+        String total = matcher.group(3);
+        if (start != position || end - start + 1 != length
+                || (!"*".equals(total) && Long.parseLong(total) != fileSize)) {
+            throw new IllegalArgumentException("Content-Range 与分片位置不一致，期望: bytes "
+                    + position + "-" + (position + length - 1) + "/" + fileSize);
+        }
+    }
+    
+    /**
+     * 文件名直接用作 videos 目录下的文件名：不允许路径分隔符、盘符、控制字符以及 "."、".."
+     */
+    static boolean isSafeFileName(String fileName) {
+        if (fileName.equals(".") || fileName.equals("..")) {
+            return false;
+        }
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            if (c == '/' || c == '\\' || c == ':' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isPreallocated(UploadSession session) {
+        return ASSEMBLY_PREALLOCATE.equals(session.getAssemblyMode());
+    }
+    
+    /**
+     * 将 MP4 重写为 fast-start 布局并写入 target，失败时保留原文件
+     * @return 已写入 target 时返回 true；非 MP4、已是 fast-start 布局或重写失败时返回 false
+     */
+    private boolean applyFastStart(String fileName, Path source, Path target) {
+        if (!fileName.toLowerCase().endsWith(".mp4")) {
+            return false;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            if (FastStartRewriter.rewrite(source, target)) {
+                System.out.println("MP4 fast-start 重写完成: " + fileName
+                        + ", 耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+                return true;
+            }
+        } catch (Exception e) {
+            System.err.println("MP4 fast-start 重写失败，保留原文件: " + e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException ex) {
+            System.err.println("清理 fast-start 临时文件失败: " + ex.getMessage());
+        }
+        return false;
     }
 }
-
@@ -0,0 +1,191 @@
+package com.movie.service;
+
+import com.movie.upload.UploadSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 清理长期无活动的上传会话和孤立的分片临时目录
+ * 在单独的低优先级线程上定时运行；目录删除排队进行，每轮最多删除固定数量的文件，
+ * 避免一次清理大量分片时占满磁盘 I/O 影响正在进行的上传和视频播放
+ */
+@Service
+public class UploadSweeper {
+
+    private static final String ASSEMBLY_FILE_NAME = "data.part";
+
+    @Value("${file.upload.sweep.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.upload.sweep.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    @Value("${file.upload.sweep.interval-seconds:60}")
+    private long intervalSeconds;
+
+    @Value("${file.upload.sweep.max-files-per-tick:200}")
+    private int maxFilesPerTick;
+
+    @Autowired
+    private UploadService uploadService;
+
+    // 待删除的临时目录（仅清理线程修改，统计接口读取长度）
+    private final ConcurrentLinkedDeque<Path> pendingDirs = new ConcurrentLinkedDeque<>();
+    private final Set<Path> queued = new HashSet<>();
+
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder expiredSessions = new LongAdder();
+    private final LongAdder orphanDirs = new LongAdder();
+    private final LongAdder deletedFiles = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "upload-session-sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 一轮清理：上一轮的目录删完后才重新扫描，之后按配额删除文件
+     */
+    void tick() {
+        try {
+            if (pendingDirs.isEmpty()) {
+                sweep();
+            }
+            drain(maxFilesPerTick);
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            failures.increment();
+            System.err.println("清理上传会话失败: " + e.getMessage());
+        }
+    }
+
+    private void sweep() throws IOException {
+        sweeps.increment();
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(sessionTtlHours);
+
+        for (UploadSession session : uploadService.expireSessions(cutoff)) {
+            expiredSessions.increment();
+            enqueue(uploadService.getTempRoot().resolve(session.getUploadId()));
+            System.out.println("清理过期上传会话: uploadId=" + session.getUploadId() + ", fileName=" + session.getFileName()
+                    + ", status=" + session.getStatus());
+        }
+
+        // 没有对应会话的临时目录（会话记录丢失、旧版本遗留等），同样超过 TTL 才删除
+        Path tempRoot = uploadService.getTempRoot();
+        if (!Files.isDirectory(tempRoot)) {
+            return;
+        }
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(tempRoot)) {
+            for (Path dir : dirs) {
+                if (!Files.isDirectory(dir) || queued.contains(dir) || lastModified(dir) >= cutoff) {
+                    continue;
+                }
+                if (uploadService.hasSession(dir.getFileName().toString())) {
+                    continue;
+                }
+                orphanDirs.increment();
+                enqueue(dir);
+            }
+        }
+    }
+
+    private void enqueue(Path dir) {
+        if (Files.isDirectory(dir) && queued.add(dir)) {
+            pendingDirs.add(dir);
+        }
+    }
+
+    /**
+     * 删除最多 budget 个文件，目录清空后删除目录本身
+     */
+    private void drain(int budget) {
+        while (budget > 0 && !pendingDirs.isEmpty()) {
+            Path dir = pendingDirs.peek();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    if (budget-- <= 0) {
+                        return;
+                    }
+                    long size = Files.size(file);
+                    Files.delete(file);
+                    deletedFiles.increment();
+                    reclaimedBytes.add(size);
+                }
+            } catch (IOException e) {
+                failures.increment();
+                System.err.println("删除上传临时文件失败: " + dir + ", 错误: " + e.getMessage());
+            }
+            try {
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                failures.increment();
+                System.err.println("删除上传临时目录失败: " + dir + ", 错误: " + e.getMessage());
+            }
+            pendingDirs.poll();
+            queued.remove(dir);
+        }
+    }
+
+    /**
+     * 目录和其中组装文件修改时间的较大者
+     */
+    private static long lastModified(Path dir) throws IOException {
+        long time = Files.getLastModifiedTime(dir).toMillis();
+        Path assemblyFile = dir.resolve(ASSEMBLY_FILE_NAME);
+        if (Files.exists(assemblyFile)) {
+            time = Math.max(time, Files.getLastModifiedTime(assemblyFile).toMillis());
+        }
+        return time;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sessionTtlHours", sessionTtlHours);
+        stats.put("sweeps", sweeps.sum());
+        stats.put("expiredSessions", expiredSessions.sum());
+        stats.put("orphanDirs", orphanDirs.sum());
+        stats.put("deletedFiles", deletedFiles.sum());
+        stats.put("reclaimedBytes", reclaimedBytes.sum());
+        stats.put("failures", failures.sum());
+        stats.put("pendingDirs", pendingDirs.size());
+        return stats;
+    }
+}
@@ -28,6 +28,9 @@ public class UserService {
     @Autowired
     private FavoriteRepository favoriteRepository;
 
+    @Autowired
+    private MovieDetailCache movieDetailCache;
+
     @Autowired
     private FileService fileService;
 
@@ -57,7 +60,7 @@ public class UserService {
             throw new RuntimeException("用户名或密码错误");
         }
 
-        String token = jwtUtil.generateToken(username);
+        String token = jwtUtil.generateToken(username, user.getRole());
         System.out.println("✓ 登录成功: " + username);
         System.out.println("生成Token: " + token.substring(0, Math.min(20, token.length())) + "...");
         System.out.println("================");
@@ -92,6 +95,8 @@ public class UserService {
                 throw new RuntimeException("用户名已存在");
             }
             user.setUsername(newUsername);
+            // 电影详情中含上传者用户名
+            movieDetailCache.invalidateUploader(user.getId());
         }
         
         if (newRealName != null) {
@@ -156,17 +161,19 @@ public class UserService {
      */
     public User updateAvatar(String username, MultipartFile file) throws IOException {
         User user = getUserByUsername(username);
+        String oldAvatarUrl = user.getAvatarUrl();
         
-        // 删除旧头像（如果存在）
-        if (user.getAvatarUrl() != null && !user.getAvatarUrl().isEmpty()) {
-            fileService.deleteFile(user.getAvatarUrl());
-        }
-        
-        // 上传新头像
-        String avatarUrl = fileService.uploadFile(file, "avatars");
+        // 上传新头像（各规格在后台生成）
+        String avatarUrl = fileService.uploadAvatar(file);
         user.setAvatarUrl(avatarUrl);
+        User saved = userRepository.save(user);
         
-        return userRepository.save(user);
+        // 新头像保存成功后再删除旧头像（如果存在），上传失败时旧头像不受影响
+        if (oldAvatarUrl != null && !oldAvatarUrl.isEmpty()) {
+            fileService.deleteFile(oldAvatarUrl);
+        }
+        
+        return saved;
     }
 }
 
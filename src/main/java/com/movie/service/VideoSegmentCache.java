@@ -0,0 +1,236 @@
+package com.movie.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 视频头尾热点片段缓存
+ * 播放器几乎总是先请求文件开头和末尾的 moov，这里把每个视频的头部和尾部各一段
+ * 以只读内存映射（堆外）的方式缓存，按路径 + 修改时间作为键，总映射字节数受预算限制，LRU 淘汰
+ * 只在不能使用 sendfile 的传输中使用，能走 sendfile 时内核直接从页缓存发送更省
+ *
+ * Java 无法安全地主动解除映射，被淘汰的映射要等 GC 回收后才真正释放，因此 max-bytes 只约束缓存中的片段；
+ * 另外用 max-mapped-bytes 限制尚未被回收的映射总量（含已淘汰的），达到上限后新片段不再映射，
+ * 直接从文件读取，映射占用的地址空间不依赖 GC 的时机
+ */
+@Service
+public class VideoSegmentCache {
+
+    @Value("${file.video.segment-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.video.segment-cache.segment-size:1048576}")
+    private long segmentSize;
+
+    @Value("${file.video.segment-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${file.video.segment-cache.max-mapped-bytes:536870912}")
+    private long maxMappedBytes;
+
+    // accessOrder=true 的 LinkedHashMap 按访问顺序排列，表头即最久未使用的片段
+    private final LinkedHashMap<String, Segment> segments = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long currentBytes;
+
+    // 所有尚未被 GC 回收的映射（含已淘汰的），映射不可达后其引用进入 reclaimed 队列
+    private final ReferenceQueue<MappedByteBuffer> reclaimed = new ReferenceQueue<>();
+    private final Set<Mapping> mappings = new HashSet<>();
+    private long mappedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * 查找覆盖 [start, end] 区间的缓存片段
+     * @return 已定位到该区间的只读缓冲区；区间不在头尾片段内或缓存未启用时返回 null
+     */
+    public ByteBuffer lookup(File file, long lastModified, long fileSize, long start, long end) {
+        if (!enabled || fileSize <= 0) {
+            return null;
+        }
+
+        boolean head;
+        long segmentStart;
+        long segmentLength;
+        if (end < Math.min(segmentSize, fileSize)) {
+            head = true;
+            segmentStart = 0;
+            segmentLength = Math.min(segmentSize, fileSize);
+        } else if (fileSize > segmentSize && start >= fileSize - segmentSize) {
+            head = false;
+            segmentStart = fileSize - segmentSize;
+            segmentLength = segmentSize;
+        } else {
+            // 不在热点区域内，直接走 sendfile
+            return null;
+        }
+        if (segmentLength > maxBytes || segmentLength > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        String key = file.getAbsolutePath() + '|' + lastModified + '|' + (head ? 'H' : 'T');
+        Segment segment;
+        synchronized (segments) {
+            segment = segments.get(key);
+        }
+        if (segment != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            segment = load(key, file, segmentStart, segmentLength);
+            if (segment == null) {
+                return null;
+            }
+        }
+
+        // 每次请求使用独立的视图，避免并发请求互相修改 position/limit
+        ByteBuffer view = segment.buffer.duplicate();
+        view.position((int) (start - segment.start));
+        view.limit((int) (end - segment.start + 1));
+        return view;
+    }
+
+    private Segment load(String key, File file, long segmentStart, long segmentLength) {
+        synchronized (segments) {
+            drainReclaimed();
+            if (mappedBytes + segmentLength > maxMappedBytes) {
+                // 已淘汰的映射还没被回收，不再新建映射
+                skipped.increment();
+                return null;
+            }
+            // 先占用额度，避免并发加载一起越过上限
+            mappedBytes += segmentLength;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // 映射在通道关闭后依然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+        } catch (IOException e) {
+            synchronized (segments) {
+                mappedBytes -= segmentLength;
+            }
+            System.err.println("映射视频片段失败: " + file.getAbsolutePath() + ", 错误: " + e.getMessage());
+            return null;
+        }
+
+        Segment segment = new Segment(segmentStart, buffer);
+        synchronized (segments) {
+            mappings.add(new Mapping(buffer, reclaimed));
+            Segment existing = segments.get(key);
+            if (existing != null) {
+                // 其他请求已经加载了同一片段，本次的映射不入缓存，等待回收
+                return existing;
+            }
+            segments.put(key, segment);
+            currentBytes += segmentLength;
+            evictIfNecessary();
+        }
+        return segment;
+    }
+
+    /**
+     * 超出字节预算时从最久未使用的片段开始淘汰
+     * 被淘汰的映射在没有请求引用后由 GC 释放
+     */
+    private void evictIfNecessary() {
+        Iterator<Map.Entry<String, Segment>> iterator = segments.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Segment eldest = iterator.next().getValue();
+            iterator.remove();
+            currentBytes -= eldest.buffer.capacity();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 扣除已被 GC 回收的映射，调用方需持有 segments 锁
+     */
+    private void drainReclaimed() {
+        Reference<? extends MappedByteBuffer> reference;
+        while ((reference = reclaimed.poll()) != null) {
+            Mapping mapping = (Mapping) reference;
+            if (mappings.remove(mapping)) {
+                mappedBytes -= mapping.length;
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (segments) {
+            segments.clear();
+            currentBytes = 0;
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        synchronized (segments) {
+            stats.put("entries", segments.size());
+            stats.put("bytes", currentBytes);
+            drainReclaimed();
+            stats.put("mappedBytes", mappedBytes);
+        }
+        stats.put("enabled", enabled);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxMappedBytes", maxMappedBytes);
+        stats.put("segmentSize", segmentSize);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        return stats;
+    }
+
+    /**
+     * 跟踪一个映射直到它被 GC 回收
+     * 请求使用的 duplicate() 视图引用着原映射，所以只有所有视图都不可达后才会入队
+     */
+    private static class Mapping extends PhantomReference<MappedByteBuffer> {
+        private final long length;
+
+        Mapping(MappedByteBuffer buffer, ReferenceQueue<MappedByteBuffer> queue) {
+            super(buffer, queue);
+            this.length = buffer.capacity();
+        }
+    }
+
+    private static class Segment {
+        private final long start;
+        private final MappedByteBuffer buffer;
+
+        Segment(long start, MappedByteBuffer buffer) {
+            this.start = start;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.movie.service;
+
+import com.movie.util.ByteRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 视频字节区间传输服务
+ * 优先使用 Tomcat sendfile（内核零拷贝），不支持时头尾热点片段从 VideoSegmentCache 写出，其余回退到 FileChannel.transferTo
+ * 非 sendfile 路径默认使用 Servlet 3.1 非阻塞写出，慢速客户端不会长期占用 Tomcat 工作线程
+ * 启用带宽整形时走非阻塞写出，由 BandwidthLimiter 控制节奏；整形从不在工作线程上等待令牌，
+ * 关闭异步写出（或容器不支持）时不整形，按普通传输写出
+ */
+@Service
+public class VideoStreamService {
+
+    // Tomcat 的 sendfile 请求属性（与 DefaultServlet 使用的约定一致）
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_FILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private VideoSegmentCache videoSegmentCache;
+
+    @Value("${file.video.sendfile-enabled:true}")
+    private boolean sendfileEnabled;
+
+    // 视频按客户端文件名保存，同名重新上传会覆盖原文件，默认每次使用前用 ETag/Last-Modified 协商
+    @Value("${file.video.cache-control:public, no-cache}")
+    private String cacheControl;
+
+    @Value("${file.video.async.enabled:true}")
+    private boolean asyncEnabled;
+
+    @Value("${file.video.async.max-streams:2000}")
+    private int asyncMaxStreams;
+
+    @Value("${file.video.async.timeout-ms:3600000}")
+    private long asyncTimeoutMs;
+
+    @Value("${file.video.async.buffer-size:65536}")
+    private int asyncBufferSize;
+
+    // 同时进行的异步传输数量上限，超出时退回同步写出
+    private Semaphore asyncStreams;
+
+    @PostConstruct
+    public void init() {
+        asyncStreams = new Semaphore(asyncMaxStreams);
+    }
+
+    /**
+     * 根据文件标识（inode）、大小和修改时间生成强 ETag
+     * 文件被覆盖或修改后 ETag 随之变化
+     */
+    public String computeETag(BasicFileAttributes attributes, File file) {
+        Object fileKey = attributes.fileKey();
+        // Windows 等平台没有 inode，退化为使用路径
+        int identity = fileKey != null ? fileKey.hashCode() : file.getAbsolutePath().hashCode();
+        return "\"" + Integer.toHexString(identity)
+                + "-" + Long.toHexString(attributes.size())
+                + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+    }
+
+    public BasicFileAttributes readAttributes(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    /**
+     * 写出 ETag、Last-Modified 和 Cache-Control，并处理 If-None-Match / If-Modified-Since /
+     * If-Match / If-Unmodified-Since 条件请求
+     * @return true 表示已经返回 304 或 412，无需再写响应体
+     */
+    public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response,
+                                    String etag, long lastModified) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    /**
+     * 判断 If-Range 条件是否成立，不成立时应忽略 Range 并返回完整内容
+     */
+    public boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null || ifRange.isEmpty()) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range 只允许强比较，弱 ETag 永远不匹配
+            return ifRange.equals(etag);
+        }
+        try {
+            long ifRangeTime = request.getDateHeader(HttpHeaders.IF_RANGE);
+            // HTTP 日期只精确到秒
+            return ifRangeTime >= 0 && ifRangeTime / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 将文件的 [start, end] 区间（闭区间）写入响应体
+     * 调用前需要已设置好状态码和响应头（包括 Content-Length）
+     */
+    public void transfer(HttpServletRequest request, HttpServletResponse response,
+                         File file, long lastModified, long start, long end,
+                         BandwidthLimiter.Shaper shaper) throws IOException {
+        long count = end - start + 1;
+        if (count <= 0) {
+            return;
+        }
+        if (shaper != null && !isAsyncAvailable(request)) {
+            // 没有非阻塞写出时只能在工作线程上等待令牌，宁可不整形也不占住工作线程
+            shaper = null;
+        }
+
+        // 容器支持 sendfile 时，交给 Tomcat 在响应提交后直接由内核发送
+        // 限速的传输需要逐块控制写出节奏，不能交给 sendfile
+        if (shaper == null && sendfileEnabled && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_FILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_FILE_END_ATTR, end + 1); // Tomcat 的结束位置不包含在内
+            return;
+        }
+
+        // sendfile 不可用时，头尾热点片段从内存映射缓存写出，不再访问文件
+        // 能走 sendfile 时不用缓存：内核直接从页缓存发送，比经由用户态缓冲区复制映射内容更省
+        ByteBuffer cached = videoSegmentCache.lookup(file, lastModified, file.length(), start, end);
+        if (cached != null) {
+            if (tryStartAsync(request, response, null, cached, start, count, shaper)) {
+                return;
+            }
+            if (shaper != null) {
+                rejectShaped(response);
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            while (cached.hasRemaining()) {
+                target.write(cached);
+            }
+            return;
+        }
+
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        boolean async = false;
+        try {
+            async = tryStartAsync(request, response, fileChannel, null, start, count, shaper);
+            if (!async && shaper != null) {
+                rejectShaped(response);
+            } else if (!async) {
+                transferTo(fileChannel, start, count, Channels.newChannel(response.getOutputStream()));
+            }
+        } finally {
+            // 异步模式下由 AsyncRangeWriter 负责关闭
+            if (!async) {
+                fileChannel.close();
+            }
+        }
+    }
+
+    /**
+     * 异步写出并发已满时，限速传输返回 503 让客户端稍后重试，
+     * 而不是在工作线程上阻塞等待令牌
+     */
+    private void rejectShaped(HttpServletResponse response) {
+        response.reset();
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+    }
+
+    private boolean isAsyncAvailable(HttpServletRequest request) {
+        return asyncEnabled && request.isAsyncSupported();
+    }
+
+    /**
+     * 尝试以非阻塞方式写出区间：启动异步上下文并注册 WriteListener，当前工作线程立即返回
+     * @return false 表示未启用、容器不支持或已达到并发上限，调用方应同步写出
+     */
+    private boolean tryStartAsync(HttpServletRequest request, HttpServletResponse response,
+                                  FileChannel channel, ByteBuffer source,
+                                  long position, long count,
+                                  BandwidthLimiter.Shaper shaper) throws IOException {
+        if (!asyncEnabled || !request.isAsyncSupported() || !asyncStreams.tryAcquire()) {
+            return false;
+        }
+        try {
+            AsyncContext asyncContext = request.startAsync(request, response);
+            asyncContext.setTimeout(asyncTimeoutMs);
+            ServletOutputStream out = response.getOutputStream();
+            AsyncRangeWriter writer = new AsyncRangeWriter(asyncContext, out, channel, source,
+                    position, count, asyncBufferSize, asyncStreams, shaper);
+            asyncContext.addListener(writer);
+            out.setWriteListener(writer);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            asyncStreams.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 以 multipart/byteranges 格式写出多个区间
+     * 会设置状态码 206、Content-Type 和精确的 Content-Length
+     */
+    public void transferMultipart(HttpServletRequest request, HttpServletResponse response,
+                                  File file, List<ByteRange> ranges, String contentType) throws IOException {
+        long fileSize = file.length();
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+
+        // 预先生成每一段的头部，用于计算总长度
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Range: " + range.toContentRange(fileSize) + "\r\n\r\n";
+            partHeaders[i] = partHeader.getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                out.write(partHeaders[i]);
+                transferTo(fileChannel, range.getStart(), range.length(), target);
+            }
+        }
+        out.write(closing);
+    }
+
+    /**
+     * 使用 FileChannel.transferTo 将区间写入目标通道，循环直到写完
+     */
+    public void transferTo(FileChannel fileChannel, long position, long count,
+                           WritableByteChannel target) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long written = fileChannel.transferTo(position, remaining, target);
+            if (written <= 0) {
+                // 文件在传输过程中被截断
+                throw new IOException("视频文件读取中断，剩余 " + remaining + " 字节未发送");
+            }
+            position += written;
+            remaining -= written;
+        }
+    }
+
+    /**
+     * 非阻塞区间写出器
+     * 只在输出缓冲区可写时由容器回调 onWritePossible，写满后立即返回，不阻塞任何线程等待客户端
+     */
+    private static class AsyncRangeWriter implements WriteListener, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream out;
+        private final FileChannel channel;  // 为 null 时从缓存片段 source 读取
+        private final ByteBuffer source;
+        private final byte[] buffer;
+        private final ByteBuffer readBuffer;
+        private final Semaphore permits;
+        private final BandwidthLimiter.Shaper shaper;  // 为 null 表示不限速
+        private final Runnable resumeTask = this::resume;
+        private long position;
+        private long remaining;
+        private boolean finished;
+
+        AsyncRangeWriter(AsyncContext asyncContext, ServletOutputStream out, FileChannel channel,
+                         ByteBuffer source, long position, long count, int bufferSize, Semaphore permits,
+                         BandwidthLimiter.Shaper shaper) {
+            this.asyncContext = asyncContext;
+            this.out = out;
+            this.channel = channel;
+            this.source = source;
+            this.buffer = new byte[(int) Math.min(bufferSize, Math.max(count, 1))];
+            this.readBuffer = ByteBuffer.wrap(buffer);
+            this.permits = permits;
+            this.shaper = shaper;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        @Override
+        public synchronized void onWritePossible() throws IOException {
+            while (!finished && out.isReady()) {
+                if (remaining <= 0) {
+                    finish();
+                    asyncContext.complete();
+                    return;
+                }
+                int length = (int) Math.min(buffer.length, remaining);
+                if (shaper != null) {
+                    long granted = shaper.acquire(length, System.nanoTime());
+                    if (granted < 0) {
+                        // 令牌不足：释放当前线程，令牌恢复后由调度线程继续写出
+                        shaper.resumeAfter(resumeTask, -granted);
+                        return;
+                    }
+                    length = (int) granted;
+                }
+                fill(length);
+                out.write(buffer, 0, length);
+                position += length;
+                remaining -= length;
+            }
+        }
+
+        private void resume() {
+            try {
+                onWritePossible();
+            } catch (Throwable t) {
+                onError(t);
+            }
+        }
+
+        /**
+         * 将下一段数据读入 buffer 的 [0, length)
+         */
+        private void fill(int length) throws IOException {
+            if (channel == null) {
+                source.get(buffer, 0, length);
+                return;
+            }
+            readBuffer.clear();
+            readBuffer.limit(length);
+            long readPosition = position;
+            while (readBuffer.hasRemaining()) {
+                int read = channel.read(readBuffer, readPosition);
+                if (read < 0) {
+                    throw new IOException("视频文件读取中断，剩余 " + remaining + " 字节未发送");
+                }
+                readPosition += read;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // 客户端断开等情况
+            finish();
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish();
+            event.getAsyncContext().complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private synchronized void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            permits.release();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("关闭视频文件失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
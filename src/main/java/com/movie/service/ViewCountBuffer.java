@@ -0,0 +1,189 @@
+package com.movie.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 浏览量写回缓冲
+ * 详情页每次访问只在内存中累加（每个 ID 一个 LongAdder，并发累加不争用同一个计数），
+ * 由后台线程定时把增量以批量 UPDATE ... SET view_count = view_count + ? 写入数据库，关闭时再写一次；
+ * 详情读取不再锁行、不再整行更新，也不会因并发读改写丢失浏览量
+ */
+@Service
+public class ViewCountBuffer {
+
+    public static final String MOVIES = "movies";
+    public static final String NEWS = "news";
+
+    @Value("${view-count.flush-interval-seconds:5}")
+    private long flushIntervalSeconds;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 单个 ID 的计数；total 只增不减，flushed 为已写入数据库的部分，不清零计数器从而不会丢失并发累加
+     */
+    private static class Counter {
+        final LongAdder total = new LongAdder();
+        volatile long flushed;
+
+        long pending() {
+            return total.sum() - flushed;
+        }
+    }
+
+    // 表名 -> (ID -> 计数)；条目数不超过被访问过的记录数，记录删除后在写回时移除
+    private final Map<String, ConcurrentHashMap<Long, Counter>> counters = new HashMap<>();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushedViews = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        counters.put(MOVIES, new ConcurrentHashMap<>());
+        counters.put(NEWS, new ConcurrentHashMap<>());
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "view-count-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        // 写入最后一批增量
+        flush();
+    }
+
+    /**
+     * 记录一次浏览
+     * @return 该记录尚未写入数据库的浏览量（含本次），用于与数据库中的值相加后展示
+     */
+    public long increment(String table, Long id) {
+        Counter counter = counters.get(table).computeIfAbsent(id, key -> new Counter());
+        counter.total.increment();
+        return counter.pending();
+    }
+
+    /**
+     * 该记录已由本缓冲写入数据库的浏览量（只增不减）
+     */
+    public long getFlushed(String table, Long id) {
+        Counter counter = counters.get(table).get(id);
+        return counter != null ? counter.flushed : 0;
+    }
+
+    /**
+     * 该记录尚未写入数据库的浏览量
+     */
+    public long getPending(String table, Long id) {
+        Counter counter = counters.get(table).get(id);
+        return counter != null ? counter.pending() : 0;
+    }
+
+    private void tick() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            System.err.println("写入浏览量失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 将所有表的增量写入数据库；写入失败的增量保留到下一轮
+     */
+    public synchronized void flush() {
+        flushes.increment();
+        for (Map.Entry<String, ConcurrentHashMap<Long, Counter>> entry : counters.entrySet()) {
+            flushTable(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void flushTable(String table, ConcurrentHashMap<Long, Counter> tableCounters) {
+        List<Long> ids = new ArrayList<>();
+        List<Long> totals = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<Long, Counter> entry : tableCounters.entrySet()) {
+            Counter counter = entry.getValue();
+            // 先读取快照，写入成功后只把快照部分记为已写入，期间的新增留到下一轮
+            long total = counter.total.sum();
+            long delta = total - counter.flushed;
+            if (delta > 0) {
+                ids.add(entry.getKey());
+                totals.add(total);
+                args.add(new Object[]{delta, entry.getKey()});
+            }
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        int[] updated;
+        try {
+            // 整批在一个事务中提交：中途失败时全部回滚，整批增量留到下一轮，不会部分写入后被重复累加
+            updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE " + table + " SET view_count = COALESCE(view_count, 0) + ? WHERE id = ?", args));
+        } catch (Exception e) {
+            failures.increment();
+            System.err.println("写入浏览量失败: table=" + table + ", 记录数=" + args.size() + ", 错误: " + e.getMessage());
+            return;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            Counter counter = tableCounters.get(ids.get(i));
+            long delta = (Long) args.get(i)[0];
+            counter.flushed = totals.get(i);
+            flushedViews.add(delta);
+            if (updated[i] == 0) {
+                // 记录已删除
+                tableCounters.remove(ids.get(i), counter);
+            }
+        }
+        flushedRows.add(ids.size());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long pending = 0;
+        int tracked = 0;
+        for (ConcurrentHashMap<Long, Counter> tableCounters : counters.values()) {
+            tracked += tableCounters.size();
+            for (Counter counter : tableCounters.values()) {
+                pending += counter.pending();
+            }
+        }
+        stats.put("trackedIds", tracked);
+        stats.put("pendingViews", pending);
+        stats.put("flushIntervalSeconds", flushIntervalSeconds);
+        stats.put("flushes", flushes.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("flushedViews", flushedViews.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+}
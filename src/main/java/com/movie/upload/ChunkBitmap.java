@@ -0,0 +1,106 @@
+package com.movie.upload;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上传会话的已上传分片位图，可被并发的分片请求无锁更新
+ * 每个分片占 1 bit，10GB / 5MB 分片的会话只需 32 个 long；已上传数量单独计数，查询为 O(1)
+ */
+public class ChunkBitmap {
+
+    private final int size;
+    private final AtomicLongArray words;
+    private final LongAdder count = new LongAdder();
+
+    public ChunkBitmap(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("分片数量不能为负数");
+        }
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * 从持久化的分片集合构造位图，超出范围的索引被忽略
+     */
+    public static ChunkBitmap of(int size, BitSet bits) {
+        ChunkBitmap bitmap = new ChunkBitmap(size);
+        for (int i = bits.nextSetBit(0); i >= 0 && i < size; i = bits.nextSetBit(i + 1)) {
+            bitmap.set(i);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 标记分片已上传
+     * @return 首次标记时返回 true，重复上传同一分片返回 false
+     */
+    public boolean set(int index) {
+        checkIndex(index);
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | mask)) {
+                count.increment();
+                return true;
+            }
+        }
+    }
+
+    public boolean get(int index) {
+        checkIndex(index);
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * 已上传分片数量
+     */
+    public int count() {
+        return (int) count.sum();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isComplete() {
+        return count() == size;
+    }
+
+    /**
+     * 已上传分片索引（升序），按字扫描，不逐个装箱检查
+     */
+    public List<Integer> indices() {
+        List<Integer> result = new ArrayList<>(count());
+        for (int word = 0; word < words.length(); word++) {
+            long bits = words.get(word);
+            while (bits != 0) {
+                result.add((word << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    public BitSet toBitSet() {
+        long[] snapshot = new long[words.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = words.get(i);
+        }
+        return BitSet.valueOf(snapshot);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("分片索引错误");
+        }
+    }
+}
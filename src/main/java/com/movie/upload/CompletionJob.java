@@ -0,0 +1,119 @@
+package com.movie.upload;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 上传完成任务（摘要校验、合并、fast-start、去重）的状态，每个上传会话同时最多一个
+ * 任务 ID 即 uploadId，客户端通过进度接口轮询或订阅完成事件获取结果
+ */
+public class CompletionJob {
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_VERIFYING = "VERIFYING";
+    public static final String STATE_MERGING = "MERGING";
+    public static final String STATE_FINALIZING = "FINALIZING";
+    public static final String STATE_COMPLETED = "COMPLETED";
+    public static final String STATE_FAILED = "FAILED";
+
+    private final String uploadId;
+    private final long totalBytes;
+    private final long submitTime = System.currentTimeMillis();
+    private volatile String state = STATE_QUEUED;
+    private volatile long processedBytes;
+    private volatile String fileUrl;
+    private volatile String error;
+    private volatile long finishTime;
+    private final List<Consumer<CompletionJob>> listeners = new ArrayList<>();
+
+    public CompletionJob(String uploadId, long totalBytes) {
+        this.uploadId = uploadId;
+        this.totalBytes = totalBytes;
+    }
+
+    public String getUploadId() { return uploadId; }
+
+    public String getState() { return state; }
+
+    public String getFileUrl() { return fileUrl; }
+
+    public String getError() { return error; }
+
+    public boolean isFinished() {
+        return STATE_COMPLETED.equals(state) || STATE_FAILED.equals(state);
+    }
+
+    /**
+     * 进入新阶段，已处理字节数从 0 重新计算
+     */
+    public void stage(String state) {
+        this.processedBytes = 0;
+        this.state = state;
+    }
+
+    public void setProcessedBytes(long processedBytes) {
+        this.processedBytes = processedBytes;
+    }
+
+    public void complete(String fileUrl) {
+        this.fileUrl = fileUrl;
+        finish(STATE_COMPLETED);
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        finish(STATE_FAILED);
+    }
+
+    /**
+     * 任务结束时回调；已结束时立即回调
+     */
+    public void onFinish(Consumer<CompletionJob> listener) {
+        synchronized (listeners) {
+            if (!isFinished()) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.accept(this);
+    }
+
+    private void finish(String finalState) {
+        List<Consumer<CompletionJob>> toNotify;
+        synchronized (listeners) {
+            finishTime = System.currentTimeMillis();
+            state = finalState;
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Consumer<CompletionJob> listener : toNotify) {
+            try {
+                listener.accept(this);
+            } catch (Exception e) {
+                System.err.println("完成任务回调失败: uploadId=" + uploadId + ", 错误: " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", uploadId);
+        map.put("state", state);
+        map.put("processedBytes", processedBytes);
+        map.put("totalBytes", totalBytes);
+        map.put("submitTime", submitTime);
+        if (finishTime > 0) {
+            map.put("finishTime", finishTime);
+        }
+        if (fileUrl != null) {
+            map.put("fileUrl", fileUrl);
+        }
+        if (error != null) {
+            map.put("error", error);
+        }
+        return map;
+    }
+}
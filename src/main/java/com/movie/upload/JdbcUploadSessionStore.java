@@ -0,0 +1,127 @@
+package com.movie.upload;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于数据库的上传会话存储，多个节点共享同一数据库时可以续传其他节点创建的会话
+ * 分片数据仍写在 file.upload.dir 下，多节点部署时该目录需为共享存储
+ */
+@Component
+@ConditionalOnProperty(name = "file.upload.session-store", havingValue = "jdbc")
+public class JdbcUploadSessionStore implements UploadSessionStore {
+
+    private static final RowMapper<UploadSession> SESSION_ROW_MAPPER = (rs, rowNum) -> {
+        UploadSession session = new UploadSession();
+        session.setUploadId(rs.getString("upload_id"));
+        session.setFileName(rs.getString("file_name"));
+        session.setFileSize(rs.getLong("file_size"));
+        session.setFileType(rs.getString("file_type"));
+        session.setChunkSize(rs.getLong("chunk_size"));
+        session.setTotalChunks(rs.getInt("total_chunks"));
+        session.setUsername(rs.getString("username"));
+        session.setStatus(rs.getString("status"));
+        Timestamp createTime = rs.getTimestamp("create_time");
+        session.setCreateTime(createTime != null ? new Date(createTime.getTime()) : null);
+        session.setFileUrl(rs.getString("file_url"));
+        session.setAssemblyMode(rs.getString("assembly_mode"));
+        session.setSha256(rs.getString("sha256"));
+        session.setDeclaredSha256(rs.getString("declared_sha256"));
+        return session;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS upload_session ("
+                + "upload_id VARCHAR(64) NOT NULL PRIMARY KEY, "
+                + "file_name VARCHAR(512) NOT NULL, "
+                + "file_size BIGINT NOT NULL, "
+                + "file_type VARCHAR(255), "
+                + "chunk_size BIGINT NOT NULL, "
+                + "total_chunks INT NOT NULL, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "status VARCHAR(32) NOT NULL, "
+                + "create_time DATETIME, "
+                + "file_url VARCHAR(1024), "
+                + "assembly_mode VARCHAR(32), "
+                + "sha256 CHAR(64), "
+                + "declared_sha256 CHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS upload_chunk ("
+                + "upload_id VARCHAR(64) NOT NULL, "
+                + "chunk_index INT NOT NULL, "
+                + "PRIMARY KEY (upload_id, chunk_index))");
+    }
+
+    @Override
+    public void saveSession(UploadSession session) {
+        jdbcTemplate.update("INSERT INTO upload_session (upload_id, file_name, file_size, file_type, chunk_size, "
+                        + "total_chunks, username, status, create_time, file_url, assembly_mode, sha256, "
+                        + "declared_sha256) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE status = VALUES(status), file_url = VALUES(file_url), "
+                        + "sha256 = VALUES(sha256)",
+                session.getUploadId(), session.getFileName(), session.getFileSize(), session.getFileType(),
+                session.getChunkSize(), session.getTotalChunks(), session.getUsername(), session.getStatus(),
+                session.getCreateTime() != null ? new Timestamp(session.getCreateTime().getTime()) : null,
+                session.getFileUrl(), session.getAssemblyMode(), session.getSha256(),
+                session.getDeclaredSha256());
+    }
+
+    @Override
+    public void chunkCompleted(String uploadId, int chunkIndex) {
+        jdbcTemplate.update("INSERT IGNORE INTO upload_chunk (upload_id, chunk_index) VALUES (?, ?)",
+                uploadId, chunkIndex);
+    }
+
+    @Override
+    public void removeSession(String uploadId) {
+        jdbcTemplate.update("DELETE FROM upload_chunk WHERE upload_id = ?", uploadId);
+        jdbcTemplate.update("DELETE FROM upload_session WHERE upload_id = ?", uploadId);
+    }
+
+    @Override
+    public StoredSession findSession(String uploadId) {
+        List<UploadSession> sessions = jdbcTemplate.query(
+                "SELECT * FROM upload_session WHERE upload_id = ?", SESSION_ROW_MAPPER, uploadId);
+        if (sessions.isEmpty()) {
+            return null;
+        }
+        BitSet chunks = new BitSet();
+        jdbcTemplate.query("SELECT chunk_index FROM upload_chunk WHERE upload_id = ?",
+                rs -> {
+                    chunks.set(rs.getInt("chunk_index"));
+                }, uploadId);
+        return new StoredSession(sessions.get(0), chunks);
+    }
+
+    @Override
+    public List<StoredSession> loadSessions() {
+        Map<String, BitSet> chunksById = new HashMap<>();
+        jdbcTemplate.query("SELECT upload_id, chunk_index FROM upload_chunk",
+                rs -> {
+                    chunksById.computeIfAbsent(rs.getString("upload_id"), id -> new BitSet())
+                            .set(rs.getInt("chunk_index"));
+                });
+        List<StoredSession> result = new ArrayList<>();
+        for (UploadSession session : jdbcTemplate.query("SELECT * FROM upload_session", SESSION_ROW_MAPPER)) {
+            BitSet chunks = chunksById.get(session.getUploadId());
+            result.add(new StoredSession(session, chunks != null ? chunks : new BitSet()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,392 @@
+package com.movie.upload;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 基于本地追加日志的上传会话存储（默认实现）
+ * 每条记录为 [长度][CRC32][内容]，崩溃时截断末尾不完整的记录
+ * 多个线程的记录合并为一批写入后只 fsync 一次（group commit），记录持久化后调用方才返回
+ * 启动时及日志超过 compact-bytes 时用当前存活会话重写日志
+ */
+@Component
+@ConditionalOnProperty(name = "file.upload.session-store", havingValue = "journal", matchIfMissing = true)
+public class JournalUploadSessionStore implements UploadSessionStore {
+
+    private static final String JOURNAL_FILE_NAME = "upload-sessions.journal";
+
+    private static final byte RECORD_SESSION = 1;
+    private static final byte RECORD_CHUNK = 2;
+    private static final byte RECORD_REMOVE = 3;
+
+    // 单条记录长度上限，超过视为日志损坏
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${file.upload.journal.compact-bytes:67108864}")
+    private long compactBytes;
+
+    // 当前存活的会话，用于查询和压缩日志；所有修改都在 lock 内进行
+    private final Map<String, StoredSession> sessions = new LinkedHashMap<>();
+
+    private final Object lock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private volatile boolean running;
+
+    private Path journalFile;
+    private FileChannel channel;
+    private Thread flusher;
+
+    @PostConstruct
+    public void init() throws IOException {
+        journalFile = Paths.get(uploadDir, "journal", JOURNAL_FILE_NAME);
+        Files.createDirectories(journalFile.getParent());
+        if (Files.exists(journalFile)) {
+            replay();
+        }
+        synchronized (lock) {
+            compact();
+        }
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "upload-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        System.out.println("上传会话日志已加载: " + journalFile.toAbsolutePath() + ", 会话数: " + sessions.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 刷写线程退出前会写完剩余记录
+        synchronized (lock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("关闭上传会话日志失败: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void saveSession(UploadSession session) {
+        byte[] record = encode(RECORD_SESSION, session.getUploadId(), session, -1);
+        append(record, () -> {
+            StoredSession existing = sessions.get(session.getUploadId());
+            sessions.put(session.getUploadId(),
+                    new StoredSession(session, existing != null ? existing.getChunks() : new BitSet()));
+        });
+    }
+
+    @Override
+    public void chunkCompleted(String uploadId, int chunkIndex) {
+        byte[] record = encode(RECORD_CHUNK, uploadId, null, chunkIndex);
+        append(record, () -> {
+            StoredSession stored = sessions.get(uploadId);
+            if (stored != null) {
+                stored.getChunks().set(chunkIndex);
+            }
+        });
+    }
+
+    @Override
+    public void removeSession(String uploadId) {
+        byte[] record = encode(RECORD_REMOVE, uploadId, null, -1);
+        append(record, () -> sessions.remove(uploadId));
+    }
+
+    @Override
+    public StoredSession findSession(String uploadId) {
+        synchronized (lock) {
+            StoredSession stored = sessions.get(uploadId);
+            return stored != null ? new StoredSession(stored.getSession(), (BitSet) stored.getChunks().clone()) : null;
+        }
+    }
+
+    @Override
+    public List<StoredSession> loadSessions() {
+        synchronized (lock) {
+            List<StoredSession> result = new ArrayList<>();
+            for (StoredSession stored : sessions.values()) {
+                result.add(new StoredSession(stored.getSession(), (BitSet) stored.getChunks().clone()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 追加一条记录并等待其所在批次 fsync 完成
+     */
+    private void append(byte[] record, Runnable apply) {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IllegalStateException("上传会话日志不可用: " + failure.getMessage());
+            }
+            writeFrame(pending, record);
+            apply.run();
+            long seq = ++appendedSeq;
+            lock.notifyAll();
+            while (durableSeq < seq && failure == null && running) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待上传会话日志写入被中断");
+                }
+            }
+            if (failure != null) {
+                throw new IllegalStateException("写入上传会话日志失败: " + failure.getMessage());
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long seq;
+            synchronized (lock) {
+                while (running && pending.size() == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                seq = appendedSeq;
+            }
+            try {
+                // fsync 期间到达的记录进入下一批，一次 fsync 覆盖多次调用
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                synchronized (lock) {
+                    durableSeq = Math.max(durableSeq, seq);
+                    if (channel.size() > compactBytes) {
+                        compact();
+                    }
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                System.err.println("写入上传会话日志失败: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 用当前存活会话重写日志，原子替换旧文件，调用方需持有 lock
+     */
+    private void compact() throws IOException {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        for (StoredSession stored : sessions.values()) {
+            String uploadId = stored.getSession().getUploadId();
+            writeFrame(snapshot, encode(RECORD_SESSION, uploadId, stored.getSession(), -1));
+            BitSet chunks = stored.getChunks();
+            for (int i = chunks.nextSetBit(0); i >= 0; i = chunks.nextSetBit(i + 1)) {
+                writeFrame(snapshot, encode(RECORD_CHUNK, uploadId, null, i));
+            }
+        }
+
+        Path tempFile = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // 快照已包含所有待写记录
+        pending.reset();
+        durableSeq = appendedSeq;
+    }
+
+    /**
+     * 重放日志，遇到不完整或校验失败的记录即停止（崩溃时最后一批可能只写了一半）
+     */
+    private void replay() throws IOException {
+        int records = 0;
+        try (InputStream fileInput = Files.newInputStream(journalFile);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(fileInput, 64 * 1024))) {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    System.err.println("上传会话日志记录长度非法，忽略之后的内容");
+                    break;
+                }
+                byte[] record = new byte[length];
+                try {
+                    long checksum = input.readInt() & 0xFFFFFFFFL;
+                    input.readFully(record);
+                    if (checksum != crc(record)) {
+                        System.err.println("上传会话日志记录校验失败，忽略之后的内容");
+                        break;
+                    }
+                } catch (EOFException e) {
+                    System.err.println("上传会话日志末尾记录不完整，已忽略");
+                    break;
+                }
+                apply(record);
+                records++;
+            }
+        }
+        System.out.println("上传会话日志重放完成，记录数: " + records);
+    }
+
+    private void apply(byte[] record) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = input.readByte();
+        String uploadId = input.readUTF();
+        switch (type) {
+            case RECORD_SESSION:
+                UploadSession session = readSession(input, uploadId);
+                StoredSession existing = sessions.get(uploadId);
+                sessions.put(uploadId, new StoredSession(session, existing != null ? existing.getChunks() : new BitSet()));
+                break;
+            case RECORD_CHUNK:
+                StoredSession stored = sessions.get(uploadId);
+                if (stored != null) {
+                    stored.getChunks().set(input.readInt());
+                }
+                break;
+            case RECORD_REMOVE:
+                sessions.remove(uploadId);
+                break;
+            default:
+                throw new IOException("未知的上传会话日志记录类型: " + type);
+        }
+    }
+
+    private static byte[] encode(byte type, String uploadId, UploadSession session, int chunkIndex) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(type == RECORD_SESSION ? 256 : 48);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type);
+            output.writeUTF(uploadId);
+            if (type == RECORD_SESSION) {
+                writeString(output, session.getFileName());
+                output.writeLong(session.getFileSize() != null ? session.getFileSize() : -1L);
+                writeString(output, session.getFileType());
+                output.writeLong(session.getChunkSize() != null ? session.getChunkSize() : -1L);
+                output.writeInt(session.getTotalChunks());
+                writeString(output, session.getUsername());
+                writeString(output, session.getStatus());
+                output.writeLong(session.getCreateTime() != null ? session.getCreateTime().getTime() : -1L);
+                writeString(output, session.getFileUrl());
+                writeString(output, session.getAssemblyMode());
+                writeString(output, session.getSha256());
+                writeString(output, session.getDeclaredSha256());
+            } else if (type == RECORD_CHUNK) {
+                output.writeInt(chunkIndex);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static UploadSession readSession(DataInputStream input, String uploadId) throws IOException {
+        UploadSession session = new UploadSession();
+        session.setUploadId(uploadId);
+        session.setFileName(readString(input));
+        long fileSize = input.readLong();
+        session.setFileSize(fileSize >= 0 ? fileSize : null);
+        session.setFileType(readString(input));
+        long chunkSize = input.readLong();
+        session.setChunkSize(chunkSize >= 0 ? chunkSize : null);
+        session.setTotalChunks(input.readInt());
+        session.setUsername(readString(input));
+        session.setStatus(readString(input));
+        long createTime = input.readLong();
+        session.setCreateTime(createTime >= 0 ? new Date(createTime) : null);
+        session.setFileUrl(readString(input));
+        session.setAssemblyMode(readString(input));
+        // 早期记录没有摘要字段
+        session.setSha256(input.available() > 0 ? readString(input) : null);
+        session.setDeclaredSha256(input.available() > 0 ? readString(input) : null);
+        return session;
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, byte[] record) {
+        long checksum = crc(record);
+        byte[] header = ByteBuffer.allocate(8).putInt(record.length).putInt((int) checksum).array();
+        out.write(header, 0, header.length);
+        out.write(record, 0, record.length);
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.movie.upload;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 上传文件的滚动 SHA-256：每当从 nextChunk 起的分片连续到齐，就按顺序计入摘要
+ * 分片刚写入时数据仍在页缓存中，计入摘要不产生额外的磁盘读；全部分片计入后完成上传无需再读整个文件
+ */
+public class RollingDigest {
+
+    /**
+     * 将指定分片的数据送入摘要
+     */
+    public interface ChunkSource {
+        void read(int chunkIndex, MessageDigest digest) throws IOException;
+    }
+
+    private final int totalChunks;
+    private final MessageDigest digest;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int nextChunk;
+    private volatile String hex;
+
+    public RollingDigest(int totalChunks) {
+        this.totalChunks = totalChunks;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        if (totalChunks == 0) {
+            hex = toHex(digest.digest());
+        }
+    }
+
+    /**
+     * 计入从 nextChunk 起连续已上传的分片
+     * 其他线程正在推进时立即返回，由持锁线程在释放前继续处理新到的分片
+     */
+    public void advance(ChunkBitmap chunks, ChunkSource source) throws IOException {
+        while (hasPending(chunks) && lock.tryLock()) {
+            try {
+                while (hasPending(chunks)) {
+                    source.read(nextChunk, digest);
+                    nextChunk++;
+                }
+                if (nextChunk == totalChunks && hex == null) {
+                    hex = toHex(digest.digest());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 计入剩余分片并返回最终摘要，等待其他正在推进的线程
+     */
+    public String finish(ChunkBitmap chunks, ChunkSource source) throws IOException {
+        lock.lock();
+        try {
+            while (hasPending(chunks)) {
+                source.read(nextChunk, digest);
+                nextChunk++;
+            }
+            if (nextChunk == totalChunks && hex == null) {
+                hex = toHex(digest.digest());
+            }
+            return hex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 分片被重新写入时调用：该分片已计入摘要则丢弃当前状态，之后从第一个分片重新计算
+     */
+    public void invalidate(int chunkIndex) {
+        lock.lock();
+        try {
+            if (chunkIndex < nextChunk) {
+                digest.reset();
+                nextChunk = 0;
+                hex = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已计入摘要的连续分片数
+     */
+    public int getDigestedChunks() {
+        return nextChunk;
+    }
+
+    /**
+     * 十六进制摘要，尚未全部计入时为 null
+     */
+    public String getHex() {
+        return hex;
+    }
+
+    private boolean hasPending(ChunkBitmap chunks) {
+        int next = nextChunk;
+        return next < totalChunks && chunks.get(next);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
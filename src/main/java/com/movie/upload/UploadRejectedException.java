@@ -0,0 +1,22 @@
+package com.movie.upload;
+
+/**
+ * 上传准入检查未通过
+ * status 为建议返回的 HTTP 状态码：429 表示并发会话或字节数超出限制，507 表示磁盘空间不足
+ */
+public class UploadRejectedException extends RuntimeException {
+
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int INSUFFICIENT_STORAGE = 507;
+
+    private final int status;
+
+    public UploadRejectedException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,67 @@
+package com.movie.upload;
+
+import java.util.Date;
+
+/**
+ * 上传会话信息
+ */
+public class UploadSession {
+    private String uploadId;
+    private String fileName;
+    private Long fileSize;
+    private String fileType;
+    private Long chunkSize;
+    private int totalChunks;
+    private String username;
+    private String status;
+    private Date createTime;
+    private String fileUrl;
+    private String assemblyMode;
+    private String sha256;
+    private String declaredSha256;
+    // 最近一次活动（初始化、分片上传、完成）时间，仅在内存中维护，用于清理长期无活动的会话
+    private volatile long lastActiveTime;
+    
+    // Getters and Setters
+    public String getUploadId() { return uploadId; }
+    public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+    
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+    
+    public Long getFileSize() { return fileSize; }
+    public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+    
+    public String getFileType() { return fileType; }
+    public void setFileType(String fileType) { this.fileType = fileType; }
+    
+    public Long getChunkSize() { return chunkSize; }
+    public void setChunkSize(Long chunkSize) { this.chunkSize = chunkSize; }
+    
+    public int getTotalChunks() { return totalChunks; }
+    public void setTotalChunks(int totalChunks) { this.totalChunks = totalChunks; }
+    
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public Date getCreateTime() { return createTime; }
+    public void setCreateTime(Date createTime) { this.createTime = createTime; }
+    
+    public String getFileUrl() { return fileUrl; }
+    public void setFileUrl(String fileUrl) { this.fileUrl = fileUrl; }
+    
+    public String getAssemblyMode() { return assemblyMode; }
+    public void setAssemblyMode(String assemblyMode) { this.assemblyMode = assemblyMode; }
+    
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+    
+    public String getDeclaredSha256() { return declaredSha256; }
+    public void setDeclaredSha256(String declaredSha256) { this.declaredSha256 = declaredSha256; }
+    
+    public long getLastActiveTime() { return lastActiveTime; }
+    public void setLastActiveTime(long lastActiveTime) { this.lastActiveTime = lastActiveTime; }
+}
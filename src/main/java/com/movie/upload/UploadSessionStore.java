@@ -0,0 +1,53 @@
+package com.movie.upload;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 上传会话的持久化存储，服务重启后据此恢复未完成的上传
+ * 通过 file.upload.session-store 选择实现：journal（本地追加日志，默认）或 jdbc（数据库，多节点共享）
+ */
+public interface UploadSessionStore {
+
+    /**
+     * 新建或更新会话元数据（状态、文件URL等）
+     */
+    void saveSession(UploadSession session);
+
+    /**
+     * 记录分片已写入，方法返回时记录已持久化
+     */
+    void chunkCompleted(String uploadId, int chunkIndex);
+
+    /**
+     * 删除会话及其分片记录
+     */
+    void removeSession(String uploadId);
+
+    /**
+     * 读取单个会话，不存在时返回 null
+     */
+    StoredSession findSession(String uploadId);
+
+    /**
+     * 读取全部会话，用于启动时恢复
+     */
+    List<StoredSession> loadSessions();
+
+    /**
+     * 持久化的会话及其已完成分片
+     */
+    class StoredSession {
+        private final UploadSession session;
+        private final BitSet chunks;
+
+        public StoredSession(UploadSession session, BitSet chunks) {
+            this.session = session;
+            this.chunks = chunks;
+        }
+
+        public UploadSession getSession() { return session; }
+
+        public BitSet getChunks() { return chunks; }
+    }
+}
@@ -0,0 +1,34 @@
+package com.movie.util;
+
+/**
+ * 已解析并截断到文件长度内的字节区间（闭区间）
+ */
+public final class ByteRange {
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() { return start; }
+
+    public long getEnd() { return end; }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Content-Range 响应头的值，例如 "bytes 0-499/1234"
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+}
@@ -0,0 +1,44 @@
+package com.movie.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 列表总数缓存
+ * 游标分页不再每页执行 COUNT；需要总数时按查询条件缓存一段时间，总数只用于展示，允许短时间不精确
+ */
+public final class CountCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    // 查询条件 -> {总数, 过期时间}
+    private final LinkedHashMap<String, long[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public CountCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    public long get(String key, LongSupplier loader) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            long[] entry = entries.get(key);
+            if (entry != null && entry[1] > now) {
+                return entry[0];
+            }
+        }
+        long count = loader.getAsLong();
+        synchronized (this) {
+            entries.put(key, new long[]{count, now + ttlMillis});
+            Iterator<Map.Entry<String, long[]>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package com.movie.util;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C（Castagnoli）校验和，Java 8 没有 java.util.zip.CRC32C，这里用 slicing-by-8 查表实现
+ * 与 iSCSI / GCS 等使用的 CRC32C 一致，"123456789" 的校验值为 0xE3069283
+ */
+public final class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                int previous = TABLES[t - 1][i];
+                TABLES[t][i] = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int value = crc;
+        int end = off + len;
+        // 每次处理 8 字节
+        while (end - off >= 8) {
+            int low = value ^ ((b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24);
+            value = TABLES[7][low & 0xFF] ^ TABLES[6][(low >>> 8) & 0xFF]
+                    ^ TABLES[5][(low >>> 16) & 0xFF] ^ TABLES[4][low >>> 24]
+                    ^ TABLES[3][b[off + 4] & 0xFF] ^ TABLES[2][b[off + 5] & 0xFF]
+                    ^ TABLES[1][b[off + 6] & 0xFF] ^ TABLES[0][b[off + 7] & 0xFF];
+            off += 8;
+        }
+        while (off < end) {
+            value = (value >>> 8) ^ TABLES[0][(value ^ b[off++]) & 0xFF];
+        }
+        crc = value;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    /**
+     * 解析十六进制表示的 CRC32C（如 "e3069283"）
+     */
+    public static long parseHex(String value) {
+        String hex = value.trim();
+        if (hex.startsWith("0x") || hex.startsWith("0X")) {
+            hex = hex.substring(2);
+        }
+        if (hex.isEmpty() || hex.length() > 8) {
+            throw new IllegalArgumentException("CRC32C 格式错误: " + value);
+        }
+        try {
+            return Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("CRC32C 格式错误: " + value);
+        }
+    }
+
+    public static String toHex(long value) {
+        return String.format("%08x", value);
+    }
+}
@@ -0,0 +1,210 @@
+package com.movie.util;
+
+import java.util.Arrays;
+
+/**
+ * 压缩的 ID 位图（Roaring 方式分块）
+ * ID 按高位分块，每块覆盖 65536 个连续 ID：块内元素不超过 4096 个时用有序 short 数组（每个 ID 2 字节），
+ * 超过后转为 8KB 的定长位图；稀疏集合和稠密集合都能以接近最小的空间保存，查询为一次二分查找加一次块内查找
+ * 非线程安全，由调用方加锁
+ */
+public final class IdBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final long MAX_ID = (1L << 47) - 1;
+
+    private int[] keys = new int[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private long cardinality;
+
+    /**
+     * 单个分块：bits 不为 null 时为位图，否则为有序数组 values[0..count)
+     */
+    private static final class Container {
+        short[] values = new short[4];
+        long[] bits;
+        int count;
+
+        boolean contains(int low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return search(low) >= 0;
+        }
+
+        boolean add(int low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[low >>> 6] |= mask;
+                count++;
+                return true;
+            }
+            int index = search(low);
+            if (index >= 0) {
+                return false;
+            }
+            if (count == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = (short) low;
+            count++;
+            return true;
+        }
+
+        boolean remove(int low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[low >>> 6] &= ~mask;
+                count--;
+                if (count <= ARRAY_MAX / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = search(low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            count--;
+            return true;
+        }
+
+        long sizeInBytes() {
+            return bits != null ? bits.length * 8L : values.length * 2L;
+        }
+
+        /**
+         * 数组中按无符号值二分查找
+         */
+        private int search(int low) {
+            int from = 0;
+            int to = count - 1;
+            while (from <= to) {
+                int mid = (from + to) >>> 1;
+                int value = values[mid] & 0xFFFF;
+                if (value < low) {
+                    from = mid + 1;
+                } else if (value > low) {
+                    to = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(from + 1);
+        }
+
+        private void toBitmap() {
+            bits = new long[1024];
+            for (int i = 0; i < count; i++) {
+                int low = values[i] & 0xFFFF;
+                bits[low >>> 6] |= 1L << low;
+            }
+            values = null;
+        }
+
+        private void toArray() {
+            short[] array = new short[Math.max(4, count)];
+            int index = 0;
+            for (int word = 0; word < bits.length; word++) {
+                long value = bits[word];
+                while (value != 0) {
+                    array[index++] = (short) ((word << 6) + Long.numberOfTrailingZeros(value));
+                    value &= value - 1;
+                }
+            }
+            values = array;
+            bits = null;
+        }
+    }
+
+    public boolean contains(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return false;
+        }
+        int index = indexOf((int) (id >>> 16));
+        return index >= 0 && containers[index].contains((int) (id & 0xFFFF));
+    }
+
+    /**
+     * @return ID 原本不存在时返回 true
+     */
+    public boolean add(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("ID超出范围: " + id);
+        }
+        int key = (int) (id >>> 16);
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == keys.length) {
+                int capacity = Math.max(4, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                containers = Arrays.copyOf(containers, capacity);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(containers, index, containers, index + 1, size - index);
+            keys[index] = key;
+            containers[index] = new Container();
+            size++;
+        }
+        if (containers[index].add((int) (id & 0xFFFF))) {
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return ID 原本存在时返回 true
+     */
+    public boolean remove(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return false;
+        }
+        int index = indexOf((int) (id >>> 16));
+        if (index < 0 || !containers[index].remove((int) (id & 0xFFFF))) {
+            return false;
+        }
+        cardinality--;
+        if (containers[index].count == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            size--;
+            containers[size] = null;
+        }
+        return true;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    public long sizeInBytes() {
+        long bytes = 32 + keys.length * 4L + containers.length * 4L;
+        for (int i = 0; i < size; i++) {
+            bytes += 32 + containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private int indexOf(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+}
@@ -16,6 +16,14 @@ public class JwtUtil {
     private Long expiration;
 
     public String generateToken(String username) {
+        return generateToken(username, null);
+    }
+
+    /**
+     * 生成 Token，角色写入 role 声明，视频等高频请求据此分档而无需查库
+     * 角色变更要等重新登录后才会体现在新 Token 中
+     */
+    public String generateToken(String username, String role) {
         try {
             if (username == null || username.trim().isEmpty()) {
                 throw new IllegalArgumentException("用户名不能为空");
@@ -29,6 +37,7 @@ public class JwtUtil {
 
             return Jwts.builder()
                     .setSubject(username)
+                    .claim("role", role)
                     .setIssuedAt(now)
                     .setExpiration(expiryDate)
                     .signWith(SignatureAlgorithm.HS512, secret)
@@ -48,6 +57,17 @@ public class JwtUtil {
         return claims.getSubject();
     }
 
+    /**
+     * 校验 Token 并读取 role 声明，Token 无效时抛出异常，旧 Token 没有该声明时返回 null
+     */
+    public String getRoleFromToken(String token) {
+        Claims claims = Jwts.parser()
+                .setSigningKey(secret)
+                .parseClaimsJws(token)
+                .getBody();
+        return claims.get("role", String.class);
+    }
+
     public boolean validateToken(String token) {
         try {
             Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
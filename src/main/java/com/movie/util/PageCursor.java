@@ -0,0 +1,61 @@
+package com.movie.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的续页令牌
+ * 令牌内容为上一页最后一行的排序键和 ID，连同排序方式和查询条件的摘要编码为 URL 安全的 Base64；
+ * 对客户端不透明，换了排序方式或查询条件后继续使用旧令牌会被拒绝
+ */
+public final class PageCursor {
+
+    private PageCursor() {
+    }
+
+    /**
+     * @param scope 排序方式与查询条件，解码时必须一致
+     * @param values 排序键，最后一个为 ID
+     */
+    public static String encode(String scope, long... values) {
+        StringBuilder builder = new StringBuilder(scopeHash(scope));
+        for (long value : values) {
+            builder.append(':').append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码令牌
+     * @param count 排序键个数
+     * @throws IllegalArgumentException 令牌格式错误或与当前排序方式、查询条件不一致
+     */
+    public static long[] decode(String token, String scope, int count) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        if (parts.length != count + 1) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        if (!parts[0].equals(scopeHash(scope))) {
+            throw new IllegalArgumentException("分页游标与当前查询条件不一致，请从第一页重新查询");
+        }
+        long[] values = new long[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                values[i] = Long.parseLong(parts[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        return values;
+    }
+
+    private static String scopeHash(String scope) {
+        return Integer.toHexString(scope.hashCode());
+    }
+}
@@ -0,0 +1,136 @@
+package com.movie.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * HTTP Range 请求头解析（RFC 7233）
+ * 支持 "a-b"、"a-"、"-n"（后缀区间）以及逗号分隔的多个区间
+ */
+public final class RangeParser {
+
+    // 单个请求允许的最大区间数，超过时忽略 Range 头，防止构造大量小区间消耗资源
+    private static final int MAX_RANGES = 32;
+
+    // 相邻区间间隔小于该值时合并，避免为很小的空洞多写一段 multipart 头
+    private static final long COALESCE_GAP = 80;
+
+    private RangeParser() {
+    }
+
+    /**
+     * 解析 Range 请求头
+     * @param header Range 请求头的值
+     * @param length 文件长度
+     * @return null 表示忽略该请求头（返回完整内容），包括不含任何区间的 "bytes=" 等语法错误；
+     *         空列表表示所有区间语法正确但都无法满足（应返回 416）；
+     *         否则为按起始位置排序、已合并重叠部分的区间列表
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (value.length() < 6 || !value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            // 不认识的单位，按规范忽略
+            return null;
+        }
+
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        int parsed = 0;
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            parsed++;
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                // 后缀区间：bytes=-n 表示最后 n 个字节
+                long suffixLength = parseNumber(last);
+                if (suffixLength < 0) {
+                    return null;
+                }
+                if (suffixLength > 0 && length > 0) {
+                    ranges.add(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+                }
+                continue;
+            }
+
+            long start = parseNumber(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : parseNumber(last);
+            if (start < 0 || end < 0 || end < start) {
+                // 语法错误，忽略整个请求头
+                return null;
+            }
+            if (start >= length) {
+                // 该区间无法满足，跳过
+                continue;
+            }
+            ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+        }
+
+        if (parsed == 0) {
+            // 区间集合至少要有一个区间，"bytes=" 或 "bytes=," 视为无法解析，按规范忽略
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return coalesce(ranges);
+    }
+
+    /**
+     * 按起始位置排序并合并重叠或相距很近的区间
+     */
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() == 1) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> merged = new ArrayList<>(ranges.size());
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.getStart() <= current.getEnd() + COALESCE_GAP) {
+                current = new ByteRange(current.getStart(), Math.max(current.getEnd(), next.getEnd()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * 解析非负十进制数，格式不正确或溢出时返回 -1
+     */
+    private static long parseNumber(String text) {
+        if (text.isEmpty() || text.length() > 18) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package com.movie.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 实现）
+ * 只维护一个"理论到达时间"，获取和消费令牌均为基本类型运算加 CAS，不产生任何对象分配
+ */
+public final class TokenBucket {
+    private final double nanosPerByte;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param bytesPerSecond 速率（字节/秒），必须大于0
+     * @param burstMillis 允许的突发量，以该速率下的毫秒数表示
+     */
+    public TokenBucket(long bytesPerSecond, long burstMillis) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("速率必须大于0");
+        }
+        this.nanosPerByte = 1_000_000_000.0 / bytesPerSecond;
+        this.burstNanos = Math.max(1, burstMillis) * 1_000_000L;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 当前可立即使用的字节数
+     */
+    public long available(long now) {
+        long backlog = theoreticalArrival.get() - now;
+        long credit = backlog > 0 ? burstNanos - backlog : burstNanos;
+        return credit > 0 ? (long) (credit / nanosPerByte) : 0;
+    }
+
+    /**
+     * 等待多久（纳秒）之后可以获取指定字节数，0 表示现在即可
+     */
+    public long nanosUntilAvailable(long bytes, long now) {
+        long cost = (long) Math.ceil(Math.min(bytes, burstBytes()) * nanosPerByte);
+        long wait = theoreticalArrival.get() + cost - burstNanos - now;
+        return wait > 0 ? wait : 0;
+    }
+
+    /**
+     * 消费令牌，多个线程并发消费时可能短暂透支，透支部分会体现在后续的等待时间上
+     */
+    public void consume(long bytes, long now) {
+        long cost = (long) Math.ceil(bytes * nanosPerByte);
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + cost;
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 桶容量（字节）
+     */
+    public long burstBytes() {
+        return Math.max(1, (long) (burstNanos / nanosPerByte));
+    }
+}
@@ -4,6 +4,7 @@ import { UserOutlined, MailOutlined, LockOutlined, SaveOutlined, HeartOutlined,
 import { useNavigate } from 'react-router-dom';
 import { getCurrentUserInfo, updateUserInfo, changePassword, getFavoriteList } from '../../utils/api';
 import { getRoleDisplayName, getRoleColor } from '../../utils/roleUtils';
+import { getAvatarUrl } from '../../utils/imageProxy';
 import dayjs from 'dayjs';
 import './index.css';
 
@@ -138,7 +139,7 @@ const Profile = () => {
                 children: (
               <div className="profile-section">
                 <div className="profile-header">
-                  <Avatar size={80} icon={<UserOutlined />} />
+                  <Avatar size={80} src={getAvatarUrl(userInfo?.avatarUrl, 80)} icon={<UserOutlined />} />
                   <div className="profile-basic-info">
                     <h3>{userInfo?.realName || userInfo?.username || '用户'}</h3>
                     <Tag color={getRoleColor(userInfo?.role)}>
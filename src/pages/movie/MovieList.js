@@ -4,6 +4,7 @@ import { PlusOutlined, EditOutlined, DeleteOutlined, SearchOutlined, EyeOutlined
 import { useNavigate, useSearchParams } from 'react-router-dom';
 import { getMovieList, deleteMovie, deleteMoviesBatch, getCategoryList, toggleFavorite, getCurrentUserInfo } from '../../utils/api';
 import { renderIcon } from '../../utils/iconUtils';
+import { getThumbnailUrl } from '../../utils/imageProxy';
 import dayjs from 'dayjs';
 import '../../styles/list-pages.css';
 import './MovieList.css';
@@ -362,7 +363,7 @@ const MovieList = () => {
       render: (coverImage, record) => (
         coverImage ? (
           <Image
-            src={coverImage}
+            src={getThumbnailUrl(coverImage, 80)}
             alt={record.title}
             width={80}
             height={120}
@@ -684,7 +685,7 @@ const MovieList = () => {
                           <div style={{ height: 300, overflow: 'hidden' }}>
                             <img
                               alt={movie.title}
-                              src={movie.coverImage}
+                              src={getThumbnailUrl(movie.coverImage, 320)}
                               style={{
                                 width: '100%',
                                 height: '100%',
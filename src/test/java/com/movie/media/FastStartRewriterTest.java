@@ -0,0 +1,74 @@
+package com.movie.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastStartRewriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void movesMoovBeforeMdatAndRelocatesChunkOffsets() throws IOException {
+        assertRewritten(false);
+    }
+
+    @Test
+    void relocatesLargeChunkOffsets() throws IOException {
+        assertRewritten(true);
+    }
+
+    @Test
+    void leavesFastStartFileUntouched() throws IOException {
+        Path source = tempDir.resolve("source.mp4");
+        Mp4TestFiles.write(source, true, false);
+        Path target = tempDir.resolve("target.mp4");
+
+        assertFalse(FastStartRewriter.rewrite(source, target));
+        assertFalse(Files.exists(target));
+    }
+
+    private void assertRewritten(boolean co64) throws IOException {
+        Path source = tempDir.resolve("source.mp4");
+        Mp4TestFiles.write(source, false, co64);
+        Path target = tempDir.resolve("target.mp4");
+
+        assertTrue(FastStartRewriter.rewrite(source, target));
+        assertEquals(Files.size(source), Files.size(target));
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+            List<Mp4Box> boxes = Mp4Box.scanTopLevel(channel);
+            assertEquals(3, boxes.size());
+            assertTrue(boxes.get(0).is("ftyp"));
+            assertTrue(boxes.get(1).is("moov"));
+            assertTrue(boxes.get(2).is("mdat"));
+
+            // 每个样本在新偏移处的内容与原样本一致
+            Mp4Movie movie = Mp4Movie.parse(channel);
+            assertEquals(2, movie.getTracks().size());
+            for (Mp4Track track : movie.getTracks()) {
+                int expectedCount = track.getTrackId() == Mp4TestFiles.VIDEO_TRACK
+                        ? Mp4TestFiles.VIDEO_SAMPLES : Mp4TestFiles.AUDIO_SAMPLES;
+                assertEquals(expectedCount, track.getSampleCount());
+                for (int i = 0; i < track.getSampleCount(); i++) {
+                    ByteBuffer sample = ByteBuffer.allocate(track.sizes[i]);
+                    Mp4Box.readFully(channel, sample, track.offsets[i]);
+                    assertArrayEquals(Mp4TestFiles.sampleData(track.getTrackId(), i), sample.array());
+                }
+            }
+        }
+    }
+}
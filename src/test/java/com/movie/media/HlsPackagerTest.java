@@ -0,0 +1,110 @@
+package com.movie.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HlsPackagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void packsMoovLastFileIntoKeyframeAlignedSegments() throws IOException {
+        assertSegmentsCarryAllSamples(false, false);
+    }
+
+    @Test
+    void packsMoovFirstFileWithLargeChunkOffsets() throws IOException {
+        assertSegmentsCarryAllSamples(true, true);
+    }
+
+    @Test
+    void writesVodPlaylistReferencingInitAndSegments() throws IOException {
+        Path source = tempDir.resolve("source.mp4");
+        Mp4TestFiles.write(source, false, false);
+        Path output = Files.createDirectory(tempDir.resolve("hls"));
+
+        int segments = HlsPackager.pack(source, output, 4.0);
+
+        String playlist = new String(Files.readAllBytes(output.resolve(HlsPackager.PLAYLIST_NAME)),
+                StandardCharsets.UTF_8);
+        assertTrue(playlist.startsWith("#EXTM3U\n"));
+        assertTrue(playlist.contains("#EXT-X-MAP:URI=\"" + HlsPackager.INIT_SEGMENT_NAME + "\""));
+        assertTrue(playlist.trim().endsWith("#EXT-X-ENDLIST"));
+        // 10 秒视频、每秒一个关键帧，按 4 秒切分：4 + 4 + 2
+        assertEquals(3, segments);
+        assertTrue(playlist.contains("#EXT-X-TARGETDURATION:4\n"));
+        assertTrue(playlist.contains("#EXTINF:4.000,\n" + HlsPackager.segmentName(0) + "\n"));
+        assertTrue(playlist.contains("#EXTINF:2.000,\n" + HlsPackager.segmentName(2) + "\n"));
+        assertTrue(Files.size(output.resolve(HlsPackager.INIT_SEGMENT_NAME)) > 0);
+    }
+
+    /**
+     * 逐个分片解析 moof/trun，校验每个分片从关键帧开始，
+     * 且 mdat 中依次是对应的视频样本和音频样本，所有样本恰好各出现一次
+     */
+    private void assertSegmentsCarryAllSamples(boolean moovFirst, boolean co64) throws IOException {
+        Path source = tempDir.resolve("source.mp4");
+        Mp4TestFiles.write(source, moovFirst, co64);
+        Path output = Files.createDirectory(tempDir.resolve("hls"));
+
+        int segments = HlsPackager.pack(source, output, 2.0);
+        assertEquals(5, segments);
+
+        int nextVideo = 0;
+        int nextAudio = 0;
+        for (int s = 0; s < segments; s++) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(output.resolve(HlsPackager.segmentName(s))));
+            List<Mp4Box> boxes = Mp4Box.children(data, 0, data.capacity());
+            assertEquals(2, boxes.size());
+            Mp4Box moof = boxes.get(0);
+            Mp4Box mdat = boxes.get(1);
+            assertTrue(moof.is("moof"));
+            assertTrue(mdat.is("mdat"));
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (Mp4Box traf : Mp4Box.children(data, moof.getDataOffset(), moof.getEnd())) {
+                if (!traf.is("traf")) {
+                    continue;
+                }
+                Mp4Box tfhd = Mp4Box.child(data, traf, "tfhd");
+                Mp4Box trun = Mp4Box.child(data, traf, "trun");
+                assertNotNull(tfhd);
+                assertNotNull(trun);
+                int trackId = data.getInt((int) tfhd.getDataOffset() + 4);
+                int count = data.getInt((int) trun.getDataOffset() + 4);
+                if (trackId == Mp4TestFiles.VIDEO_TRACK) {
+                    assertEquals(0, nextVideo % 30);
+                    for (int i = 0; i < count; i++) {
+                        expected.write(Mp4TestFiles.sampleData(trackId, nextVideo++));
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        expected.write(Mp4TestFiles.sampleData(trackId, nextAudio++));
+                    }
+                }
+            }
+
+            byte[] payload = new byte[(int) (mdat.getEnd() - mdat.getDataOffset())];
+            ByteBuffer view = data.duplicate();
+            view.position((int) mdat.getDataOffset());
+            view.get(payload);
+            assertArrayEquals(expected.toByteArray(), payload);
+        }
+        assertEquals(Mp4TestFiles.VIDEO_SAMPLES, nextVideo);
+        assertEquals(Mp4TestFiles.AUDIO_SAMPLES, nextAudio);
+    }
+}
@@ -0,0 +1,263 @@
+package com.movie.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 测试用的合成 MP4
+ * 视频轨道 1：timescale 90000，300 个样本（30fps，10 秒），每 30 个样本一个关键帧，带 ctts
+ * 音频轨道 2：timescale 48000，470 个样本，每个 1024
+ * mdat 中按 10 个视频样本 / 16 个音频样本交错成块
+ */
+final class Mp4TestFiles {
+
+    static final int VIDEO_TRACK = 1;
+    static final int AUDIO_TRACK = 2;
+    static final int VIDEO_SAMPLES = 300;
+    static final int AUDIO_SAMPLES = 470;
+
+    private Mp4TestFiles() {
+    }
+
+    static int sampleSize(int track, int index) {
+        return track == VIDEO_TRACK ? 500 + (index * 37) % 900 : 200 + (index * 13) % 100;
+    }
+
+    static byte sampleByte(int track, int index, int offset) {
+        return (byte) (track * 31 + index * 7 + offset);
+    }
+
+    /**
+     * 样本内容可由 (轨道, 序号) 还原，便于校验改写后的数据
+     */
+    static byte[] sampleData(int track, int index) {
+        byte[] data = new byte[sampleSize(track, index)];
+        for (int k = 0; k < data.length; k++) {
+            data[k] = sampleByte(track, index, k);
+        }
+        return data;
+    }
+
+    /**
+     * @param moovFirst moov 是否位于 mdat 之前
+     * @param co64 是否使用 64 位块偏移
+     */
+    static void write(Path target, boolean moovFirst, boolean co64) throws IOException {
+        ByteArrayOutputStream mdat = new ByteArrayOutputStream();
+        List<Long> videoChunks = new ArrayList<>();
+        List<Long> audioChunks = new ArrayList<>();
+        List<Integer> videoCounts = new ArrayList<>();
+        List<Integer> audioCounts = new ArrayList<>();
+        int video = 0;
+        int audio = 0;
+        while (video < VIDEO_SAMPLES || audio < AUDIO_SAMPLES) {
+            if (video < VIDEO_SAMPLES) {
+                int count = Math.min(10, VIDEO_SAMPLES - video);
+                videoChunks.add((long) mdat.size());
+                videoCounts.add(count);
+                for (int k = 0; k < count; k++, video++) {
+                    mdat.write(sampleData(VIDEO_TRACK, video));
+                }
+            }
+            if (audio < AUDIO_SAMPLES) {
+                int count = Math.min(16, AUDIO_SAMPLES - audio);
+                audioChunks.add((long) mdat.size());
+                audioCounts.add(count);
+                for (int k = 0; k < count; k++, audio++) {
+                    mdat.write(sampleData(AUDIO_TRACK, audio));
+                }
+            }
+        }
+
+        BoxWriter ftypWriter = new BoxWriter();
+        ftypWriter.start("ftyp");
+        ftypWriter.out.writeBytes("isom");
+        ftypWriter.out.writeInt(512);
+        ftypWriter.out.writeBytes("isomiso2avc1mp41");
+        ftypWriter.end();
+        byte[] ftyp = ftypWriter.toByteArray();
+
+        // moov 在前时其长度影响块偏移，第二遍用第一遍的长度计算
+        byte[] moov = null;
+        for (int pass = 0; pass < 2; pass++) {
+            long dataStart = ftyp.length + 8 + (moovFirst && moov != null ? moov.length : 0);
+            BoxWriter w = new BoxWriter();
+            w.start("moov");
+            w.full("mvhd", 0, 0);
+            w.out.writeInt(0);
+            w.out.writeInt(0);
+            w.out.writeInt(1000);
+            w.out.writeInt(10000);
+            w.out.write(new byte[80]);
+            w.out.writeInt(3);
+            w.end();
+            writeTrack(w, VIDEO_TRACK, VIDEO_SAMPLES, videoChunks, videoCounts, dataStart, co64);
+            writeTrack(w, AUDIO_TRACK, AUDIO_SAMPLES, audioChunks, audioCounts, dataStart, co64);
+            w.end();
+            moov = w.toByteArray();
+        }
+
+        try (OutputStream file = Files.newOutputStream(target)) {
+            DataOutputStream out = new DataOutputStream(file);
+            out.write(ftyp);
+            if (moovFirst) {
+                out.write(moov);
+            }
+            out.writeInt(mdat.size() + 8);
+            out.writeBytes("mdat");
+            mdat.writeTo(out);
+            if (!moovFirst) {
+                out.write(moov);
+            }
+            out.flush();
+        }
+    }
+
+    private static void writeTrack(BoxWriter w, int track, int sampleCount, List<Long> chunks,
+                                   List<Integer> counts, long dataStart, boolean co64) throws IOException {
+        boolean isVideo = track == VIDEO_TRACK;
+        w.start("trak");
+        w.full("tkhd", 0, 3);
+        w.out.writeInt(0);
+        w.out.writeInt(0);
+        w.out.writeInt(track);
+        w.out.writeInt(0);
+        w.out.writeInt(10000);
+        w.out.write(new byte[60]);
+        w.end();
+
+        w.start("mdia");
+        w.full("mdhd", 0, 0);
+        w.out.writeInt(0);
+        w.out.writeInt(0);
+        w.out.writeInt(isVideo ? 90000 : 48000);
+        w.out.writeInt(0);
+        w.out.writeInt(0x55c40000);
+        w.end();
+        w.full("hdlr", 0, 0);
+        w.out.writeInt(0);
+        w.out.writeBytes(isVideo ? "vide" : "soun");
+        w.out.write(new byte[12]);
+        w.out.writeBytes("x\0");
+        w.end();
+
+        w.start("minf");
+        if (isVideo) {
+            w.full("vmhd", 0, 1);
+            w.out.write(new byte[8]);
+        } else {
+            w.full("smhd", 0, 0);
+            w.out.writeInt(0);
+        }
+        w.end();
+        w.start("dinf");
+        w.full("dref", 0, 0);
+        w.out.writeInt(1);
+        w.full("url ", 0, 1);
+        w.end();
+        w.end();
+        w.end();
+
+        w.start("stbl");
+        w.full("stsd", 0, 0);
+        w.out.writeInt(1);
+        w.start(isVideo ? "avc1" : "mp4a");
+        w.out.write(new byte[20]);
+        w.end();
+        w.end();
+        w.full("stts", 0, 0);
+        w.out.writeInt(1);
+        w.out.writeInt(sampleCount);
+        w.out.writeInt(isVideo ? 3000 : 1024);
+        w.end();
+        if (isVideo) {
+            w.full("ctts", 0, 0);
+            w.out.writeInt(sampleCount);
+            for (int i = 0; i < sampleCount; i++) {
+                w.out.writeInt(1);
+                w.out.writeInt((i % 3) * 3000);
+            }
+            w.end();
+            w.full("stss", 0, 0);
+            w.out.writeInt(sampleCount / 30);
+            for (int i = 0; i < sampleCount; i += 30) {
+                w.out.writeInt(i + 1);
+            }
+            w.end();
+        }
+        // 连续相同样本数的块合并为一条 stsc 记录
+        List<int[]> entries = new ArrayList<>();
+        for (int c = 0; c < counts.size(); c++) {
+            if (entries.isEmpty() || entries.get(entries.size() - 1)[1] != counts.get(c)) {
+                entries.add(new int[]{c + 1, counts.get(c)});
+            }
+        }
+        w.full("stsc", 0, 0);
+        w.out.writeInt(entries.size());
+        for (int[] entry : entries) {
+            w.out.writeInt(entry[0]);
+            w.out.writeInt(entry[1]);
+            w.out.writeInt(1);
+        }
+        w.end();
+        w.full("stsz", 0, 0);
+        w.out.writeInt(0);
+        w.out.writeInt(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            w.out.writeInt(sampleSize(track, i));
+        }
+        w.end();
+        w.full(co64 ? "co64" : "stco", 0, 0);
+        w.out.writeInt(chunks.size());
+        for (long offset : chunks) {
+            if (co64) {
+                w.out.writeLong(offset + dataStart);
+            } else {
+                w.out.writeInt((int) (offset + dataStart));
+            }
+        }
+        w.end();
+        w.end(); // stbl
+        w.end(); // minf
+        w.end(); // mdia
+        w.end(); // trak
+    }
+
+    private static final class BoxWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Deque<Integer> starts = new ArrayDeque<>();
+
+        void start(String type) throws IOException {
+            starts.push(bytes.size());
+            out.writeInt(0);
+            out.writeBytes(type);
+        }
+
+        void full(String type, int version, int flags) throws IOException {
+            start(type);
+            out.writeInt((version << 24) | flags);
+        }
+
+        void end() {
+            int start = starts.pop();
+            byte[] data = bytes.toByteArray();
+            ByteBuffer.wrap(data).putInt(start, data.length - start);
+            bytes.reset();
+            bytes.write(data, 0, data.length);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.movie.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BandwidthLimiterTest {
+
+    private BandwidthLimiter limiter;
+
+    @AfterEach
+    void tearDown() {
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
+    @Test
+    void parsesRoleRates() {
+        Map<String, Long> rates = BandwidthLimiter.parseRates(" VIP:8388608, ADMIN:0 ,,USER:1024");
+        assertEquals(3, rates.size());
+        assertEquals(8388608L, (long) rates.get("VIP"));
+        assertEquals(0L, (long) rates.get("ADMIN"));
+        assertEquals(1024L, (long) rates.get("USER"));
+        assertTrue(BandwidthLimiter.parseRates("").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> BandwidthLimiter.parseRates("VIP"));
+    }
+
+    @Test
+    void returnsNullWhenDisabled() {
+        limiter = newLimiter(false, "VIP:1024", "");
+        assertNull(limiter.open("VIP"));
+    }
+
+    @Test
+    void appliesPerRoleConnectionRate() {
+        limiter = newLimiter(true, "VIP:4194304,ADMIN:0,ANONYMOUS:65536", "");
+        // 突发 100ms：VIP 约 400KB，未登录约 6.4KB，USER 使用默认 1MB/s 约 100KB
+        assertEquals(262144, acquireNow(limiter.open("VIP"), 262144));
+        assertEquals(6553, acquireNow(limiter.open(null), 262144));
+        assertEquals(104857, acquireNow(limiter.open("USER"), 262144));
+        // ADMIN 配置为 0 且没有合计和全局限制，不限速
+        assertNull(limiter.open("ADMIN"));
+    }
+
+    @Test
+    void roleAggregateIsSharedWithinRoleOnly() {
+        limiter = newLimiter(true, "VIP:0,USER:0", "VIP:1048576");
+        BandwidthLimiter.Shaper first = limiter.open("VIP");
+        assertNotNull(first);
+        assertEquals(104857, acquireNow(first, 1 << 20));
+        // 同一角色的另一个连接共用已耗尽的合计桶
+        assertTrue(acquireNow(limiter.open("VIP"), 1 << 20) < 0);
+        // 其他角色使用默认合计桶（此处未配置，不限速）
+        assertNull(limiter.open("USER"));
+    }
+
+    @Test
+    void resumesEachConnectionAfterDelayReusingItsNode() throws InterruptedException {
+        limiter = newLimiter(true, "", "");
+        BandwidthLimiter.Shaper shaper = limiter.open("USER");
+        CountDownLatch resumed = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+        long[] lastRun = new long[1];
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                lastRun[0] = System.nanoTime();
+                runs.incrementAndGet();
+                resumed.countDown();
+                if (resumed.getCount() > 0) {
+                    // 在恢复任务中再次等待，与异步写出的用法相同
+                    shaper.resumeAfter(this, TimeUnit.MILLISECONDS.toNanos(5));
+                }
+            }
+        };
+        long start = System.nanoTime();
+        shaper.resumeAfter(task, TimeUnit.MILLISECONDS.toNanos(5));
+        // 上一次等待未到期时再次调度被忽略
+        shaper.resumeAfter(task, TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertTrue(lastRun[0] - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        Thread.sleep(50);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void resumesDelaysLongerThanOneWheelTurn() throws InterruptedException {
+        limiter = newLimiter(true, "", "");
+        CountDownLatch resumed = new CountDownLatch(2);
+        long start = System.nanoTime();
+        long[] elapsed = new long[2];
+        limiter.open("USER").resumeAfter(() -> {
+            elapsed[0] = System.nanoTime() - start;
+            resumed.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(600));
+        limiter.open("USER").resumeAfter(() -> {
+            elapsed[1] = System.nanoTime() - start;
+            resumed.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertTrue(elapsed[1] < elapsed[0]);
+        assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    // 令牌桶以创建时刻为起点，每次取当前时间
+    private static long acquireNow(BandwidthLimiter.Shaper shaper, long wanted) {
+        return shaper.acquire(wanted, System.nanoTime());
+    }
+
+    private static BandwidthLimiter newLimiter(boolean enabled, String connectionRates, String roleRates) {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        ReflectionTestUtils.setField(limiter, "enabled", enabled);
+        ReflectionTestUtils.setField(limiter, "globalRate", 0L);
+        ReflectionTestUtils.setField(limiter, "connectionRate", 1048576L);
+        ReflectionTestUtils.setField(limiter, "roleConnectionRatesConfig", connectionRates);
+        ReflectionTestUtils.setField(limiter, "roleRate", 0L);
+        ReflectionTestUtils.setField(limiter, "roleRatesConfig", roleRates);
+        ReflectionTestUtils.setField(limiter, "burstMillis", 100L);
+        limiter.init();
+        return limiter;
+    }
+}
@@ -0,0 +1,89 @@
+package com.movie.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobStoreTest {
+
+    private static final byte[] SECRET = "db.password=secret".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void ignoresIndexEntriesOutsideUploadDirectories() throws Exception {
+        Path secret = Files.write(tempDir.resolve("application.yml"), SECRET);
+        String sha256 = BlobStore.sha256(secret);
+        Path videos = Files.createDirectories(uploads().resolve("videos"));
+        Path index = Files.createDirectories(uploads().resolve("blobs")).resolve("index.tsv");
+
+        // 旧格式（未编码）和新格式中指向上传目录之外的行，包括用 .. 跳出的路径
+        Files.write(index, Arrays.asList(
+                sha256 + "\t" + SECRET.length + "\t" + secret.toAbsolutePath(),
+                sha256 + "\t" + SECRET.length + "\t" + videos.toAbsolutePath() + "/../../application.yml"),
+                StandardCharsets.UTF_8);
+        assertFalse(open().linkExisting(sha256, SECRET.length, videos.resolve("stolen.txt")));
+
+        Files.write(index, Arrays.asList("#blob-index v2",
+                sha256 + "\t" + SECRET.length + "\t" + URLEncoder.encode(secret.toAbsolutePath().toString(), "UTF-8")),
+                StandardCharsets.UTF_8);
+        assertFalse(open().linkExisting(sha256, SECRET.length, videos.resolve("stolen.txt")));
+        assertFalse(Files.exists(videos.resolve("stolen.txt")));
+    }
+
+    @Test
+    void pathsWithLineBreaksCannotInjectIndexLines() throws Exception {
+        Path secret = Files.write(tempDir.resolve("application.yml"), SECRET);
+        String sha256 = BlobStore.sha256(secret);
+        Path videos = Files.createDirectories(uploads().resolve("videos"));
+
+        // 路径中伪造一整行索引（其中的 / 使它成为 videos 下的多级目录）
+        Path video = videos.resolve("a.mp4\n" + sha256 + "\t" + SECRET.length + "\t" + secret.toAbsolutePath());
+        Files.createDirectories(video.getParent());
+        Files.write(video, "video".getBytes(StandardCharsets.UTF_8));
+        open().adopt(video, null);
+
+        BlobStore reloaded = open();
+        assertFalse(reloaded.linkExisting(sha256, SECRET.length, videos.resolve("stolen.txt")));
+        // 原文件仍能按内容找到
+        assertTrue(reloaded.linkExisting(BlobStore.sha256(video), Files.size(video), videos.resolve("copy.mp4")));
+        assertArrayEquals("video".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(videos.resolve("copy.mp4")));
+    }
+
+    @Test
+    void rejectsLinkTargetOutsideUploadDirectories() throws Exception {
+        Path videos = Files.createDirectories(uploads().resolve("videos"));
+        Path video = Files.write(videos.resolve("a.mp4"), "video".getBytes(StandardCharsets.UTF_8));
+        BlobStore blobStore = open();
+        blobStore.adopt(video, null);
+
+        assertThrows(IllegalArgumentException.class, () -> blobStore.linkExisting(BlobStore.sha256(video),
+                Files.size(video), videos.resolve("../../escaped.mp4")));
+        assertFalse(Files.exists(tempDir.resolve("escaped.mp4")));
+    }
+
+    private Path uploads() {
+        return tempDir.resolve("uploads");
+    }
+
+    private BlobStore open() throws IOException {
+        BlobStore blobStore = new BlobStore();
+        ReflectionTestUtils.setField(blobStore, "uploadDir", uploads().toString());
+        ReflectionTestUtils.setField(blobStore, "enabled", true);
+        blobStore.init();
+        return blobStore;
+    }
+}
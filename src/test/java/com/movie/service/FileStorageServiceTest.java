@@ -0,0 +1,134 @@
+package com.movie.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileStorageServiceTest {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private FileStorageService storage;
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        BlobStore blobStore = new BlobStore();
+        ReflectionTestUtils.setField(blobStore, "uploadDir", tempDir.toString());
+        ReflectionTestUtils.setField(blobStore, "enabled", false);
+        blobStore.init();
+
+        storage = new FileStorageService();
+        ReflectionTestUtils.setField(storage, "maxImageBytes", 1048576L);
+        ReflectionTestUtils.setField(storage, "maxOtherBytes", 1048576L);
+        ReflectionTestUtils.setField(storage, "bufferSize", BUFFER_SIZE);
+        ReflectionTestUtils.setField(storage, "bufferCount", 1);
+        ReflectionTestUtils.setField(storage, "blobStore", blobStore);
+        storage.init();
+        dir = tempDir.resolve("files");
+    }
+
+    @Test
+    void streamsBodyLargerThanBufferAndReturnsPooledBuffer() throws Exception {
+        byte[] content = new byte[BUFFER_SIZE * 10 + 123];
+        new Random(42).nextBytes(content);
+        ByteBuffer pooled = pooledBuffers().peek();
+
+        FileStorageService.StoredFile stored = storage.store(
+                new MockMultipartFile("file", "poster.jpg", "image/jpeg", content), dir);
+
+        assertTrue(stored.getFilename().endsWith(".jpg"));
+        assertEquals(content.length, stored.getSize());
+        assertArrayEquals(content, Files.readAllBytes(stored.getPath()));
+        assertEquals(BlobStore.sha256(stored.getPath()), stored.getSha256());
+        // 复制用的是池中的直接缓冲区，用完放回
+        assertEquals(1, pooledBuffers().size());
+        assertSame(pooled, pooledBuffers().peek());
+        assertEquals(1, listFiles().size());
+    }
+
+    @Test
+    void finalFileAppearsOnlyAfterBodyIsComplete() throws Exception {
+        byte[] content = new byte[BUFFER_SIZE * 4];
+        List<List<String>> seenDuringCopy = new ArrayList<>();
+        MockMultipartFile file = new MockMultipartFile("file", "a.bin", "application/octet-stream", content) {
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(content) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        seenDuringCopy.add(listFiles());
+                        return super.read(b, off, len);
+                    }
+                };
+            }
+        };
+
+        FileStorageService.StoredFile stored = storage.store(file, dir);
+
+        // 复制过程中只存在隐藏的临时文件，最终文件名在整体写完后一次性出现
+        assertFalse(seenDuringCopy.isEmpty());
+        for (List<String> names : seenDuringCopy) {
+            assertTrue(names.stream().allMatch(name -> name.startsWith(".")), names.toString());
+        }
+        assertEquals(1, listFiles().size());
+        assertEquals(stored.getFilename(), listFiles().get(0));
+    }
+
+    @Test
+    void oversizedStreamLeavesNoFilesAndReturnsBuffer() {
+        byte[] content = new byte[BUFFER_SIZE * 8];
+        // 大小未知（如分块传输编码），只能边读边计数
+        MockMultipartFile file = new MockMultipartFile("file", "big.bin", "application/octet-stream", content) {
+            @Override
+            public long getSize() {
+                return -1;
+            }
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> storage.store(file, dir, BUFFER_SIZE * 3));
+        assertTrue(listFiles().isEmpty());
+        assertEquals(1, pooledBuffers().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Queue<ByteBuffer> pooledBuffers() {
+        return (Queue<ByteBuffer>) ReflectionTestUtils.getField(storage, "buffers");
+    }
+
+    private List<String> listFiles() {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.map(path -> path.getFileName().toString()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
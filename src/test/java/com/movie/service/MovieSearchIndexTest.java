@@ -0,0 +1,129 @@
+package com.movie.service;
+
+import com.movie.repository.MovieRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MovieSearchIndexTest {
+
+    private final List<Object[]> rows = new ArrayList<>();
+    private MovieSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        // id、title、director、actors、description、分类ID
+        rows.add(new Object[]{1L, "流浪地球", "郭帆", "吴京", "太阳即将毁灭，人类带着地球逃离", 10L});
+        rows.add(new Object[]{2L, "Interstellar", "Christopher Nolan", "Matthew McConaughey", "A journey through a wormhole", 10L});
+        rows.add(new Object[]{3L, "Inception", "Christopher Nolan", "Leonardo DiCaprio", "地球上的梦境盗贼", 20L});
+        rows.add(new Object[]{4L, "Dunkirk", "Christopher Nolan", null, null, null});
+
+        searchIndex = new MovieSearchIndex();
+        // 只需要构建索引用到的查询
+        MovieRepository repository = (MovieRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MovieRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findSearchFields")) {
+                        return rows;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        ReflectionTestUtils.setField(searchIndex, "movieRepository", repository);
+    }
+
+    @Test
+    void tokenizesCjkIntoBigramsAndOtherTextIntoLowercaseWords() {
+        List<String> tokens = new ArrayList<>();
+        List<Boolean> cjk = new ArrayList<>();
+        MovieSearchIndex.tokenize("流浪地球 Part-2", tokens, cjk, false);
+        assertEquals(Arrays.asList("流浪", "浪地", "地球", "part", "2"), tokens);
+        assertEquals(Arrays.asList(true, true, true, false, false), cjk);
+
+        // 建索引时额外输出单字，查询时单个汉字只输出单字
+        tokens.clear();
+        MovieSearchIndex.tokenize("地球", tokens, new ArrayList<>(), true);
+        assertEquals(Arrays.asList("地", "球", "地球"), tokens);
+        tokens.clear();
+        MovieSearchIndex.tokenize("球", tokens, new ArrayList<>(), false);
+        assertEquals(Arrays.asList("球"), tokens);
+    }
+
+    @Test
+    void lowercasesIndependentOfDefaultLocale() {
+        Locale original = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            List<String> tokens = new ArrayList<>();
+            MovieSearchIndex.tokenize("INTERSTELLAR", tokens, new ArrayList<>(), false);
+            assertEquals(Arrays.asList("interstellar"), tokens);
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    void returnsNullUntilBuilt() {
+        assertNull(searchIndex.search("nolan", null, false));
+        searchIndex.build();
+        assertNotNull(searchIndex.search("nolan", null, false));
+    }
+
+    @Test
+    void matchesAllTermsAcrossFieldsAndFiltersByCategory() {
+        searchIndex.build();
+
+        assertArrayEquals(new long[]{2, 3, 4}, searchIndex.search("nolan", null, false));
+        assertArrayEquals(new long[]{2}, searchIndex.search("christopher nolan", 10L, false));
+        assertArrayEquals(new long[]{2}, searchIndex.search("nolan wormhole", null, false));
+        assertArrayEquals(new long[]{3}, searchIndex.search("nolan", 20L, false));
+        // 标题命中的电影排在简介命中之前
+        assertArrayEquals(new long[]{1, 3}, searchIndex.search("地球", null, true));
+        assertArrayEquals(new long[0], searchIndex.search("nolan 吴京", null, false));
+    }
+
+    @Test
+    void expandsLastWordAsPrefixOnlyFromTwoCharacters() {
+        searchIndex.build();
+
+        assertArrayEquals(new long[]{2, 3}, searchIndex.search("in", null, false));
+        assertArrayEquals(new long[]{2}, searchIndex.search("nolan inter", null, false));
+        // 单个字母不展开，只按整词匹配
+        assertArrayEquals(new long[]{2}, searchIndex.search("a", null, false));
+        // 以空格结尾时最后一个词也按整词匹配
+        assertArrayEquals(new long[0], searchIndex.search("inter ", null, false));
+    }
+
+    @Test
+    void countsTruncatedPrefixExpansions() {
+        for (long id = 100; id < 400; id++) {
+            rows.add(new Object[]{id, "zz" + id, null, null, null, null});
+        }
+        searchIndex.build();
+
+        long[] result = searchIndex.search("zz", null, false);
+        assertEquals(256, result.length);
+        assertEquals(1L, searchIndex.getStats().get("truncatedPrefixes"));
+        // 未超过上限的展开不计入
+        assertArrayEquals(new long[]{100}, searchIndex.search("zz100", null, false));
+        assertEquals(1L, searchIndex.getStats().get("truncatedPrefixes"));
+    }
+
+    @Test
+    void deletedMoviesNoLongerMatch() {
+        searchIndex.build();
+        searchIndex.onMovieDeleted(3L);
+
+        assertArrayEquals(new long[]{2, 4}, searchIndex.search("nolan", null, false));
+        assertArrayEquals(new long[]{1}, searchIndex.search("地球", null, true));
+    }
+}
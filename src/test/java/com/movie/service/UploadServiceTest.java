@@ -0,0 +1,491 @@
+package com.movie.service;
+
+import com.movie.dto.InitUploadRequest;
+import com.movie.upload.CompletionJob;
+import com.movie.upload.RollingDigest;
+import com.movie.upload.UploadSession;
+import com.movie.upload.UploadSessionStore;
+import com.movie.util.Crc32c;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadServiceTest {
+
+    private static final long CHUNK_SIZE = 1024;
+    private static final String USER = "alice";
+
+    @TempDir
+    Path tempDir;
+
+    private UploadService uploadService;
+    private InMemorySessionStore sessionStore;
+    private UploadAdmission admission;
+
+    @AfterEach
+    void tearDown() {
+        if (uploadService != null) {
+            uploadService.shutdown();
+        }
+    }
+
+    @Test
+    void badRetryOfRecordedChunkKeepsPreallocatedData() throws Exception {
+        assertBadRetryKeepsData("preallocate");
+    }
+
+    @Test
+    void badRetryOfRecordedChunkKeepsChunkFile() throws Exception {
+        assertBadRetryKeepsData("merge");
+    }
+
+    @Test
+    void retryWithNewContentRecomputesPreallocatedDigest() throws Exception {
+        assertRetryRecomputesDigest("preallocate");
+    }
+
+    @Test
+    void retryWithNewContentRecomputesMergedDigest() throws Exception {
+        assertRetryRecomputesDigest("merge");
+    }
+
+    @Test
+    void replacingDeduplicatedMergedFileKeepsSharedData() throws Exception {
+        assertReplaceKeepsSharedData("merge");
+    }
+
+    @Test
+    void replacingDeduplicatedPreallocatedFileKeepsSharedData() throws Exception {
+        assertReplaceKeepsSharedData("preallocate");
+    }
+
+    @Test
+    void rejectsNonPositiveSizesWithoutReserving() throws Exception {
+        start("preallocate");
+        for (long fileSize : new long[]{0, -1, -(10L << 30)}) {
+            InitUploadRequest request = new InitUploadRequest();
+            request.setFileName("movie.mp4");
+            request.setFileSize(fileSize);
+            assertThrows(IllegalArgumentException.class, () -> uploadService.initUpload(request, USER));
+        }
+        InitUploadRequest request = new InitUploadRequest();
+        request.setFileName("movie.mp4");
+        request.setFileSize(3000L);
+        request.setChunkSize(0L);
+        assertThrows(IllegalArgumentException.class, () -> uploadService.initUpload(request, USER));
+        assertEquals(0, admission.getStats().get("sessions"));
+    }
+
+    @Test
+    void digestAdvancesInBackgroundAfterRetransmit() throws Exception {
+        start("preallocate");
+        byte[] data = content(3000, 3);
+        String uploadId = upload("movie.mp4", data);
+        assertEquals(sha256(data), awaitDigest(uploadId));
+
+        // 重传已计入的分片后摘要从头重算，同样在后台完成
+        byte[] replacement = content(1024, 9);
+        uploadService.uploadChunk(uploadId, 0, new ByteArrayInputStream(replacement), replacement.length,
+                null, crc32c(replacement), USER);
+        byte[] expected = data.clone();
+        System.arraycopy(replacement, 0, expected, 0, replacement.length);
+        assertEquals(sha256(expected), awaitDigest(uploadId));
+    }
+
+    @Test
+    void progressListsChunkIndicesOnlyWhenRequested() throws Exception {
+        start("merge");
+        byte[] data = content(3000, 4);
+        String uploadId = init("movie.mp4", data);
+        byte[] chunk = chunk(data, 2);
+        uploadService.uploadChunk(uploadId, 2, new ByteArrayInputStream(chunk), chunk.length,
+                null, crc32c(chunk), USER);
+
+        Map<String, Object> progress = uploadService.getUploadProgress(uploadId, USER, false);
+        assertEquals(1, progress.get("uploadedChunks"));
+        assertFalse(progress.containsKey("uploadedChunkIndices"));
+
+        progress = uploadService.getUploadProgress(uploadId, USER, true);
+        assertEquals(Arrays.asList(2), progress.get("uploadedChunkIndices"));
+    }
+
+    @Test
+    void completionWaitsForRetransmitInFlight() throws Exception {
+        start("preallocate");
+        byte[] data = content(3000, 7);
+        String uploadId = upload("movie.mp4", data);
+
+        // 重传第 0 片，写到一半时停住
+        byte[] replacement = content(1024, 8);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        InputStream slow = new ByteArrayInputStream(replacement) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos >= 512 && writing.getCount() > 0) {
+                    writing.countDown();
+                    try {
+                        resume.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.read(b, off, Math.min(len, 512));
+            }
+        };
+        Thread retransmit = new Thread(() -> uploadService.uploadChunk(uploadId, 0, slow, replacement.length,
+                null, crc32c(replacement), USER));
+        retransmit.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        assertThrows(IllegalArgumentException.class, () -> uploadService.submitCompletion(uploadId, USER));
+        resume.countDown();
+        retransmit.join(10_000);
+
+        byte[] expected = data.clone();
+        System.arraycopy(replacement, 0, expected, 0, replacement.length);
+        CompletionJob job = complete(uploadId);
+        assertEquals(CompletionJob.STATE_COMPLETED, job.getState(), job.getError());
+        assertArrayEquals(expected, Files.readAllBytes(video("movie.mp4")));
+        assertThrows(IllegalArgumentException.class, () -> uploadService.uploadChunk(uploadId, 0,
+                new ByteArrayInputStream(replacement), replacement.length, null, crc32c(replacement), USER));
+    }
+
+    @Test
+    void rejectsTooManyChunksBeforeAllocating() throws Exception {
+        start("merge");
+        InitUploadRequest request = new InitUploadRequest();
+        request.setFileName("movie.mp4");
+        request.setFileSize(10L << 30);
+        request.setChunkSize(1L);
+        assertThrows(IllegalArgumentException.class, () -> uploadService.initUpload(request, USER));
+
+        request.setFileSize(UploadService.MAX_TOTAL_CHUNKS + 1L);
+        assertThrows(IllegalArgumentException.class, () -> uploadService.initUpload(request, USER));
+        assertEquals(0, admission.getStats().get("sessions"));
+
+        request.setFileSize((long) UploadService.MAX_TOTAL_CHUNKS);
+        String uploadId = uploadService.initUpload(request, USER);
+        assertEquals(UploadService.MAX_TOTAL_CHUNKS, sessionStore.sessions.get(uploadId).getTotalChunks());
+    }
+
+    @Test
+    void failedInitReleasesReservation() throws Exception {
+        start("preallocate");
+        // 临时目录无法创建
+        Path temp = tempDir.resolve("uploads").resolve("temp");
+        Files.deleteIfExists(temp);
+        Files.write(temp, new byte[0]);
+
+        assertThrows(RuntimeException.class, () -> init("movie.mp4", content(3000, 1)));
+        assertEquals(0, admission.getStats().get("sessions"));
+        assertTrue(sessionStore.sessions.isEmpty());
+    }
+
+    @Test
+    void rejectsFileNamesThatLeaveVideoDirectory() throws Exception {
+        start("merge");
+        for (String fileName : new String[]{"../secret.mp4", "a/b.mp4", "a\\b.mp4", "..", "a.mp4\nforged", "C:x.mp4"}) {
+            InitUploadRequest request = new InitUploadRequest();
+            request.setFileName(fileName);
+            request.setFileSize(3000L);
+            assertThrows(IllegalArgumentException.class, () -> uploadService.initUpload(request, USER), fileName);
+        }
+        assertEquals(0, admission.getStats().get("sessions"));
+        assertTrue(UploadService.isSafeFileName("我的 电影 (1).mp4"));
+    }
+
+    @Test
+    void failureBeforePublishCanBeResubmitted() throws Exception {
+        start("preallocate");
+        byte[] data = content(3000, 5);
+        String uploadId = upload("movie.mp4", data);
+        // 目标目录无法创建，发布前失败
+        Path videos = tempDir.resolve("uploads").resolve("videos");
+        Files.write(videos, new byte[0]);
+
+        CompletionJob failed = complete(uploadId);
+        assertEquals(CompletionJob.STATE_FAILED, failed.getState());
+        // 会话仍可继续，预留保持
+        assertEquals(1, admission.getStats().get("sessions"));
+
+        Files.delete(videos);
+        CompletionJob job = complete(uploadId);
+        assertEquals(CompletionJob.STATE_COMPLETED, job.getState(), job.getError());
+        assertArrayEquals(data, Files.readAllBytes(video("movie.mp4")));
+        assertEquals(sha256(data), uploadService.getFileSha256(uploadId));
+        assertEquals(0, admission.getStats().get("sessions"));
+    }
+
+    @Test
+    void failedSessionSaveAfterPublishReleasesAdmissionAndIsRetried() throws Exception {
+        start("preallocate");
+        byte[] data = content(3000, 6);
+        String uploadId = upload("movie.mp4", data);
+        sessionStore.failCompletedSaves = 1;
+
+        CompletionJob failed = complete(uploadId);
+        assertEquals(CompletionJob.STATE_FAILED, failed.getState());
+        assertArrayEquals(data, Files.readAllBytes(video("movie.mp4")));
+        assertEquals(0, admission.getStats().get("sessions"));
+
+        // 重新提交时补做收尾，会话存储中记录为已完成
+        CompletionJob job = complete(uploadId);
+        assertEquals(CompletionJob.STATE_COMPLETED, job.getState(), job.getError());
+        assertEquals("COMPLETED", sessionStore.findSession(uploadId).getSession().getStatus());
+        assertFalse(Files.exists(tempDir.resolve("uploads").resolve("temp").resolve(uploadId)));
+    }
+
+    /**
+     * 相同内容的两个文件共享同一份数据（硬链接），重新上传其中一个不能改写另一个的内容，
+     * 去重索引也不能再把被替换的路径当作旧内容引用
+     */
+    private void assertReplaceKeepsSharedData(String assemblyMode) throws Exception {
+        start(assemblyMode);
+        byte[] original = content(3000, 3);
+        assertEquals(CompletionJob.STATE_COMPLETED, complete(upload("a.mp4", original)).getState());
+        assertEquals(CompletionJob.STATE_COMPLETED, complete(upload("b.mp4", original)).getState());
+        assertTrue(Files.isSameFile(video("a.mp4"), video("b.mp4")));
+
+        byte[] replacement = content(3000, 4);
+        assertEquals(CompletionJob.STATE_COMPLETED, complete(upload("b.mp4", replacement)).getState());
+
+        assertArrayEquals(original, Files.readAllBytes(video("a.mp4")));
+        assertArrayEquals(replacement, Files.readAllBytes(video("b.mp4")));
+
+        // 秒传原内容时引用的是 a.mp4 的数据
+        InitUploadRequest request = new InitUploadRequest();
+        request.setFileName("c.mp4");
+        request.setFileSize((long) original.length);
+        request.setChunkSize(CHUNK_SIZE);
+        request.setSha256(sha256(original));
+        String uploadId = uploadService.initUpload(request, USER);
+        assertEquals("/api/uploads/videos/c.mp4", uploadService.getCompletedFileUrl(uploadId));
+        assertArrayEquals(original, Files.readAllBytes(video("c.mp4")));
+    }
+
+    /**
+     * 已记录的分片以错误数据重传且 CRC 校验失败时，已写入的数据和滚动摘要都不受影响
+     */
+    private void assertBadRetryKeepsData(String assemblyMode) throws Exception {
+        start(assemblyMode);
+        byte[] data = content(3000, 1);
+        String uploadId = init("movie.mp4", data);
+        uploadAll(uploadId, data);
+
+        byte[] garbage = content(1024, 99);
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadService.uploadChunk(uploadId, 1, new ByteArrayInputStream(garbage), garbage.length,
+                        null, crc32c(chunk(data, 1)), USER));
+        assertEquals(3, uploadService.getUploadedChunks(uploadId));
+
+        CompletionJob job = complete(uploadId);
+        assertEquals(CompletionJob.STATE_COMPLETED, job.getState(), job.getError());
+        assertArrayEquals(data, Files.readAllBytes(video("movie.mp4")));
+        assertEquals(sha256(data), uploadService.getFileSha256(uploadId));
+    }
+
+    /**
+     * 摘要已计入的分片以新内容重传后，最终摘要须对应磁盘上的实际内容
+     */
+    private void assertRetryRecomputesDigest(String assemblyMode) throws Exception {
+        start(assemblyMode);
+        byte[] data = content(3000, 2);
+        String uploadId = init("movie.mp4", data);
+        uploadAll(uploadId, data);
+
+        byte[] replacement = content(1024, 7);
+        uploadService.uploadChunk(uploadId, 0, new ByteArrayInputStream(replacement), replacement.length,
+                null, crc32c(replacement), USER);
+        byte[] expected = data.clone();
+        System.arraycopy(replacement, 0, expected, 0, replacement.length);
+
+        CompletionJob job = complete(uploadId);
+        assertEquals(CompletionJob.STATE_COMPLETED, job.getState(), job.getError());
+        assertArrayEquals(expected, Files.readAllBytes(video("movie.mp4")));
+        assertEquals(sha256(expected), uploadService.getFileSha256(uploadId));
+    }
+
+    private void start(String assemblyMode) throws Exception {
+        String uploadDir = tempDir.resolve("uploads").toString();
+
+        HlsPackagingService hlsPackagingService = new HlsPackagingService();
+        ReflectionTestUtils.setField(hlsPackagingService, "enabled", false);
+
+        BlobStore blobStore = new BlobStore();
+        ReflectionTestUtils.setField(blobStore, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(blobStore, "enabled", true);
+        blobStore.init();
+
+        admission = new UploadAdmission();
+        ReflectionTestUtils.setField(admission, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxSessionsPerUser", 5);
+        ReflectionTestUtils.setField(admission, "maxBytesPerUser", 1L << 30);
+        ReflectionTestUtils.setField(admission, "maxSessions", 100);
+        ReflectionTestUtils.setField(admission, "maxBytes", 1L << 30);
+        ReflectionTestUtils.setField(admission, "diskHeadroomBytes", 0L);
+
+        uploadService = new UploadService();
+        ReflectionTestUtils.setField(uploadService, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(uploadService, "urlPrefix", "/api/uploads");
+        ReflectionTestUtils.setField(uploadService, "assemblyMode", assemblyMode);
+        ReflectionTestUtils.setField(uploadService, "faststartEnabled", false);
+        ReflectionTestUtils.setField(uploadService, "completeThreads", 1);
+        ReflectionTestUtils.setField(uploadService, "completeQueueCapacity", 4);
+        ReflectionTestUtils.setField(uploadService, "digestThreads", 1);
+        ReflectionTestUtils.setField(uploadService, "digestQueueCapacity", 4);
+        ReflectionTestUtils.setField(uploadService, "hlsPackagingService", hlsPackagingService);
+        sessionStore = new InMemorySessionStore();
+        ReflectionTestUtils.setField(uploadService, "sessionStore", sessionStore);
+        ReflectionTestUtils.setField(uploadService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(uploadService, "admission", admission);
+        uploadService.recoverSessions();
+    }
+
+    private String init(String fileName, byte[] data) {
+        InitUploadRequest request = new InitUploadRequest();
+        request.setFileName(fileName);
+        request.setFileSize((long) data.length);
+        request.setChunkSize(CHUNK_SIZE);
+        return uploadService.initUpload(request, USER);
+    }
+
+    private String upload(String fileName, byte[] data) {
+        String uploadId = init(fileName, data);
+        uploadAll(uploadId, data);
+        return uploadId;
+    }
+
+    private void uploadAll(String uploadId, byte[] data) {
+        int chunks = (int) ((data.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = chunk(data, i);
+            uploadService.uploadChunk(uploadId, i, new ByteArrayInputStream(chunk), chunk.length,
+                    null, crc32c(chunk), USER);
+        }
+    }
+
+    private CompletionJob complete(String uploadId) throws InterruptedException {
+        CompletionJob job = uploadService.submitCompletion(uploadId, USER);
+        CountDownLatch finished = new CountDownLatch(1);
+        job.onFinish(finishedJob -> finished.countDown());
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        return job;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String awaitDigest(String uploadId) throws InterruptedException {
+        Map<String, RollingDigest> digests = (Map<String, RollingDigest>) ReflectionTestUtils.getField(uploadService, "digests");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            RollingDigest digest = digests.get(uploadId);
+            if (digest != null && digest.getHex() != null) {
+                return digest.getHex();
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    private Path video(String fileName) {
+        return tempDir.resolve("uploads").resolve("videos").resolve(fileName);
+    }
+
+    private static byte[] chunk(byte[] data, int index) {
+        int from = (int) (index * CHUNK_SIZE);
+        return Arrays.copyOfRange(data, from, (int) Math.min(data.length, from + CHUNK_SIZE));
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed * 17);
+        }
+        return data;
+    }
+
+    private static String crc32c(byte[] data) {
+        Crc32c crc = new Crc32c();
+        crc.update(data, 0, data.length);
+        return Crc32c.toHex(crc.getValue());
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 内存中的会话存储
+     */
+    static class InMemorySessionStore implements UploadSessionStore {
+        final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+        final Map<String, BitSet> chunks = new ConcurrentHashMap<>();
+        // 接下来保存已完成会话时失败的次数
+        volatile int failCompletedSaves;
+
+        @Override
+        public void saveSession(UploadSession session) {
+            if ("COMPLETED".equals(session.getStatus()) && failCompletedSaves > 0) {
+                failCompletedSaves--;
+                throw new IllegalStateException("会话存储不可用");
+            }
+            sessions.put(session.getUploadId(), session);
+            chunks.putIfAbsent(session.getUploadId(), new BitSet());
+        }
+
+        @Override
+        public void chunkCompleted(String uploadId, int chunkIndex) {
+            BitSet bits = chunks.get(uploadId);
+            synchronized (bits) {
+                bits.set(chunkIndex);
+            }
+        }
+
+        @Override
+        public void removeSession(String uploadId) {
+            sessions.remove(uploadId);
+            chunks.remove(uploadId);
+        }
+
+        @Override
+        public StoredSession findSession(String uploadId) {
+            UploadSession session = sessions.get(uploadId);
+            return session != null ? new StoredSession(session, (BitSet) chunks.get(uploadId).clone()) : null;
+        }
+
+        @Override
+        public List<StoredSession> loadSessions() {
+            List<StoredSession> stored = new ArrayList<>();
+            for (String uploadId : sessions.keySet()) {
+                stored.add(findSession(uploadId));
+            }
+            return stored;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.movie.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VideoSegmentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void evictedMappingsStillInUseCountAgainstMappedLimit() throws Exception {
+        VideoSegmentCache cache = new VideoSegmentCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "segmentSize", 1024L);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1024L);
+        ReflectionTestUtils.setField(cache, "maxMappedBytes", 2048L);
+
+        File a = video("a.mp4", (byte) 1);
+        File b = video("b.mp4", (byte) 2);
+        File c = video("c.mp4", (byte) 3);
+
+        ByteBuffer first = cache.lookup(a, a.lastModified(), a.length(), 0, 99);
+        assertNotNull(first);
+        // b 挤掉 a 的片段，但 first 仍在使用 a 的映射
+        ByteBuffer second = cache.lookup(b, b.lastModified(), b.length(), 0, 99);
+        assertNotNull(second);
+        assertEquals(1L, cache.getStats().get("evictions"));
+
+        // 两个映射都没被回收，第三个片段不再映射
+        assertNull(cache.lookup(c, c.lastModified(), c.length(), 0, 99));
+        assertEquals(1L, cache.getStats().get("skipped"));
+        assertEquals(2048L, cache.getStats().get("mappedBytes"));
+        assertEquals(1, first.get(0));
+    }
+
+    private File video(String name, byte fill) throws Exception {
+        byte[] data = new byte[4096];
+        Arrays.fill(data, fill);
+        return Files.write(tempDir.resolve(name), data).toFile();
+    }
+}
@@ -0,0 +1,113 @@
+package com.movie.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkBitmapTest {
+
+    @Test
+    void setReportsFirstMarkOnlyAndCountsDistinctChunks() {
+        ChunkBitmap bitmap = new ChunkBitmap(130);
+
+        assertTrue(bitmap.set(0));
+        assertTrue(bitmap.set(64));
+        assertTrue(bitmap.set(129));
+        // 重复上传同一分片不重复计数
+        assertFalse(bitmap.set(64));
+
+        assertEquals(3, bitmap.count());
+        assertTrue(bitmap.get(129));
+        assertFalse(bitmap.get(128));
+        assertFalse(bitmap.isComplete());
+        assertEquals(Arrays.asList(0, 64, 129), bitmap.indices());
+    }
+
+    @Test
+    void completeWhenEveryChunkIsSet() {
+        ChunkBitmap bitmap = new ChunkBitmap(3);
+        bitmap.set(2);
+        bitmap.set(0);
+        assertFalse(bitmap.isComplete());
+        bitmap.set(1);
+        assertTrue(bitmap.isComplete());
+
+        assertTrue(new ChunkBitmap(0).isComplete());
+    }
+
+    @Test
+    void rejectsIndexOutsideRange() {
+        ChunkBitmap bitmap = new ChunkBitmap(10);
+        assertThrows(IllegalArgumentException.class, () -> bitmap.set(10));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.get(-1));
+        assertThrows(IllegalArgumentException.class, () -> new ChunkBitmap(-1));
+    }
+
+    @Test
+    void roundTripsThroughBitSetAndIgnoresOutOfRangeBits() {
+        BitSet bits = new BitSet();
+        bits.set(1);
+        bits.set(63);
+        bits.set(70);
+        bits.set(200);
+
+        ChunkBitmap bitmap = ChunkBitmap.of(100, bits);
+
+        assertEquals(3, bitmap.count());
+        assertEquals(Arrays.asList(1, 63, 70), bitmap.indices());
+        BitSet expected = new BitSet();
+        expected.set(1);
+        expected.set(63);
+        expected.set(70);
+        assertEquals(expected, bitmap.toBitSet());
+    }
+
+    @Test
+    void concurrentSetsOfSameWordAreNotLost() throws InterruptedException {
+        int size = 64 * 4;
+        ChunkBitmap bitmap = new ChunkBitmap(size);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        int[] firstMarks = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // 每个线程都尝试标记全部分片，同一分片只能有一个线程首次标记成功
+                for (int i = 0; i < size; i++) {
+                    if (bitmap.set((i + worker * 7) % size)) {
+                        firstMarks[worker]++;
+                    }
+                }
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        int total = 0;
+        for (int marks : firstMarks) {
+            total += marks;
+        }
+        assertEquals(size, total);
+        assertEquals(size, bitmap.count());
+        assertTrue(bitmap.isComplete());
+    }
+}
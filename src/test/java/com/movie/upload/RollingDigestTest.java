@@ -0,0 +1,100 @@
+package com.movie.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RollingDigestTest {
+
+    private final byte[][] chunks = {
+            "first chunk".getBytes(), "second chunk".getBytes(), "third".getBytes()
+    };
+    private final List<Integer> reads = new ArrayList<>();
+    private final RollingDigest.ChunkSource source = (chunkIndex, digest) -> {
+        reads.add(chunkIndex);
+        digest.update(chunks[chunkIndex]);
+    };
+
+    @Test
+    void advancesOnlyOverContiguousChunks() throws Exception {
+        RollingDigest digest = new RollingDigest(3);
+        ChunkBitmap uploaded = new ChunkBitmap(3);
+
+        uploaded.set(1);
+        digest.advance(uploaded, source);
+        assertEquals(0, digest.getDigestedChunks());
+
+        uploaded.set(0);
+        digest.advance(uploaded, source);
+        assertEquals(2, digest.getDigestedChunks());
+        assertNull(digest.getHex());
+
+        uploaded.set(2);
+        digest.advance(uploaded, source);
+        assertEquals(expected(), digest.getHex());
+        // 每个分片只读取一次
+        assertEquals(Arrays.asList(0, 1, 2), reads);
+    }
+
+    @Test
+    void finishReadsRemainingChunks() throws Exception {
+        RollingDigest digest = new RollingDigest(3);
+        ChunkBitmap uploaded = new ChunkBitmap(3);
+        uploaded.set(0);
+        uploaded.set(1);
+        uploaded.set(2);
+
+        assertEquals(expected(), digest.finish(uploaded, source));
+        assertEquals(3, digest.getDigestedChunks());
+    }
+
+    @Test
+    void invalidateRestartsOnlyWhenChunkWasDigested() throws Exception {
+        RollingDigest digest = new RollingDigest(3);
+        ChunkBitmap uploaded = new ChunkBitmap(3);
+        uploaded.set(0);
+        digest.advance(uploaded, source);
+
+        // 尚未计入的分片被重写不影响当前状态
+        digest.invalidate(2);
+        assertEquals(1, digest.getDigestedChunks());
+
+        uploaded.set(1);
+        uploaded.set(2);
+        digest.advance(uploaded, source);
+        chunks[1] = "rewritten chunk".getBytes();
+        digest.invalidate(1);
+        assertEquals(0, digest.getDigestedChunks());
+        assertNull(digest.getHex());
+
+        assertEquals(expected(), digest.finish(uploaded, source));
+    }
+
+    @Test
+    void emptyUploadHasDigestImmediately() throws Exception {
+        RollingDigest digest = new RollingDigest(0);
+        assertEquals(hex(MessageDigest.getInstance("SHA-256").digest()), digest.getHex());
+    }
+
+    private String expected() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] chunk : chunks) {
+            digest.update(chunk);
+        }
+        return hex(digest.digest());
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
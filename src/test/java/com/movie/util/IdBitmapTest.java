@@ -0,0 +1,102 @@
+package com.movie.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdBitmapTest {
+
+    @Test
+    void addAndRemoveReportWhetherMembershipChanged() {
+        IdBitmap bitmap = new IdBitmap();
+
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5));
+        assertTrue(bitmap.add(70000));
+        assertTrue(bitmap.add(3));
+        assertEquals(3, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+
+        assertTrue(bitmap.remove(5));
+        assertFalse(bitmap.remove(5));
+        assertFalse(bitmap.contains(5));
+        assertEquals(2, bitmap.cardinality());
+    }
+
+    @Test
+    void convertsDenseChunkToBitmapAndBack() {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id = 0; id < 5000; id++) {
+            bitmap.add(id * 2);
+        }
+        assertEquals(5000, bitmap.cardinality());
+        long dense = bitmap.sizeInBytes();
+        // 超过 4096 个元素后为 8KB 位图
+        assertTrue(dense >= 8192);
+        for (long id = 0; id < 5000; id++) {
+            assertTrue(bitmap.contains(id * 2));
+            assertFalse(bitmap.contains(id * 2 + 1));
+        }
+
+        // 删到一半以下转回数组，内容不变
+        for (long id = 0; id < 3000; id++) {
+            assertTrue(bitmap.remove(id * 2));
+        }
+        assertEquals(2000, bitmap.cardinality());
+        assertTrue(bitmap.sizeInBytes() < dense);
+        for (long id = 0; id < 5000; id++) {
+            assertEquals(id >= 3000, bitmap.contains(id * 2));
+        }
+    }
+
+    @Test
+    void matchesTreeSetAcrossChunks() {
+        IdBitmap bitmap = new IdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // 集中在少数几个分块内，覆盖数组、位图以及两者之间的转换
+            long id = (random.nextInt(4) * 65536L) + random.nextInt(8192);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), bitmap.remove(id));
+            } else {
+                assertEquals(expected.add(id), bitmap.add(id));
+            }
+        }
+        assertEquals(expected.size(), bitmap.cardinality());
+        for (long id = 0; id < 4 * 65536L; id++) {
+            assertEquals(expected.contains(id), bitmap.contains(id));
+        }
+    }
+
+    @Test
+    void emptiedChunksAreDropped() {
+        IdBitmap bitmap = new IdBitmap();
+        long base = bitmap.sizeInBytes();
+        bitmap.add(1L << 40);
+        assertTrue(bitmap.sizeInBytes() > base);
+        bitmap.remove(1L << 40);
+        assertEquals(0, bitmap.cardinality());
+        assertFalse(bitmap.contains(1L << 40));
+    }
+
+    @Test
+    void rejectsIdsOutsideRange() {
+        IdBitmap bitmap = new IdBitmap();
+        long max = (1L << 47) - 1;
+        assertTrue(bitmap.add(max));
+        assertTrue(bitmap.contains(max));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(max + 1));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.remove(max + 1));
+    }
+}
@@ -0,0 +1,49 @@
+package com.movie.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageCursorTest {
+
+    @Test
+    void decodesWhatWasEncoded() {
+        String token = PageCursor.encode("news|null|1", 42L);
+        assertArrayEquals(new long[]{42L}, PageCursor.decode(token, "news|null|1", 1));
+
+        String multi = PageCursor.encode("scope", 1L, -5L, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{1L, -5L, Long.MAX_VALUE}, PageCursor.decode(multi, "scope", 3));
+    }
+
+    @Test
+    void tokenIsUrlSafe() {
+        String token = PageCursor.encode("movie|关键词|null", 123456789L);
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void rejectsTokenFromDifferentScope() {
+        String token = PageCursor.encode("news|null|1", 42L);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> PageCursor.decode(token, "news|null|0", 1));
+        assertEquals("分页游标与当前查询条件不一致，请从第一页重新查询", e.getMessage());
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not base64!", "scope", 1));
+        // 排序键个数不一致
+        String token = PageCursor.encode("scope", 1L, 2L);
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(token, "scope", 1));
+        // 排序键不是数字
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (Integer.toHexString("scope".hashCode()) + ":abc").getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(forged, "scope", 1));
+    }
+}
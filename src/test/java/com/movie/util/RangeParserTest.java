@@ -0,0 +1,89 @@
+package com.movie.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangeParserTest {
+
+    private static final long LENGTH = 10000;
+
+    @Test
+    void parsesClosedOpenAndSuffixRanges() {
+        assertRanges(RangeParser.parse("bytes=0-499", LENGTH), "0-499");
+        assertRanges(RangeParser.parse("bytes=9500-", LENGTH), "9500-9999");
+        assertRanges(RangeParser.parse("bytes=-500", LENGTH), "9500-9999");
+        assertRanges(RangeParser.parse("BYTES= 100 - 199 ", LENGTH), "100-199");
+    }
+
+    @Test
+    void clampsEndAndSuffixToFileLength() {
+        assertRanges(RangeParser.parse("bytes=9000-20000", LENGTH), "9000-9999");
+        assertRanges(RangeParser.parse("bytes=-20000", LENGTH), "0-9999");
+    }
+
+    @Test
+    void sortsAndCoalescesOverlappingOrNearbyRanges() {
+        assertRanges(RangeParser.parse("bytes=500-599,0-99,50-149", LENGTH), "0-149", "500-599");
+        // 间隔小于 80 字节的区间合并为一个
+        assertRanges(RangeParser.parse("bytes=0-99,150-199", LENGTH), "0-199");
+        assertRanges(RangeParser.parse("bytes=0-99,1000-1099", LENGTH), "0-99", "1000-1099");
+    }
+
+    @Test
+    void ignoresHeaderWithoutAnyRange() {
+        assertNull(RangeParser.parse("bytes=", LENGTH));
+        assertNull(RangeParser.parse("bytes= , ,", LENGTH));
+    }
+
+    @Test
+    void ignoresMalformedOrUnknownHeaders() {
+        assertNull(RangeParser.parse(null, LENGTH));
+        assertNull(RangeParser.parse("items=0-1", LENGTH));
+        assertNull(RangeParser.parse("bytes=abc", LENGTH));
+        assertNull(RangeParser.parse("bytes=5-1", LENGTH));
+        assertNull(RangeParser.parse("bytes=0-1,x-2", LENGTH));
+        assertNull(RangeParser.parse("bytes=99999999999999999999-", LENGTH));
+    }
+
+    @Test
+    void ignoresTooManyRanges() {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i < 33; i++) {
+            header.append(i * 200).append('-').append(i * 200 + 1).append(',');
+        }
+        assertNull(RangeParser.parse(header.toString(), LENGTH));
+    }
+
+    @Test
+    void returnsEmptyListWhenNoRangeIsSatisfiable() {
+        List<ByteRange> ranges = RangeParser.parse("bytes=10000-", LENGTH);
+        assertTrue(ranges != null && ranges.isEmpty());
+        ranges = RangeParser.parse("bytes=-0", LENGTH);
+        assertTrue(ranges != null && ranges.isEmpty());
+        ranges = RangeParser.parse("bytes=0-", 0);
+        assertTrue(ranges != null && ranges.isEmpty());
+    }
+
+    @Test
+    void keepsSatisfiableRangesAndDropsTheRest() {
+        assertRanges(RangeParser.parse("bytes=20000-30000,0-9", LENGTH), "0-9");
+    }
+
+    @Test
+    void formatsContentRange() {
+        assertEquals("bytes 0-499/10000", new ByteRange(0, 499).toContentRange(LENGTH));
+        assertEquals(500, new ByteRange(0, 499).length());
+    }
+
+    private static void assertRanges(List<ByteRange> ranges, String... expected) {
+        assertEquals(expected.length, ranges.size(), "区间数量");
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], ranges.get(i).toString());
+        }
+    }
+}
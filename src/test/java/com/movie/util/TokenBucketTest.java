@@ -0,0 +1,91 @@
+package com.movie.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void startsWithFullBurst() {
+        TokenBucket bucket = new TokenBucket(1_000_000, 200);
+        assertEquals(200_000, bucket.burstBytes());
+        assertEquals(200_000, bucket.available(System.nanoTime()));
+        assertEquals(0, bucket.nanosUntilAvailable(100_000, System.nanoTime()));
+    }
+
+    @Test
+    void consumingDrainsAndTimeRefills() {
+        TokenBucket bucket = new TokenBucket(1_000_000, 200);
+        long now = System.nanoTime();
+        bucket.consume(200_000, now);
+        assertEquals(0, bucket.available(now));
+        // 1MB/s 下 50ms 恢复 50000 字节
+        assertEquals(50_000.0, bucket.available(now + 50_000_000L), 1.0);
+        assertEquals(200_000, bucket.available(now + SECOND));
+    }
+
+    @Test
+    void reportsWaitUntilTokensAreAvailable() {
+        TokenBucket bucket = new TokenBucket(1_000_000, 200);
+        long now = System.nanoTime();
+        bucket.consume(200_000, now);
+        long wait = bucket.nanosUntilAvailable(10_000, now);
+        assertEquals(10_000_000.0, wait, 1_000.0);
+        assertEquals(0, bucket.nanosUntilAvailable(10_000, now + wait));
+        // 超过桶容量的请求按桶容量计算等待时间
+        assertEquals(200_000_000.0, bucket.nanosUntilAvailable(10_000_000, now), 1_000.0);
+    }
+
+    @Test
+    void sustainedThroughputMatchesRate() {
+        long rate = 4 * 1024 * 1024;
+        TokenBucket bucket = new TokenBucket(rate, 100);
+        long start = System.nanoTime();
+        long now = start;
+        long sent = 0;
+        // 模拟时间推进：每次按可用量写出，不足时跳到令牌恢复的时刻
+        while (now - start < 10 * SECOND) {
+            long available = Math.min(bucket.available(now), 64 * 1024);
+            if (available < 16 * 1024) {
+                now += Math.max(1, bucket.nanosUntilAvailable(16 * 1024, now));
+                continue;
+            }
+            bucket.consume(available, now);
+            sent += available;
+        }
+        double seconds = (now - start) / (double) SECOND;
+        double burst = bucket.burstBytes();
+        assertTrue(sent <= rate * seconds + burst, "超出速率: " + sent);
+        assertTrue(sent >= rate * seconds * 0.98, "明显低于速率: " + sent);
+    }
+
+    @Test
+    void concurrentConsumersNeverLoseTokens() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1_000_000_000L, 1);
+        long now = System.nanoTime();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    bucket.consume(1000, now);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 4 万次 1000 字节 = 40MB，1GB/s 下需要 40ms 才能恢复，减去 1ms 突发
+        assertEquals(39_000_000.0, bucket.nanosUntilAvailable(1, now), 1_000.0);
+    }
+
+    @Test
+    void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 100));
+    }
+}
@@ -18,6 +18,8 @@ export const getNewsList = (params) => {
   }
   return request.get('/news/list', { params });
 };
+// 游标分页：第一页 cursor 为空，之后传上一页返回的 nextCursor
+export const getNewsListByCursor = (params) => request.get('/news/list', { params: { cursor: '', ...params } });
 export const getNewsById = (id) => request.get(`/news/${id}`);
 export const createNews = (data) => request.post('/news/create', data);
 export const updateNews = (id, data) => request.put(`/news/${id}`, data);
@@ -38,6 +40,8 @@ export const getMovieList = (params) => {
   }
   return request.get('/movies/list', { params });
 };
+// 游标分页：第一页 cursor 为空，之后传上一页返回的 nextCursor
+export const getMovieListByCursor = (params) => request.get('/movies/list', { params: { cursor: '', ...params } });
 export const getMovieById = (id) => request.get(`/movies/${id}`);
 export const createMovie = (data) => request.post('/movies/create', data);
 export const updateMovie = (id, data) => request.put(`/movies/${id}`, data);
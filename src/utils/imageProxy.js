@@ -28,6 +28,38 @@ export const getImageUrl = (originalUrl) => {
   return originalUrl;
 };
 
+/**
+ * 获取缩略图URL
+ * 只有本站 /api/files/ 下的图片支持服务端缩略图，其他图片返回原URL
+ * @param {string} url - 原始图片URL
+ * @param {number} width - 显示宽度（CSS 像素），按设备像素比放大
+ * @returns {string} - 缩略图URL
+ */
+export const getThumbnailUrl = (url, width) => {
+  const imageUrl = getImageUrl(url);
+  if (!imageUrl || !imageUrl.includes('/api/files/') || imageUrl.includes('?')) {
+    return imageUrl;
+  }
+  const ratio = typeof window !== 'undefined' && window.devicePixelRatio ? window.devicePixelRatio : 1;
+  return `${imageUrl}?w=${Math.ceil(width * Math.min(ratio, 2))}`;
+};
+
+/**
+ * 获取头像URL
+ * 本站上传的头像（/uploads/avatars/）按显示尺寸请求服务端生成的正方形规格，其他头像返回原URL
+ * @param {string} url - 头像URL
+ * @param {number} size - 显示边长（CSS 像素），按设备像素比放大
+ * @returns {string} - 头像URL
+ */
+export const getAvatarUrl = (url, size) => {
+  const imageUrl = getImageUrl(url);
+  if (!imageUrl || !imageUrl.includes('/uploads/avatars/') || imageUrl.includes('?')) {
+    return imageUrl;
+  }
+  const ratio = typeof window !== 'undefined' && window.devicePixelRatio ? window.devicePixelRatio : 1;
+  return `${imageUrl}?size=${Math.ceil(size * Math.min(ratio, 2))}`;
+};
+
 /**
  * 获取占位符图片
  * @param {string} text - 占位符文本